@@ -20,7 +20,9 @@ import com.chadfield.shogiexplorer.main.AnalysisManager;
 import com.chadfield.shogiexplorer.main.ConfigurationManager;
 import com.chadfield.shogiexplorer.main.EngineManager;
 import com.chadfield.shogiexplorer.main.KifParser;
+import com.chadfield.shogiexplorer.main.OpeningTree;
 import com.chadfield.shogiexplorer.main.PositionEditor;
+import com.chadfield.shogiexplorer.main.PositionIndex;
 import com.chadfield.shogiexplorer.objects.GameAnalyser;
 import java.io.File;
 import java.io.IOException;
@@ -33,7 +35,7 @@ import javax.swing.DefaultListModel;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import com.chadfield.shogiexplorer.objects.Board;
-import com.chadfield.shogiexplorer.objects.Coordinate;
+import com.chadfield.shogiexplorer.objects.Square;
 import com.chadfield.shogiexplorer.main.RenderBoard;
 import com.chadfield.shogiexplorer.main.SFENParser;
 import com.chadfield.shogiexplorer.objects.AnalysisParameter;
@@ -41,7 +43,10 @@ import com.chadfield.shogiexplorer.objects.Engine;
 import com.chadfield.shogiexplorer.objects.Game;
 import com.chadfield.shogiexplorer.objects.ImageCache;
 import com.chadfield.shogiexplorer.objects.Position;
+import com.chadfield.shogiexplorer.utils.CharsetUtils;
 import com.chadfield.shogiexplorer.utils.ImageUtils;
+import com.chadfield.shogiexplorer.utils.NotationFormatter;
+import com.chadfield.shogiexplorer.utils.StringUtils;
 import com.chadfield.shogiexplorer.utils.URLUtils;
 import java.awt.Color;
 import java.awt.Component;
@@ -80,6 +85,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.ImageIcon;
 import javax.swing.JFileChooser;
@@ -89,9 +95,11 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JTable;
+import javax.swing.JTextArea;
 import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.plaf.FontUIResource;
@@ -183,10 +191,15 @@ public class ShogiExplorer extends javax.swing.JFrame {
     boolean setupModified = false;
     int setupKomadaiCount = -1;
     transient Position savedPosition;
+    transient PositionIndex positionIndex;
+    transient JTextArea positionIndexTextArea;
+    transient OpeningTree openingTree;
+    transient DefaultTableModel openingTableModel;
     String fastSavePath;
     String fastSavePrefix;
     String savedComment;
     static final String USER_HOME = "user.home";
+    static final int POSITION_INDEX_HITS_SHOWN = 5;
     static String argument = null;
     static final String RESOURCE_BUNDLE_NAME = "Bundle";
     static final String WHITE_SPAN = ";color:white;\">";
@@ -270,6 +283,10 @@ public class ShogiExplorer extends javax.swing.JFrame {
 
         board = SFENParser.parse("lnsgkgsnl/1r5b1/ppppppppp/9/9/9/PPPPPPPPP/1B5R1/LNSGKGSNL b - 1");
 
+        positionIndex = PositionIndex.openDefault();
+        initPositionIndexTab();
+        initOpeningTab();
+
         if (prefs.getBoolean(PREF_SAVE_ANALYSIS, false)) {
             saveAnalysisCheckBox.setSelected(true);
             saveAnalysis = true;
@@ -1617,7 +1634,7 @@ public class ShogiExplorer extends javax.swing.JFrame {
             if (wasBrowse) {
                 browse = true;
                 Position position = game.getAnalysisPositionList().get(moveNumber - 1).get(browsePos);
-                board = SFENParser.parse(position.getGameSFEN());
+                board = SFENParser.parse(position.getGameSFEN(), board);
                 board.setSource(position.getSource());
                 board.setDestination(position.getDestination());
                 commentTextArea.setText(null);
@@ -1810,7 +1827,7 @@ public class ShogiExplorer extends javax.swing.JFrame {
             List<Position> positionList = positionAnalysisList.get(posBrowseRow);
             position = positionList.get(posBrowsePos);
         }
-        board = SFENParser.parse(position.getGameSFEN());
+        board = SFENParser.parse(position.getGameSFEN(), board);
         board.setSource(position.getSource());
         board.setDestination(position.getDestination());
         commentTextArea.setText(null);
@@ -1840,10 +1857,12 @@ public class ShogiExplorer extends javax.swing.JFrame {
             }
             moveList.ensureIndexIsVisible(moveNumber);
             Position position = game.getPositionList().get(moveNumber);
-            board = SFENParser.parse(position.getGameSFEN());
+            board = SFENParser.parse(position.getGameSFEN(), board);
             board.setSource(position.getSource());
             board.setDestination(position.getDestination());
             commentTextArea.setText(position.getComment());
+            showPositionIndexHits(position);
+            showOpeningMoves(position);
             if (moveNumber > 0 && analysisTable.getRowCount() >= moveNumber) {
                 analysisTable.setRowSelectionInterval(moveNumber - 1, moveNumber - 1);
                 if (lastMoveNumber > moveNumber) {
@@ -1931,6 +1950,92 @@ public class ShogiExplorer extends javax.swing.JFrame {
         });
     }//GEN-LAST:event_engineManageMenuItemActionPerformed
 
+    private void initPositionIndexTab() {
+        if (positionIndex == null) {
+            return;
+        }
+        ResourceBundle bundle = ResourceBundle.getBundle(RESOURCE_BUNDLE_NAME);
+        positionIndexTextArea = new JTextArea();
+        positionIndexTextArea.setEditable(false);
+        positionIndexTextArea.setFocusable(false);
+        jTabbedPane1.addTab(bundle.getString("label_position_index_hits"), new javax.swing.JScrollPane(positionIndexTextArea));
+    }
+
+    private void showPositionIndexHits(Position position) {
+        if (positionIndex == null) {
+            return;
+        }
+        long zobristKey = position.getZobristKey();
+        int count = positionIndex.count(zobristKey);
+        StringBuilder text = new StringBuilder();
+        if (count > 0) {
+            text.append(count);
+            for (PositionIndex.Hit hit : positionIndex.lookup(zobristKey, POSITION_INDEX_HITS_SHOWN)) {
+                text.append('\n').append(hit);
+            }
+        }
+        positionIndexTextArea.setText(text.toString());
+    }
+
+    private void initOpeningTab() {
+        ResourceBundle bundle = ResourceBundle.getBundle(RESOURCE_BUNDLE_NAME);
+        openingTableModel = new DefaultTableModel(new Object[][]{}, new String[]{
+            bundle.getString("label_opening_move"),
+            bundle.getString("label_opening_games"),
+            bundle.getString("label_sente"),
+            bundle.getString("label_gote"),
+            bundle.getString("label_opening_latest")
+        }) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable openingTable = new JTable(openingTableModel);
+        openingTable.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
+        jTabbedPane1.addTab(bundle.getString("label_opening_tab"), new javax.swing.JScrollPane(openingTable));
+        // A large tree takes a moment to read, so the window does not wait
+        // for it.
+        new SwingWorker<OpeningTree, Void>() {
+            @Override
+            protected OpeningTree doInBackground() {
+                return OpeningTree.loadDefault();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    openingTree = get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(ShogiExplorer.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                if (!browse && game != null && moveNumber >= 0 && moveNumber < game.getPositionList().size()) {
+                    showOpeningMoves(game.getPositionList().get(moveNumber));
+                }
+            }
+        }.execute();
+    }
+
+    private void showOpeningMoves(Position position) {
+        OpeningTree tree = openingTree;
+        if (tree == null) {
+            return;
+        }
+        openingTableModel.setRowCount(0);
+        for (OpeningTree.Continuation continuation : tree.getContinuations(position.getZobristKey())) {
+            int games = continuation.getGames();
+            openingTableModel.addRow(new Object[]{
+                NotationFormatter.getJapaneseMove(board, continuation.getMove(), board.getDestination()),
+                games,
+                continuation.getSenteWins() * 100 / games + "%",
+                continuation.getGoteWins() * 100 / games + "%",
+                StringUtils.formatDate(continuation.getLatestDate())
+            });
+        }
+    }
+
     private void deleteEngineButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_deleteEngineButtonActionPerformed
         engineList = EngineManager.deleteSelectedEngine(engineListModel, jEngineList, engineList);
     }//GEN-LAST:event_deleteEngineButtonActionPerformed
@@ -2074,7 +2179,7 @@ public class ShogiExplorer extends javax.swing.JFrame {
                 browse = false;
                 browsePos = 0;
                 position = game.getPositionList().get(moveNumber);
-                board = SFENParser.parse(position.getGameSFEN());
+                board = SFENParser.parse(position.getGameSFEN(), board);
                 board.setSource(position.getSource());
                 board.setDestination(position.getDestination());
                 commentTextArea.setText(position.getComment());
@@ -2083,7 +2188,7 @@ public class ShogiExplorer extends javax.swing.JFrame {
                 return;
             }
             position = game.getAnalysisPositionList().get(moveNumber - 1).get(browsePos);
-            board = SFENParser.parse(position.getGameSFEN());
+            board = SFENParser.parse(position.getGameSFEN(), board);
             board.setSource(position.getSource());
             board.setDestination(position.getDestination());
             commentTextArea.setText(null);
@@ -2103,7 +2208,7 @@ public class ShogiExplorer extends javax.swing.JFrame {
         }
 
         Position position = game.getAnalysisPositionList().get(moveNumber - 1).get(browsePos);
-        board = SFENParser.parse(position.getGameSFEN());
+        board = SFENParser.parse(position.getGameSFEN(), board);
         board.setSource(position.getSource());
         board.setDestination(position.getDestination());
         commentTextArea.setText(null);
@@ -2370,9 +2475,9 @@ public class ShogiExplorer extends javax.swing.JFrame {
 
         Transferable transferable = clipBoard.getContents(null);
 
-        if (transferable.isDataFlavorSupported(DataFlavor.stringFlavor)) {
+        if (transferable.isDataFlavorSupported(DataFlavor.javaFileListFlavor) || transferable.isDataFlavorSupported(DataFlavor.stringFlavor)) {
             try {
-                clipboardStr = (String) transferable.getTransferData(DataFlavor.stringFlavor);
+                clipboardStr = getClipboardGame(transferable);
                 saveAnalysisCheckBox.setSelected(false);
                 saveAnalysisCheckBox.setEnabled(false);
                 prefs.putBoolean(PREF_SAVE_ANALYSIS, saveAnalysis);
@@ -2392,6 +2497,19 @@ public class ShogiExplorer extends javax.swing.JFrame {
         fastSaveMenuItem.setEnabled(true);
     }//GEN-LAST:event_importClipboardMenuItemActionPerformed
 
+    private String getClipboardGame(Transferable transferable) throws UnsupportedFlavorException, IOException {
+        if (transferable.isDataFlavorSupported(DataFlavor.javaFileListFlavor)) {
+            // A copied file is read in the charset detected from its contents.
+            List<?> fileList = (List<?>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
+            if (!fileList.isEmpty()) {
+                try (InputStream inputStream = Files.newInputStream(((File) fileList.get(0)).toPath())) {
+                    return CharsetUtils.readString(inputStream, shiftFile ? CharsetUtils.SHIFT_JIS : StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return (String) transferable.getTransferData(DataFlavor.stringFlavor);
+    }
+
     private void stopAnalysisMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_stopAnalysisMenuItemActionPerformed
         stopAnalysisToolbarButtonActionPerformed(evt);
     }//GEN-LAST:event_stopAnalysisMenuItemActionPerformed
@@ -2512,7 +2630,18 @@ public class ShogiExplorer extends javax.swing.JFrame {
         String urlGameStr = URLUtils.readGameURL(urlStr, shiftURL);
         clipboardStr = urlGameStr;
         int numMovesBefore = game.getPositionList().size();
-        parseKifu(true);
+        boolean appended = false;
+        if (!analysing.get()) {
+            // A running analysis is still reading the old position list.
+            try {
+                appended = KifParser.appendKif(game, moveListModel, clipboardStr);
+            } catch (IOException ex) {
+                Logger.getLogger(ShogiExplorer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        if (!appended) {
+            parseKifu(true);
+        }
         analyseGameMenuItem.setEnabled(true);
         analyseGameToolbarButton.setEnabled(true);
         analysePositionMenuItem.setEnabled(true);
@@ -2644,7 +2773,7 @@ public class ShogiExplorer extends javax.swing.JFrame {
                     RenderBoard.loadBoard(board, imageCache, boardPanel, rotatedView);
                 }
                 case 'c' -> {
-                    Coordinate editCoord = board.getEdit();
+                    Square editCoord = board.getEdit();
                     board = SFENParser.parse("9/9/9/9/9/9/9/9/9 b - 1");
                     board.setEdit(editCoord);
                     RenderBoard.loadBoard(board, imageCache, boardPanel, rotatedView);
@@ -2696,7 +2825,7 @@ public class ShogiExplorer extends javax.swing.JFrame {
         if (setup || analysing.get()) {
             return;
         }
-        savedPosition = new Position(SFENParser.getSFEN(board), null, null, null);
+        savedPosition = new Position(board, null, null, null);
         analysisEngineName = (String) analysisEngineComboBox1.getSelectedItem();
         prefs.put(PREF_ANALYSIS_ENGINE_NAME, analysisEngineName);
         stopAnalysisToolbarButton.setEnabled(true);
@@ -2782,7 +2911,7 @@ public class ShogiExplorer extends javax.swing.JFrame {
             importClipboardMenuItem.setEnabled(false);
             importURLMenuItem.setEnabled(false);
             openKifMenuItem.setEnabled(false);
-            board.setEdit(new Coordinate(9, 1));
+            board.setEdit(Square.valueOf(9, 1));
             board.setDestination(null);
             board.setSource(null);
             RenderBoard.loadBoard(board, imageCache, boardPanel, rotatedView);
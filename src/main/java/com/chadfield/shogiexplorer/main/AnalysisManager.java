@@ -48,6 +48,7 @@ public class AnalysisManager {
         XStream xstream = new XStream(new DomDriver("UTF-8"));
         xstream.alias("analysis", Analysis.class);
         xstream.alias("position", Position.class);
+        xstream.registerConverter(new SquareConverter());
         String dataXml = xstream.toXML(analysis);
         try ( FileWriter fileWriter = new FileWriter(analysisFile, false)) {
             fileWriter.write(dataXml);
@@ -65,6 +66,7 @@ public class AnalysisManager {
         xstream.addPermission(AnyTypePermission.ANY);
         xstream.alias("analysis", Analysis.class);
         xstream.alias("position", Position.class);
+        xstream.registerConverter(new SquareConverter());
         Analysis analysis;
         try ( FileInputStream inputFileStream = new FileInputStream(analysisFile)) {
             analysis = (Analysis) xstream.fromXML(inputFileStream);
@@ -0,0 +1,332 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Bitboard;
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Board.Turn;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.Hand;
+import com.chadfield.shogiexplorer.objects.Koma;
+import com.chadfield.shogiexplorer.objects.Move;
+import com.chadfield.shogiexplorer.objects.MoveGenerator;
+import com.chadfield.shogiexplorer.objects.Notation;
+import com.chadfield.shogiexplorer.objects.Square;
+import com.chadfield.shogiexplorer.utils.NotationUtils;
+import com.chadfield.shogiexplorer.utils.ParserUtils;
+import com.chadfield.shogiexplorer.utils.StringPool;
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Reads games in CSA format, such as those from Floodgate.
+ *
+ * Games are read a line at a time and passed to a {@link KifHandler} in the
+ * same way as KIF games, with the CSA headers given their KIF names. A file
+ * may hold many games separated by lines holding only /.
+ */
+public class CsaParser {
+
+    private static final String[] CSA_CODES = {
+        "FU", "KY", "KE", "GI", "KI", "KA", "HI", "OU", "TO", "NY", "NK", "NG", "UM", "RY"
+    };
+    private static final Koma.Type[] SENTE_TYPES = {
+        Koma.Type.SFU, Koma.Type.SKY, Koma.Type.SKE, Koma.Type.SGI, Koma.Type.SKI, Koma.Type.SKA, Koma.Type.SHI,
+        Koma.Type.SGY, Koma.Type.STO, Koma.Type.SNY, Koma.Type.SNK, Koma.Type.SNG, Koma.Type.SUM, Koma.Type.SRY
+    };
+    // The unpromoted kind of each CSA code, or -1 for the king.
+    private static final int[] BASE_KIND = {0, 1, 2, 3, 4, 5, 6, -1, 0, 1, 2, 3, 5, 6};
+    private static final int[] KIND_TOTAL = {18, 4, 4, 4, 4, 2, 2};
+
+    public static final String GAME_SEPARATOR = "/";
+
+    private CsaParser() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Read one CSA game into a Game without a move list model.
+     */
+    public static Game parseGame(BufferedReader reader) throws IOException {
+        Game game = new Game();
+        KifParser.GameBuilder gameBuilder = new KifParser.GameBuilder(game, null);
+        parse(reader, gameBuilder);
+        game.setPositionList(gameBuilder.positionList);
+        return game;
+    }
+
+    /**
+     * Read one CSA game, passing each part of it to the handler as it is read.
+     *
+     * @return true if the game ended with a separator, so another may follow
+     * @throws IllegalArgumentException if a move cannot be played
+     */
+    public static boolean parse(BufferedReader reader, KifHandler handler) throws IOException {
+        Board board = new Board();
+        boolean started = false;
+        int moveNumber = 1;
+        Square lastDestination = null;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("'")) {
+                if (started) {
+                    handler.comment(line.substring(1));
+                }
+                continue;
+            }
+            for (String statement : line.split(",")) {
+                if (statement.isEmpty()) {
+                    continue;
+                }
+                switch (statement.charAt(0)) {
+                    case 'N' ->
+                        parseName(statement, handler);
+                    case '$' ->
+                        parseInformation(statement, handler);
+                    case 'P' ->
+                        parsePosition(statement, board);
+                    case '+', '-' -> {
+                        if (statement.length() == 1) {
+                            board.setNextTurn(statement.charAt(0) == '+' ? Turn.SENTE : Turn.GOTE);
+                            board.setMoveCount(1);
+                            startPosition(board, handler);
+                            started = true;
+                        } else if (started) {
+                            int move = getMove(statement, board);
+                            Notation notation = new Notation();
+                            notation.setJapanese(StringPool.NOTATION.intern(NotationUtils.getJapaneseMove(board, move, lastDestination)));
+                            notation.setEngineMove(StringPool.NOTATION.intern(Move.toUSI(move)));
+                            board.makeMove(move);
+                            lastDestination = board.getDestination();
+                            handler.move(moveNumber++, board, board.getSource(), lastDestination, notation);
+                        }
+                    }
+                    case '%' ->
+                        handler.endOfGame(moveNumber, getEndReason(statement));
+                    case '/' -> {
+                        return true;
+                    }
+                    default -> {
+                        // Versions, times and anything else are not kept.
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void parseName(String statement, KifHandler handler) {
+        if (statement.startsWith("N+")) {
+            handler.header(KifParser.SENTE, statement.substring(2).trim());
+        } else if (statement.startsWith("N-")) {
+            handler.header(KifParser.GOTE, statement.substring(2).trim());
+        }
+    }
+
+    private static void parseInformation(String statement, KifHandler handler) {
+        int separator = statement.indexOf(':');
+        if (separator < 0) {
+            return;
+        }
+        String value = statement.substring(separator + 1).trim();
+        switch (statement.substring(1, separator)) {
+            case "EVENT" ->
+                handler.header(KifParser.TOURNAMENT, value);
+            case "SITE" ->
+                handler.header(KifParser.PLACE, value);
+            case "START_TIME" ->
+                handler.header(KifParser.DATE, value);
+            case "TIME_LIMIT", "TIME" ->
+                handler.header(KifParser.TIME_LIMIT, value);
+            default -> {
+                // Other information is not shown.
+            }
+        }
+    }
+
+    private static void parsePosition(String statement, Board board) {
+        if (statement.length() < 2) {
+            return;
+        }
+        char kind = statement.charAt(1);
+        if (kind == 'I') {
+            // The even game position, less any pieces listed.
+            SFENParser.parse(KifParser.getStartSFEN(Game.HANDICAP_NONE), board);
+            for (int i = 2; i + 4 <= statement.length(); i += 4) {
+                board.putKomaAt(getIndex(statement, i), null);
+            }
+        } else if (kind >= '1' && kind <= '9') {
+            int y = kind - '0';
+            for (int i = 0; i < 9; i++) {
+                int start = 2 + i * 3;
+                Koma.Type komaType = start + 3 <= statement.length() ? getKomaType(statement, start) : null;
+                board.putKomaAt((y - 1) * 9 + i, komaType == null ? null : Koma.valueOf(komaType));
+            }
+        } else if (kind == '+' || kind == '-') {
+            Turn turn = kind == '+' ? Turn.SENTE : Turn.GOTE;
+            for (int i = 2; i + 4 <= statement.length(); i += 4) {
+                if (statement.startsWith("00AL", i)) {
+                    addRemainingInHand(board, turn);
+                    continue;
+                }
+                Koma.Type komaType = getKomaType(kind, statement.substring(i + 2, i + 4));
+                if (komaType == null) {
+                    throw new IllegalArgumentException("Invalid CSA position: " + statement);
+                }
+                if (statement.startsWith("00", i)) {
+                    board.addInHand(komaType);
+                } else {
+                    board.putKomaAt(getIndex(statement, i), Koma.valueOf(komaType));
+                }
+            }
+        }
+    }
+
+    private static void addRemainingInHand(Board board, Turn turn) {
+        int[] remaining = KIND_TOTAL.clone();
+        for (int index = 0; index < 81; index++) {
+            Koma koma = board.getKomaAt(index);
+            if (koma != null) {
+                int kind = getBaseKind(koma.getType());
+                if (kind >= 0) {
+                    remaining[kind]--;
+                }
+            }
+        }
+        for (int kind = 0; kind < KIND_TOTAL.length; kind++) {
+            Koma.Type goteType = ParserUtils.getOtherSideType(SENTE_TYPES[kind]);
+            remaining[kind] -= board.getInHandCount(SENTE_TYPES[kind]) + board.getInHandCount(goteType);
+            Koma.Type komaType = turn == Turn.SENTE ? SENTE_TYPES[kind] : goteType;
+            if (remaining[kind] > 0 && Hand.getMaxCount(komaType) > 0) {
+                board.setInHandCount(komaType, board.getInHandCount(komaType) + remaining[kind]);
+            }
+        }
+    }
+
+    private static int getBaseKind(Koma.Type komaType) {
+        Koma.Type senteType = Bitboard.isSente(komaType) ? komaType : ParserUtils.getOtherSideType(komaType);
+        for (int code = 0; code < CSA_CODES.length; code++) {
+            if (SENTE_TYPES[code] == senteType) {
+                return BASE_KIND[code];
+            }
+        }
+        return -1;
+    }
+
+    private static void startPosition(Board board, KifHandler handler) {
+        String sfen = SFENParser.getSFEN(board);
+        for (String handicap : KifParser.HANDICAPS) {
+            if (sfen.equals(KifParser.getStartSFEN(handicap))) {
+                handler.header(KifParser.HANDICAP, handicap);
+                break;
+            }
+        }
+        handler.startPosition(board);
+    }
+
+    private static int getMove(String statement, Board board) {
+        if (statement.length() < 7) {
+            throw new IllegalArgumentException("Invalid CSA move: " + statement);
+        }
+        Koma.Type komaType = getKomaType(statement.charAt(0), statement.substring(5, 7));
+        int to = getIndex(statement, 3);
+        if (komaType == null || to < 0 || (statement.charAt(0) == '+') != (board.getNextTurn() == Turn.SENTE)) {
+            throw new IllegalArgumentException("Invalid CSA move: " + statement);
+        }
+        int move;
+        if (statement.startsWith("00", 1)) {
+            move = Move.drop(komaType, to);
+        } else {
+            int from = getIndex(statement, 1);
+            Koma koma = from < 0 ? null : board.getKomaAt(from);
+            if (koma == null || (koma.getType() != komaType && !isPromotionOf(koma.getType(), komaType))) {
+                throw new IllegalArgumentException("Invalid CSA move: " + statement);
+            }
+            move = Move.normal(from, to, koma.getType() != komaType);
+        }
+        if (move == Move.NONE || !MoveGenerator.isLegal(board, move)) {
+            throw new IllegalArgumentException("Illegal CSA move: " + statement);
+        }
+        return move;
+    }
+
+    private static boolean isPromotionOf(Koma.Type komaType, Koma.Type promotedType) {
+        Koma promotedKoma = ParserUtils.promoteKoma(komaType);
+        return promotedKoma != null && promotedKoma.getType() == promotedType;
+    }
+
+    private static String getEndReason(String statement) {
+        return switch (statement) {
+            case "%TORYO" ->
+                NotationUtils.RESIGNS;
+            case "%CHUDAN" ->
+                NotationUtils.SUSPENDED;
+            case "%TIME_UP" ->
+                NotationUtils.LOSING;
+            case "%SENNICHITE" ->
+                "千日手";
+            case "%JISHOGI" ->
+                "持将棋";
+            case "%TSUMI" ->
+                "詰み";
+            case "%FUZUMI" ->
+                "不詰";
+            case "%KACHI" ->
+                "入玉勝ち";
+            case "%HIKIWAKE" ->
+                "引き分け";
+            case "%ILLEGAL_MOVE" ->
+                "反則負け";
+            case "%+ILLEGAL_ACTION" ->
+                ParserUtils.SENTE_ILLEGAL;
+            case "%-ILLEGAL_ACTION" ->
+                ParserUtils.GOTE_ILLEGAL;
+            default ->
+                statement.substring(1);
+        };
+    }
+
+    /**
+     * @return the index of the two digit square at the offset, or -1
+     */
+    private static int getIndex(String statement, int offset) {
+        Square square = Square.valueOf(statement.charAt(offset) - '0', statement.charAt(offset + 1) - '0');
+        return square == null ? -1 : square.getIndex();
+    }
+
+    /**
+     * @return the type of a sign and code such as +FU, or null for an empty
+     * square or an unknown code
+     */
+    private static Koma.Type getKomaType(String statement, int offset) {
+        return getKomaType(statement.charAt(offset), statement.substring(offset + 1, offset + 3));
+    }
+
+    private static Koma.Type getKomaType(char sign, String code) {
+        if (sign != '+' && sign != '-') {
+            return null;
+        }
+        for (int i = 0; i < CSA_CODES.length; i++) {
+            if (CSA_CODES[i].equals(code)) {
+                return sign == '+' ? SENTE_TYPES[i] : ParserUtils.getOtherSideType(SENTE_TYPES[i]);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,489 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.utils.StringUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.harawata.appdirs.AppDirs;
+import net.harawata.appdirs.AppDirsFactory;
+
+/**
+ * The headers of every game in a collection, held by column so that they can
+ * be searched without reading the games again.
+ *
+ * Each text header is stored as a code per game into a list of its distinct
+ * values, with the games for each value kept as a sorted list. A query tests
+ * each distinct value of a column once rather than each game, joins the
+ * lists of the values that match into a bit set of games, and then checks
+ * the date of each game left. The bit sets are the size of the collection,
+ * but are combined a word at a time, so a query over a hundred thousand
+ * games takes a few milliseconds when the columns have far fewer distinct
+ * values than there are games.
+ */
+public class GameHeaderStore {
+
+    public static final String DEFAULT_FILE_NAME = "headers.dat";
+
+    private static final int MAGIC = 0x53454748;
+    private static final int VERSION = 1;
+
+    private final Column sente = new Column();
+    private final Column gote = new Column();
+    private final Column place = new Column();
+    private final Column tournament = new Column();
+    private final Column handicap = new Column();
+    private final Column timeLimit = new Column();
+    private final Column file = new Column();
+    private final Column[] columns = {sente, gote, place, tournament, handicap, timeLimit, file};
+    private int[] dates = new int[1024];
+    private int[] gameIndexes = new int[1024];
+    private final Set<Long> games = new HashSet<>();
+    private int size;
+
+    /**
+     * The conditions of a query. Conditions left null are not applied. Names,
+     * places and tournaments match if they contain the text given, while the
+     * handicap and time limit must be equal to it.
+     */
+    public static class Query {
+
+        private String player;
+        private String sente;
+        private String gote;
+        private String place;
+        private String tournament;
+        private String handicap;
+        private String timeLimit;
+        private int dateFrom;
+        private int dateTo;
+
+        /**
+         * @param player a player who may be either sente or gote
+         */
+        public void setPlayer(String player) {
+            this.player = player;
+        }
+
+        /**
+         * @param sente the sente to set
+         */
+        public void setSente(String sente) {
+            this.sente = sente;
+        }
+
+        /**
+         * @param gote the gote to set
+         */
+        public void setGote(String gote) {
+            this.gote = gote;
+        }
+
+        /**
+         * @param place the place to set
+         */
+        public void setPlace(String place) {
+            this.place = place;
+        }
+
+        /**
+         * @param tournament the tournament to set
+         */
+        public void setTournament(String tournament) {
+            this.tournament = tournament;
+        }
+
+        /**
+         * @param handicap the handicap, one of the Game.HANDICAP_ values
+         */
+        public void setHandicap(String handicap) {
+            this.handicap = handicap;
+        }
+
+        /**
+         * @param timeLimit the timeLimit to set
+         */
+        public void setTimeLimit(String timeLimit) {
+            this.timeLimit = timeLimit;
+        }
+
+        /**
+         * @param dateFrom the earliest date as yyyymmdd, or 0 for none
+         */
+        public void setDateFrom(int dateFrom) {
+            this.dateFrom = dateFrom;
+        }
+
+        /**
+         * @param dateTo the latest date as yyyymmdd, or 0 for none
+         */
+        public void setDateTo(int dateTo) {
+            this.dateTo = dateTo;
+        }
+    }
+
+    /**
+     * Add the headers of a game, unless a game from the same place in the
+     * same file has been added already.
+     *
+     * @param gameIndex the number of the game within its file, from zero
+     * @return true if the game was added
+     */
+    public synchronized boolean add(Path gameFile, int gameIndex, Game game) {
+        String fileName = gameFile.toAbsolutePath().toString();
+        int fileCode = file.getCode(fileName);
+        if (fileCode >= 0 && !games.add(((long) fileCode << Integer.SIZE) | gameIndex)) {
+            return false;
+        }
+        int gameId = size;
+        if (gameId == dates.length) {
+            dates = Arrays.copyOf(dates, gameId * 2);
+            gameIndexes = Arrays.copyOf(gameIndexes, gameId * 2);
+        }
+        sente.add(gameId, game.getSente());
+        gote.add(gameId, game.getGote());
+        place.add(gameId, game.getPlace());
+        tournament.add(gameId, game.getTournament());
+        // A game without a 手合割 header is an even game.
+        String gameHandicap = game.getHandicap();
+        handicap.add(gameId, gameHandicap == null || gameHandicap.isEmpty() ? Game.HANDICAP_NONE : gameHandicap);
+        timeLimit.add(gameId, game.getTimeLimit());
+        file.add(gameId, fileName);
+        if (fileCode < 0) {
+            games.add(((long) file.getCode(fileName) << Integer.SIZE) | gameIndex);
+        }
+        dates[gameId] = StringUtils.parseDate(game.getDate());
+        gameIndexes[gameId] = gameIndex;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the ids of the games that match, in the order they were added
+     */
+    public synchronized int[] find(Query query) {
+        BitSet result = new BitSet(size);
+        result.set(0, size);
+        if (query.player != null) {
+            BitSet players = new BitSet(size);
+            sente.match(value -> value.contains(query.player), players);
+            gote.match(value -> value.contains(query.player), players);
+            result.and(players);
+        }
+        filter(result, sente, query.sente, false);
+        filter(result, gote, query.gote, false);
+        filter(result, place, query.place, false);
+        filter(result, tournament, query.tournament, false);
+        filter(result, handicap, query.handicap, true);
+        filter(result, timeLimit, query.timeLimit, true);
+        if (query.dateFrom != 0 || query.dateTo != 0) {
+            int dateTo = query.dateTo == 0 ? Integer.MAX_VALUE : query.dateTo;
+            for (int gameId = result.nextSetBit(0); gameId >= 0; gameId = result.nextSetBit(gameId + 1)) {
+                // A game without a date does not match any date condition.
+                if (dates[gameId] == 0 || dates[gameId] < query.dateFrom || dates[gameId] > dateTo) {
+                    result.clear(gameId);
+                }
+            }
+        }
+        return result.stream().toArray();
+    }
+
+    private static void filter(BitSet result, Column column, String text, boolean exact) {
+        if (text == null || result.isEmpty()) {
+            return;
+        }
+        BitSet matches = new BitSet(result.length());
+        column.match(exact ? text::equals : value -> value.contains(text), matches);
+        result.and(matches);
+    }
+
+    /**
+     * @return the number of games
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized String getSente(int gameId) {
+        return sente.get(gameId);
+    }
+
+    public synchronized String getGote(int gameId) {
+        return gote.get(gameId);
+    }
+
+    public synchronized String getPlace(int gameId) {
+        return place.get(gameId);
+    }
+
+    public synchronized String getTournament(int gameId) {
+        return tournament.get(gameId);
+    }
+
+    public synchronized String getHandicap(int gameId) {
+        return handicap.get(gameId);
+    }
+
+    public synchronized String getTimeLimit(int gameId) {
+        return timeLimit.get(gameId);
+    }
+
+    /**
+     * @return the date as yyyymmdd, or 0 if the game had none
+     */
+    public synchronized int getDate(int gameId) {
+        return dates[gameId];
+    }
+
+    public synchronized Path getFile(int gameId) {
+        return Path.of(file.get(gameId));
+    }
+
+    /**
+     * @return the number of the game within its file, from zero
+     */
+    public synchronized int getGameIndex(int gameId) {
+        return gameIndexes[gameId];
+    }
+
+    /**
+     * The values of one header for every game.
+     */
+    private static class Column {
+
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private int[] rows = new int[1024];
+        private int[][] postings = new int[16][];
+        private int[] postingSizes = new int[16];
+
+        private int getCode(String value) {
+            return codes.getOrDefault(value, -1);
+        }
+
+        private void add(int gameId, String value) {
+            String thisValue = value == null ? "" : value;
+            int code = codes.computeIfAbsent(thisValue, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+            if (code == postings.length) {
+                postings = Arrays.copyOf(postings, code * 2);
+                postingSizes = Arrays.copyOf(postingSizes, code * 2);
+            }
+            if (postings[code] == null) {
+                postings[code] = new int[4];
+            } else if (postingSizes[code] == postings[code].length) {
+                postings[code] = Arrays.copyOf(postings[code], postingSizes[code] * 2);
+            }
+            postings[code][postingSizes[code]++] = gameId;
+            if (gameId == rows.length) {
+                rows = Arrays.copyOf(rows, gameId * 2);
+            }
+            rows[gameId] = code;
+        }
+
+        private String get(int gameId) {
+            return values.get(rows[gameId]);
+        }
+
+        /**
+         * Add the games whose value matches to the result.
+         */
+        private void match(Predicate<String> predicate, BitSet result) {
+            for (int code = 0; code < values.size(); code++) {
+                if (predicate.test(values.get(code))) {
+                    int[] posting = postings[code];
+                    for (int i = 0; i < postingSizes[code]; i++) {
+                        result.set(posting[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void save(Path storeFile) throws IOException {
+        Files.createDirectories(storeFile.toAbsolutePath().getParent());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(storeFile), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(size);
+            for (Column column : columns) {
+                output.writeInt(column.values.size());
+                for (String value : column.values) {
+                    output.writeUTF(value);
+                }
+                for (int gameId = 0; gameId < size; gameId++) {
+                    output.writeInt(column.rows[gameId]);
+                }
+            }
+            for (int gameId = 0; gameId < size; gameId++) {
+                output.writeInt(dates[gameId]);
+                output.writeInt(gameIndexes[gameId]);
+            }
+        }
+    }
+
+    public static GameHeaderStore load(Path storeFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(storeFile), 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a game header store");
+            }
+            GameHeaderStore store = new GameHeaderStore();
+            int count = input.readInt();
+            String[][] columnValues = new String[store.columns.length][];
+            int[][] columnRows = new int[store.columns.length][count];
+            for (int i = 0; i < store.columns.length; i++) {
+                columnValues[i] = new String[input.readInt()];
+                for (int code = 0; code < columnValues[i].length; code++) {
+                    columnValues[i][code] = input.readUTF();
+                }
+                for (int gameId = 0; gameId < count; gameId++) {
+                    columnRows[i][gameId] = input.readInt();
+                }
+            }
+            int[] dates = new int[count];
+            int[] gameIndexes = new int[count];
+            for (int gameId = 0; gameId < count; gameId++) {
+                dates[gameId] = input.readInt();
+                gameIndexes[gameId] = input.readInt();
+            }
+            // Adding the games again rebuilds the lists of games per value.
+            Game game = new Game();
+            for (int gameId = 0; gameId < count; gameId++) {
+                game.setSente(columnValues[0][columnRows[0][gameId]]);
+                game.setGote(columnValues[1][columnRows[1][gameId]]);
+                game.setPlace(columnValues[2][columnRows[2][gameId]]);
+                game.setTournament(columnValues[3][columnRows[3][gameId]]);
+                game.setHandicap(columnValues[4][columnRows[4][gameId]]);
+                game.setTimeLimit(columnValues[5][columnRows[5][gameId]]);
+                store.add(Path.of(columnValues[6][columnRows[6][gameId]]), gameIndexes[gameId], game);
+                store.dates[gameId] = dates[gameId];
+            }
+            return store;
+        }
+    }
+
+    /**
+     * @return the store in the user data directory, or an empty store if
+     * there is none or it cannot be read
+     */
+    public static GameHeaderStore loadDefault() {
+        Path storeFile = getDefaultPath();
+        if (Files.isRegularFile(storeFile)) {
+            try {
+                return load(storeFile);
+            } catch (IOException ex) {
+                Logger.getLogger(GameHeaderStore.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        return new GameHeaderStore();
+    }
+
+    public static Path getDefaultPath() {
+        AppDirs appDirs = AppDirsFactory.getInstance();
+        return Path.of(appDirs.getUserDataDir("Shogi Explorer", null, null), DEFAULT_FILE_NAME);
+    }
+
+    /**
+     * Add games to the store in the user data directory, or search it. The
+     * arguments are either "add", the corpus path, an optional number of
+     * threads and an optional "sjis", or "find" followed by conditions such
+     * as player=name, tournament=name, handicap=香落ち, from=20200101 or
+     * to=20211231.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0 || !(args[0].equals("find") || args[0].equals("add") && args.length > 1)) {
+            System.out.println("Usage: GameHeaderStore add <corpus> [threads] [sjis] | find [name=value]...");
+            return;
+        }
+        GameHeaderStore store = loadDefault();
+        try {
+            if (args[0].equals("add")) {
+                KifImporter.Stats stats = KifImporter.Corpus.fromArgs(args, 1).importGames(store::add);
+                store.save(getDefaultPath());
+                System.out.println(stats);
+                System.out.println(String.format("%,d games in store", store.size()));
+            } else {
+                Query query = getQuery(Arrays.copyOfRange(args, 1, args.length));
+                long start = System.nanoTime();
+                int[] result = store.find(query);
+                long nanos = System.nanoTime() - start;
+                System.out.println(String.format("%,d of %,d games  %.3f ms", result.length, store.size(), nanos / 1_000_000.0));
+                for (int i = 0; i < Math.min(result.length, 20); i++) {
+                    int gameId = result[i];
+                    System.out.println(StringUtils.formatDate(store.getDate(gameId)) + "  " + store.getSente(gameId) + " - " + store.getGote(gameId)
+                            + "  " + store.getTournament(gameId) + "  " + store.getFile(gameId).getFileName() + " #" + (store.getGameIndex(gameId) + 1));
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(GameHeaderStore.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private static Query getQuery(String[] conditions) {
+        Query query = new Query();
+        for (String condition : conditions) {
+            int separator = condition.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Unknown condition: " + condition);
+            }
+            String value = condition.substring(separator + 1);
+            switch (condition.substring(0, separator)) {
+                case "player" ->
+                    query.setPlayer(value);
+                case "sente" ->
+                    query.setSente(value);
+                case "gote" ->
+                    query.setGote(value);
+                case "place" ->
+                    query.setPlace(value);
+                case "tournament" ->
+                    query.setTournament(value);
+                case "handicap" ->
+                    query.setHandicap(value);
+                case "timeLimit" ->
+                    query.setTimeLimit(value);
+                case "from" ->
+                    query.setDateFrom(Integer.parseInt(value));
+                case "to" ->
+                    query.setDateTo(Integer.parseInt(value));
+                default ->
+                    throw new IllegalArgumentException("Unknown condition: " + condition);
+            }
+        }
+        return query;
+    }
+}
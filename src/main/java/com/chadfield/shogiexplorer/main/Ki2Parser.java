@@ -0,0 +1,299 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Bitboard;
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Board.Turn;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.Koma;
+import com.chadfield.shogiexplorer.objects.Move;
+import com.chadfield.shogiexplorer.objects.MoveGenerator;
+import com.chadfield.shogiexplorer.objects.Notation;
+import com.chadfield.shogiexplorer.objects.Square;
+import com.chadfield.shogiexplorer.utils.NotationUtils;
+import com.chadfield.shogiexplorer.utils.ParserUtils;
+import com.chadfield.shogiexplorer.utils.StringPool;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads games in KI2 format, where moves are given only in Japanese notation
+ * such as ▲７六歩 or △同　金右, several to a line.
+ *
+ * The source square of each move is found from the pieces of the right type
+ * that attack the destination. When there is more than one, the one whose
+ * {@link NotationUtils#getDisambiguation} matches the move is chosen.
+ */
+public class Ki2Parser {
+
+    private static final String MOVE_MARKS = "▲△☗☖";
+    private static final String VARIATION = "変化：";
+    private static final String NOT_PROMOTED = "不成";
+    private static final String NOT_PROMOTED_SHORT = "生";
+    private static final String FULL_WIDTH_SPACE = "　";
+
+    private Ki2Parser() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Read one KI2 game into a Game without a move list model.
+     */
+    public static Game parseGame(BufferedReader reader) throws IOException {
+        Game game = new Game();
+        KifParser.GameBuilder gameBuilder = new KifParser.GameBuilder(game, null);
+        parse(reader, gameBuilder);
+        game.setPositionList(gameBuilder.positionList);
+        return game;
+    }
+
+    /**
+     * Read one KI2 game, passing each part of it to the handler as it is read.
+     *
+     * @throws IllegalArgumentException if a move cannot be read or played
+     */
+    public static void parse(BufferedReader reader, KifHandler handler) throws IOException {
+        Board board = null;
+        String handicap = "";
+        int moveNumber = 1;
+        Square lastDestination = null;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmedLine = line.strip();
+            boolean isMoveLine = isMoveLine(trimmedLine);
+            if (board == null && !isMoveLine) {
+                int separator = line.indexOf(KifParser.HEADER_SEPARATOR);
+                if (separator > 0 && !line.startsWith("*") && !line.startsWith("#")) {
+                    String name = line.substring(0, separator);
+                    String value = line.substring(separator + 1).trim();
+                    if (name.equals(KifParser.HANDICAP)) {
+                        handicap = value;
+                    }
+                    handler.header(name, value);
+                }
+                continue;
+            }
+
+            if (board == null) {
+                board = SFENParser.parse(KifParser.getStartSFEN(handicap));
+                handler.startPosition(board);
+            }
+
+            if (line.startsWith("*")) {
+                handler.comment(line.substring(1));
+            } else if (trimmedLine.startsWith(NotationUtils.MADE)) {
+                handler.endOfGame(moveNumber, trimmedLine);
+                break;
+            } else if (line.startsWith(VARIATION)) {
+                break;
+            } else if (isMoveLine) {
+                for (String token : getMoveTokens(trimmedLine)) {
+                    // Some files give the ending as a move, such as △投了.
+                    String ending = token.substring(1).strip();
+                    if (ParserUtils.isEndOfGame(ending)) {
+                        handler.endOfGame(moveNumber, ending);
+                        return;
+                    }
+                    int move = getMove(board, token, lastDestination);
+                    Notation notation = new Notation();
+                    notation.setJapanese(StringPool.NOTATION.intern(NotationUtils.getJapaneseMove(board, move, lastDestination)));
+                    notation.setEngineMove(StringPool.NOTATION.intern(Move.toUSI(move)));
+                    board.makeMove(move);
+                    lastDestination = board.getDestination();
+                    handler.move(moveNumber++, board, board.getSource(), lastDestination, notation);
+                }
+            }
+        }
+    }
+
+    static boolean isMoveLine(String trimmedLine) {
+        return !trimmedLine.isEmpty() && MOVE_MARKS.indexOf(trimmedLine.charAt(0)) >= 0;
+    }
+
+    private static List<String> getMoveTokens(String line) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= line.length(); i++) {
+            if (i == line.length() || MOVE_MARKS.indexOf(line.charAt(i)) >= 0) {
+                result.add(line.substring(start, i).strip());
+                start = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param token a single move such as ▲７六歩 or △同　金右
+     * @return the move
+     */
+    private static int getMove(Board board, String token, Square lastDestination) {
+        String move = token.substring(1).replace(FULL_WIDTH_SPACE, "").replace(" ", "");
+        Square destination;
+        int k;
+        if (move.startsWith(NotationUtils.SAME)) {
+            destination = lastDestination;
+            k = NotationUtils.SAME.length();
+        } else {
+            destination = move.length() < 2 ? null : Square.valueOf(getDigit(move.charAt(0)), getKanjiNumber(move.charAt(1)));
+            k = 2;
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("Invalid KI2 move: " + token);
+        }
+
+        int komaLength = move.length() > k + 1 && move.charAt(k) == NotationUtils.PROMOTED.charAt(0) ? 2 : 1;
+        Koma.Type komaType = move.length() < k + komaLength ? null : getKomaType(move.substring(k, k + komaLength), board.getNextTurn());
+        if (komaType == null) {
+            throw new IllegalArgumentException("Invalid KI2 move: " + token);
+        }
+        String modifiers = move.substring(k + komaLength);
+
+        boolean drop = modifiers.endsWith(NotationUtils.DROPPED);
+        if (drop) {
+            modifiers = modifiers.substring(0, modifiers.length() - NotationUtils.DROPPED.length());
+        }
+        boolean promote = false;
+        if (modifiers.endsWith(NOT_PROMOTED)) {
+            modifiers = modifiers.substring(0, modifiers.length() - NOT_PROMOTED.length());
+        } else if (modifiers.endsWith(NOT_PROMOTED_SHORT)) {
+            modifiers = modifiers.substring(0, modifiers.length() - NOT_PROMOTED_SHORT.length());
+        } else if (modifiers.endsWith(NotationUtils.PROMOTED)) {
+            modifiers = modifiers.substring(0, modifiers.length() - NotationUtils.PROMOTED.length());
+            promote = true;
+        }
+
+        int result = findMove(board, destination, komaType, modifiers, drop, promote, token);
+        if (!MoveGenerator.isLegal(board, result)) {
+            throw new IllegalArgumentException("Illegal KI2 move: " + token);
+        }
+        return result;
+    }
+
+    private static int findMove(Board board, Square destination, Koma.Type komaType, String modifiers, boolean drop, boolean promote, String token) {
+        int to = destination.getIndex();
+        long sourceLo = drop ? 0 : board.getAttackersLo(komaType, to);
+        long sourceHi = drop ? 0 : board.getAttackersHi(komaType, to);
+        if ((sourceLo | sourceHi) == 0) {
+            if (board.getInHandCount(komaType) == 0) {
+                throw new IllegalArgumentException("Invalid KI2 move: " + token);
+            }
+            return Move.drop(komaType, to);
+        }
+        if (Bitboard.count(sourceLo, sourceHi) == 1) {
+            return Move.normal(Bitboard.first(sourceLo, sourceHi), to, promote);
+        }
+        return Move.normal(getSource(board, sourceLo, sourceHi, destination, komaType, modifiers, promote, token), to, promote);
+    }
+
+    /**
+     * @return the source whose disambiguation matches the modifiers,
+     * preferring a legal move if more than one does
+     */
+    private static int getSource(Board board, long sourceLo, long sourceHi, Square destination, Koma.Type komaType, String modifiers, boolean promote, String token) {
+        String wanted = normalize(modifiers);
+        int result = -1;
+        int legalResult = -1;
+        int legalCount = 0;
+        long remainingLo = sourceLo;
+        long remainingHi = sourceHi;
+        while ((remainingLo | remainingHi) != 0) {
+            int index = Bitboard.first(remainingLo, remainingHi);
+            remainingLo &= ~Bitboard.lo(index);
+            remainingHi &= ~Bitboard.hi(index);
+            boolean legal = MoveGenerator.isLegal(board, Move.normal(index, destination.getIndex(), promote));
+            if (legal) {
+                legalResult = index;
+                legalCount++;
+            }
+            String disambiguation = NotationUtils.getDisambiguation(board, Square.valueOf(index), destination, komaType);
+            if (normalize(disambiguation).equals(wanted) && (result < 0 || legal)) {
+                result = index;
+            }
+        }
+        if (result < 0 && legalCount == 1) {
+            // The file left out a modifier that only a pinned piece would need.
+            result = legalResult;
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException("Ambiguous KI2 move: " + token);
+        }
+        return result;
+    }
+
+    private static String normalize(String modifiers) {
+        // Files differ in the order of modifiers and sometimes use 行 for 上.
+        char[] chars = modifiers.replace(NotationUtils.UPWARD_UD, NotationUtils.UPWARD).toCharArray();
+        Arrays.sort(chars);
+        return new String(chars);
+    }
+
+    private static int getDigit(char thisChar) {
+        if (thisChar >= '１' && thisChar <= '９') {
+            return thisChar - '１' + 1;
+        }
+        return thisChar - '0';
+    }
+
+    private static int getKanjiNumber(char thisChar) {
+        return "一二三四五六七八九".indexOf(thisChar) + 1;
+    }
+
+    private static Koma.Type getKomaType(String name, Turn turn) {
+        Koma.Type senteType = switch (name) {
+            case "歩" ->
+                Koma.Type.SFU;
+            case "香" ->
+                Koma.Type.SKY;
+            case "桂" ->
+                Koma.Type.SKE;
+            case "銀" ->
+                Koma.Type.SGI;
+            case "金" ->
+                Koma.Type.SKI;
+            case "角" ->
+                Koma.Type.SKA;
+            case "飛" ->
+                Koma.Type.SHI;
+            case "玉", "王" ->
+                Koma.Type.SGY;
+            case "と" ->
+                Koma.Type.STO;
+            case "成香", "杏" ->
+                Koma.Type.SNY;
+            case "成桂", "圭" ->
+                Koma.Type.SNK;
+            case "成銀", "全" ->
+                Koma.Type.SNG;
+            case "馬" ->
+                Koma.Type.SUM;
+            case "竜", "龍" ->
+                Koma.Type.SRY;
+            default ->
+                null;
+        };
+        if (senteType == null || turn == Turn.SENTE) {
+            return senteType;
+        }
+        return ParserUtils.getOtherSideType(senteType);
+    }
+}
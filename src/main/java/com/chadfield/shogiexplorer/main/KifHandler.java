@@ -0,0 +1,66 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Notation;
+import com.chadfield.shogiexplorer.objects.Square;
+
+/**
+ * Receives the parts of a KIF game from {@link KifParser#parse} as they are
+ * read. Every method does nothing by default.
+ */
+public interface KifHandler {
+
+    /**
+     * A header line such as 先手：name.
+     *
+     * @param name the text before the ：
+     * @param value the trimmed text after it
+     */
+    default void header(String name, String value) {
+    }
+
+    /**
+     * The moves are about to start. The same board is passed to every
+     * callback for the game, so it must be copied to be kept.
+     */
+    default void startPosition(Board board) {
+    }
+
+    /**
+     * A move has been played on the board.
+     *
+     * @param source the square moved from, or null for a drop
+     */
+    default void move(int moveNumber, Board board, Square source, Square destination, Notation notation) {
+    }
+
+    /**
+     * A comment, or a line that could not be read as a move, following the
+     * last position.
+     */
+    default void comment(String comment) {
+    }
+
+    /**
+     * The game ended without a move, for example 投了 or 千日手.
+     */
+    default void endOfGame(int moveNumber, String reason) {
+    }
+}
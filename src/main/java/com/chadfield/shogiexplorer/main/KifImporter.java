@@ -0,0 +1,380 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.CompactPositionList;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.utils.CharsetUtils;
+import com.chadfield.shogiexplorer.utils.StringPool;
+import com.chadfield.shogiexplorer.utils.StringUtils;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads many KIF, KI2 or CSA games at once, either every .kif, .kifu, .ki2
+ * and .csa file under a directory or every game in one large file.
+ *
+ * The charset of each file is detected from its first bytes; the charset
+ * given is only used for files that start with plain ASCII.
+ *
+ * Games are parsed on a fixed number of threads with a bounded queue, so a
+ * large corpus does not have to fit in memory. Each game is passed to the
+ * consumer as soon as it is read, from whichever thread read it, with its
+ * positions held as a {@link CompactPositionList} so that many can be kept.
+ */
+public class KifImporter {
+
+    private enum Format {
+        KIF, KI2, CSA
+    }
+
+    private KifImporter() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Receives each game read together with where it was read from.
+     */
+    public interface GameConsumer {
+
+        /**
+         * @param gameIndex the number of the game within its file, from zero
+         */
+        void accept(Path file, int gameIndex, Game game);
+    }
+
+    /**
+     * Counts of the games read and the reasons for any failures.
+     */
+    public static class Stats {
+
+        private final AtomicLong games = new AtomicLong();
+        private final AtomicLong moves = new AtomicLong();
+        private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+        private long nanos;
+
+        private void addGame(Game game) {
+            games.incrementAndGet();
+            moves.addAndGet(game.getPositionList().size() - 1L);
+        }
+
+        private void addFailure(String reason) {
+            failures.computeIfAbsent(reason, key -> new LongAdder()).increment();
+        }
+
+        /**
+         * @return the games
+         */
+        public long getGames() {
+            return games.get();
+        }
+
+        /**
+         * @return the moves
+         */
+        public long getMoves() {
+            return moves.get();
+        }
+
+        /**
+         * @return the failure counts by reason
+         */
+        public Map<String, Long> getFailures() {
+            Map<String, Long> result = new TreeMap<>();
+            failures.forEach((reason, count) -> result.put(reason, count.sum()));
+            return result;
+        }
+
+        public long getGamesPerSecond() {
+            return nanos == 0 ? 0 : games.get() * 1_000_000_000L / nanos;
+        }
+
+        /**
+         * The counts, followed by the state of the string pools, which are
+         * shared by every import since the program started.
+         */
+        @Override
+        public String toString() {
+            return String.format("%,d games  %,d moves  %,d ms  %,d games/s  failures %s%n%s%n%s",
+                    games.get(), moves.get(), nanos / 1_000_000, getGamesPerSecond(), getFailures(),
+                    StringPool.SFEN, StringPool.NOTATION);
+        }
+    }
+
+    /**
+     * The corpus given on the command line of the import tools: a file or a
+     * directory, optionally followed by the number of threads and "sjis".
+     */
+    public static class Corpus {
+
+        private final Path path;
+        private final Charset charset;
+        private final int threads;
+
+        private Corpus(Path path, Charset charset, int threads) {
+            this.path = path;
+            this.charset = charset;
+            this.threads = threads;
+        }
+
+        /**
+         * @param first the index of the corpus path in the arguments
+         */
+        public static Corpus fromArgs(String[] args, int first) {
+            Path path = Path.of(args[first]);
+            int threads = args.length > first + 1 ? Integer.parseInt(args[first + 1]) : Runtime.getRuntime().availableProcessors();
+            Charset charset = args.length > first + 2 && args[first + 2].equalsIgnoreCase("sjis") ? CharsetUtils.SHIFT_JIS : StandardCharsets.UTF_8;
+            return new Corpus(path, charset, threads);
+        }
+
+        /**
+         * @return the path
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return the charset
+         */
+        public Charset getCharset() {
+            return charset;
+        }
+
+        /**
+         * @return the threads
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        public Stats importGames(GameConsumer consumer) throws IOException {
+            return importPath(path, charset, threads, consumer);
+        }
+    }
+
+    /**
+     * Read the games in a file, or in every file under a directory.
+     */
+    public static Stats importPath(Path path, Charset charset, int threads, GameConsumer consumer) throws IOException {
+        return Files.isDirectory(path)
+                ? importDirectory(path, charset, threads, consumer)
+                : importFile(path, charset, threads, consumer);
+    }
+
+    /**
+     * Read every .kif, .kifu, .ki2 and .csa file under a directory, splitting
+     * each file into games as {@link #importFile} does.
+     */
+    public static Stats importDirectory(Path directory, Charset charset, int threads, Consumer<Game> consumer) throws IOException {
+        return importDirectory(directory, charset, threads, (file, gameIndex, game) -> consumer.accept(game));
+    }
+
+    public static Stats importDirectory(Path directory, Charset charset, int threads, GameConsumer consumer) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(path -> Files.isRegularFile(path) && getFormat(path) != null).collect(Collectors.toList());
+        }
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        ThreadPoolExecutor executor = getExecutor(threads);
+        // Files are read and split on this thread so that the games of one
+        // large file are parsed in parallel as well.
+        for (Path file : files) {
+            try (BufferedReader reader = CharsetUtils.newReader(Files.newInputStream(file), charset)) {
+                Format format = getFormat(file);
+                splitGames(reader, format, (chunk, gameIndex) -> executor.execute(() -> parseGame(chunk, format, stats, game -> consumer.accept(file, gameIndex, game))));
+            } catch (MalformedInputException ex) {
+                stats.addFailure("malformed input");
+            } catch (IOException | UncheckedIOException ex) {
+                stats.addFailure("read error");
+            }
+        }
+        awaitTermination(executor);
+        stats.nanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    /**
+     * Read every game in one file, splitting a KIF or KI2 file where a new
+     * header starts after the moves of the previous game and a CSA file at
+     * each /.
+     */
+    public static Stats importFile(Path file, Charset charset, int threads, Consumer<Game> consumer) throws IOException {
+        return importFile(file, charset, threads, (path, gameIndex, game) -> consumer.accept(game));
+    }
+
+    public static Stats importFile(Path file, Charset charset, int threads, GameConsumer consumer) throws IOException {
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        ThreadPoolExecutor executor = getExecutor(threads);
+        try (BufferedReader reader = CharsetUtils.newReader(Files.newInputStream(file), charset)) {
+            Format format = getFormat(file) == null ? Format.KIF : getFormat(file);
+            splitGames(reader, format, (chunk, gameIndex) -> executor.execute(() -> parseGame(chunk, format, stats, game -> consumer.accept(file, gameIndex, game))));
+        } catch (MalformedInputException ex) {
+            stats.addFailure("malformed input");
+        } finally {
+            awaitTermination(executor);
+        }
+        stats.nanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    private static ThreadPoolExecutor getExecutor(int threads) {
+        // When the queue is full the reading thread parses the game itself.
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static void awaitTermination(ThreadPoolExecutor executor) {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Still parsing.
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Format getFormat(Path path) {
+        return switch (StringUtils.getFileExtension(path.getFileName().toString()).toLowerCase()) {
+            case "kif", "kifu" ->
+                Format.KIF;
+            case "ki2", "ki2u" ->
+                Format.KI2;
+            case "csa" ->
+                Format.CSA;
+            default ->
+                null;
+        };
+    }
+
+    private static void splitGames(BufferedReader reader, Format format, ObjIntConsumer<String> chunkConsumer) throws IOException {
+        StringBuilder chunk = new StringBuilder();
+        int gameIndex = 0;
+        boolean inMoves = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (format == Format.CSA) {
+                if (!line.equals(CsaParser.GAME_SEPARATOR)) {
+                    chunk.append(line).append('\n');
+                } else if (chunk.length() > 0) {
+                    chunkConsumer.accept(chunk.toString(), gameIndex++);
+                    chunk.setLength(0);
+                }
+                continue;
+            }
+            if (inMoves && isGameStart(line)) {
+                chunkConsumer.accept(chunk.toString(), gameIndex++);
+                chunk.setLength(0);
+                inMoves = false;
+            }
+            if (format == Format.KIF ? KifParser.isHeader(line) : Ki2Parser.isMoveLine(line.strip())) {
+                inMoves = true;
+            }
+            chunk.append(line).append('\n');
+        }
+        if (chunk.length() > 0) {
+            chunkConsumer.accept(chunk.toString(), gameIndex++);
+        }
+    }
+
+    private static boolean isGameStart(String line) {
+        if (line.startsWith("#")) {
+            return true;
+        }
+        if (line.startsWith(KifParser.VARIATION)) {
+            return false;
+        }
+        return line.indexOf(KifParser.HEADER_SEPARATOR) > 0 && !line.startsWith("*") && !Character.isWhitespace(line.charAt(0)) && !Character.isDigit(line.charAt(0));
+    }
+
+    private static void parseGame(String chunk, Format format, Stats stats, Consumer<Game> consumer) {
+        Game game;
+        try {
+            BufferedReader reader = new BufferedReader(new StringReader(chunk));
+            game = switch (format) {
+                case KI2 ->
+                    Ki2Parser.parseGame(reader);
+                case CSA ->
+                    CsaParser.parseGame(reader);
+                default ->
+                    KifParser.parseGame(reader);
+            };
+            if (game.getPositionList().size() > 1) {
+                game.setPositionList(CompactPositionList.of(game.getPositionList()));
+            }
+        } catch (IOException ex) {
+            stats.addFailure("read error");
+            return;
+        } catch (IllegalArgumentException ex) {
+            stats.addFailure("parse error");
+            return;
+        } catch (RuntimeException ex) {
+            stats.addFailure(ex.getClass().getSimpleName());
+            return;
+        }
+        if (game.getPositionList().size() < 2) {
+            stats.addFailure("no moves");
+            return;
+        }
+        stats.addGame(game);
+        consumer.accept(game);
+    }
+
+    /**
+     * Print the statistics for importing a directory or a file. The arguments
+     * are the path, an optional number of threads and an optional "sjis".
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: KifImporter <path> [threads] [sjis]");
+            return;
+        }
+        try {
+            Stats stats = Corpus.fromArgs(args, 0).importGames((file, gameIndex, game) -> { });
+            System.out.println(stats);
+        } catch (IOException ex) {
+            Logger.getLogger(KifImporter.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
@@ -16,7 +16,6 @@
  */
 package com.chadfield.shogiexplorer.main;
 
-import com.chadfield.shogiexplorer.objects.GameAnalyser;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
@@ -28,31 +27,45 @@ import java.util.logging.Logger;
 import javax.swing.DefaultListModel;
 import com.chadfield.shogiexplorer.objects.Board;
 import com.chadfield.shogiexplorer.objects.Board.Turn;
-import com.chadfield.shogiexplorer.objects.Coordinate;
+import com.chadfield.shogiexplorer.objects.Square;
 import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.GameTree;
 import com.chadfield.shogiexplorer.objects.Koma;
+import com.chadfield.shogiexplorer.objects.Move;
+import com.chadfield.shogiexplorer.objects.MoveGenerator;
 import com.chadfield.shogiexplorer.objects.Notation;
 import com.chadfield.shogiexplorer.objects.Position;
+import com.chadfield.shogiexplorer.utils.CharsetUtils;
+import com.chadfield.shogiexplorer.utils.NotationFormatter;
 import com.chadfield.shogiexplorer.utils.NotationUtils;
 import com.chadfield.shogiexplorer.utils.ParserUtils;
-import com.ibm.icu.text.Transliterator;
+import com.chadfield.shogiexplorer.utils.StringUtils;
+import com.chadfield.shogiexplorer.utils.StringPool;
 import java.io.StringReader;
-import java.nio.charset.Charset;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 
 public class KifParser {
 
-    private static final String DATE = "開始日時：";
-    private static final String PLACE = "場所：";
-    private static final String TIME_LIMIT = "持ち時間：";
-    private static final String TOURNAMENT = "棋戦：";
-    private static final String SENTE = "先手：";
-    private static final String GOTE = "後手：";
+    static final String DATE = "開始日時";
+    static final String PLACE = "場所";
+    static final String TIME_LIMIT = "持ち時間";
+    static final String TOURNAMENT = "棋戦";
+    static final String SENTE = "先手";
+    static final String GOTE = "後手";
     private static final String MOVE_HEADER = "手数----指手---------消費時間-";
     private static final String MULTI_WHITESPACE = "\\s+|\\u3000";
-    private static final String HANDICAP = "手合割：";
+    static final String HANDICAP = "手合割";
+    static final String HEADER_SEPARATOR = "：";
+    static final String VARIATION = "変化：";
+    static final String[] HANDICAPS = {
+        Game.HANDICAP_NONE, Game.HANDICAP_LANCE, Game.HANDICAP_BISHOP, Game.HANDICAP_ROOK,
+        Game.HANDICAP_ROOK_LANCE, Game.HANDICAP_2_PIECE, Game.HANDICAP_4_PIECE,
+        Game.HANDICAP_6_PIECE, Game.HANDICAP_8_PIECE
+    };
 
     private KifParser() {
         throw new IllegalStateException("Utility class");
@@ -62,79 +75,286 @@ public class KifParser {
         ResourceBundle bundle = ResourceBundle.getBundle("Bundle");
         moveListModel.clear();
         moveListModel.addElement(bundle.getString("label_start_position"));
-        Board board = null;
         Game game = new Game();
         game.setAnalysisPositionList(analysisPositionList);
-        LinkedList<Position> positionList = new LinkedList<>();
-
-        boolean foundHeader = false;
+        GameBuilder gameBuilder = new GameBuilder(game, moveListModel);
 
         BufferedReader fileReader = null;
 
         try {
             if (clipboardStr == null) {
-                if (shiftFile) {
-                    fileReader = Files.newBufferedReader(kifFile.toPath(), Charset.forName("SJIS"));
-                } else {
-                    fileReader = Files.newBufferedReader(kifFile.toPath(), StandardCharsets.UTF_8);
-                }
+                fileReader = CharsetUtils.newReader(Files.newInputStream(kifFile.toPath()), shiftFile ? CharsetUtils.SHIFT_JIS : StandardCharsets.UTF_8);
             } else {
                 fileReader = new BufferedReader(new StringReader(clipboardStr));
             }
+            String extension = clipboardStr == null ? StringUtils.getFileExtension(kifFile.getName()).toLowerCase() : "";
+            switch (extension) {
+                case "csa" ->
+                    CsaParser.parse(fileReader, gameBuilder);
+                case "ki2", "ki2u" ->
+                    Ki2Parser.parse(fileReader, gameBuilder);
+                default -> {
+                    ParseState state = new ParseState();
+                    state.lenient = true;
+                    parse(fileReader, gameBuilder, state);
+                    game.setParsedLineCount(state.usedLineCount);
+                    game.setParsedTextHash(state.usedTextHash);
+                    game.setGameTree(readVariations(fileReader, gameBuilder.positionList));
+                }
+            }
+        } catch (MalformedInputException ex) {
+            return null;
+        } catch (IllegalArgumentException ex) {
+            if (gameBuilder.positionList.isEmpty()) {
+                return null;
+            }
+            // Keep the moves read before the one that could not be played.
+            Logger.getLogger(KifParser.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if (fileReader != null) {
+                fileReader.close();
+            }
+        }
 
-            int count = 1;
-            String line;
-            Coordinate lastDestination = null;
-            while ((line = fileReader.readLine()) != null) {
-                if (!foundHeader) {
-                    foundHeader = isHeader(line);
-                    if (foundHeader || isComment(line)) {
-                        continue;
-                    }
-                    parseGameDetails(line, game);
-                } else {
-                    if (board == null) {
-                        board = getStartBoard(game);
-                        positionList.add(new Position(SFENParser.getSFEN(board), null, null, new Notation()));
-                    }
+        game.setPositionList(gameBuilder.positionList);
+        return game;
+    }
 
-                    if (line.isEmpty()) {
-                        break;
-                    }
+    /**
+     * Add the moves and comments that follow the part of a KIF game already
+     * read by parseKif or an earlier call, leaving the existing positions and
+     * move list entries alone. Used when a live game is refreshed.
+     *
+     * @return false if the text no longer starts with what was read before, in
+     * which case nothing is changed and the game must be parsed again
+     */
+    public static boolean appendKif(Game game, DefaultListModel<String> moveListModel, String gameStr) throws IOException {
+        if (game.getParsedLineCount() == 0 || !(game.getPositionList() instanceof LinkedList<Position> positionList) || positionList.isEmpty()) {
+            return false;
+        }
+        BufferedReader reader = new BufferedReader(new StringReader(gameStr));
+        ParseState state = new ParseState();
+        state.lenient = true;
+        while (state.lineCount < game.getParsedLineCount()) {
+            String line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+            state.addLine(line);
+        }
+        if (state.textHash != game.getParsedTextHash()) {
+            return false;
+        }
 
-                    if (isComment(line)) {
-                        positionList.getLast().setComment(positionList.getLast().getComment() + line.substring(1) + "\n");
-                        continue;
-                    }
+        Position lastPosition = positionList.getLast();
+        state.foundHeader = true;
+        state.board = SFENParser.parse(lastPosition.getGameSFEN());
+        state.board.setSource(lastPosition.getSource());
+        state.board.setDestination(lastPosition.getDestination());
+        state.lastDestination = lastPosition.getDestination();
+        state.useLine();
+        GameBuilder gameBuilder = new GameBuilder(game, moveListModel, positionList);
+        gameBuilder.resume(state.board);
+        try {
+            parse(reader, gameBuilder, state);
+        } catch (IllegalArgumentException ex) {
+            // Part of the new text may have been added, so read it all again.
+            return false;
+        }
+        game.setParsedLineCount(state.usedLineCount);
+        game.setParsedTextHash(state.usedTextHash);
+        return true;
+    }
 
-                    if (!isRegularMove(line)) {
-                        break;
-                    }
+    /**
+     * Read one KIF game into a Game without a move list model.
+     */
+    public static Game parseGame(BufferedReader reader) throws IOException {
+        Game game = new Game();
+        GameBuilder gameBuilder = new GameBuilder(game, null);
+        parse(reader, gameBuilder);
+        game.setPositionList(gameBuilder.positionList);
+        return game;
+    }
 
-                    count++;
+    /**
+     * Read one KIF game, passing each part of it to the handler as it is read.
+     * Only the current board is kept, so any number of games can be read in
+     * constant memory.
+     *
+     * @throws IllegalArgumentException if a move cannot be played
+     */
+    public static void parse(BufferedReader reader, KifHandler handler) throws IOException {
+        parse(reader, handler, new ParseState());
+    }
 
-                    board.setMoveCount(count);
+    private static void parse(BufferedReader reader, KifHandler handler, ParseState state) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            state.addLine(line);
+            if (!state.foundHeader) {
+                state.foundHeader = isHeader(line);
+                if (state.foundHeader) {
+                    state.useLine();
+                }
+                if (state.foundHeader || isComment(line)) {
+                    continue;
+                }
+                int separator = line.indexOf(HEADER_SEPARATOR);
+                if (separator > 0) {
+                    String name = line.substring(0, separator);
+                    String value = line.substring(separator + 1).trim();
+                    if (name.equals(HANDICAP)) {
+                        state.handicap = value;
+                    }
+                    handler.header(name, value);
+                }
+            } else {
+                if (state.board == null) {
+                    state.board = SFENParser.parse(getStartSFEN(state.handicap));
+                    handler.startPosition(state.board);
+                }
 
-                    lastDestination = parseRegularMove(board, line, moveListModel, lastDestination, positionList);
+                if (!parseMoveLine(line, handler, state)) {
+                    break;
                 }
+            }
+        }
+    }
 
+    /**
+     * Play the lines of a variation from the position it branches from.
+     *
+     * @param lastDestination the destination of the move before the
+     * variation, for 同
+     */
+    public static void parseMoves(Board board, Square lastDestination, List<String> lines, KifHandler handler) {
+        ParseState state = new ParseState();
+        state.lenient = true;
+        state.board = board;
+        state.lastDestination = lastDestination;
+        for (String line : lines) {
+            if (!parseMoveLine(line, handler, state)) {
+                break;
             }
+        }
+    }
 
-        } catch (MalformedInputException ex) {
-            return null;
-        } finally {
-            if (fileReader != null) {
-                fileReader.close();
+    /**
+     * @return false if the line ends the moves
+     */
+    private static boolean parseMoveLine(String line, KifHandler handler, ParseState state) {
+        if (line.isEmpty()) {
+            return false;
+        }
+
+        if (isComment(line)) {
+            handler.comment(line.substring(1));
+            state.useLine();
+            return true;
+        }
+
+        if (!isRegularMove(line)) {
+            endOfGame(line, handler);
+            return false;
+        }
+
+        try {
+            state.lastDestination = parseRegularMove(line, handler, state);
+        } catch (IllegalArgumentException ex) {
+            if (!state.lenient) {
+                throw ex;
             }
+            // Keep the moves read before the one that could not be played.
+            Logger.getLogger(KifParser.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
         }
+        state.useLine();
+        return true;
+    }
 
-        game.setPositionList(positionList);
-        return game;
+    /**
+     * Read the variations that follow the main line without playing them.
+     * Each 変化：N手 block replaces move N of the most recent line that has
+     * one, since variations are written depth first. The tree is only built
+     * if there is a variation.
+     */
+    private static GameTree readVariations(BufferedReader reader, List<Position> positionList) throws IOException {
+        GameTree gameTree = null;
+        Deque<GameTree.Variation> lines = new ArrayDeque<>();
+        GameTree.Variation variation = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(VARIATION)) {
+                if (gameTree == null) {
+                    gameTree = new GameTree(positionList);
+                }
+                int moveNumber = getVariationMoveNumber(line);
+                while (!lines.isEmpty() && (lines.peek().getMoveNumber() >= moveNumber || lines.peek().getLastMoveNumber() < moveNumber)) {
+                    lines.pop();
+                }
+                variation = gameTree.addVariation(lines.peek(), moveNumber);
+                lines.push(variation);
+            } else if (variation != null && !line.isEmpty()) {
+                variation.addLine(line, getLineMoveNumber(line));
+            }
+        }
+        return gameTree;
+    }
+
+    private static int getVariationMoveNumber(String line) {
+        String number = line.substring(VARIATION.length()).replace("手", "").trim();
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static int getLineMoveNumber(String line) {
+        try {
+            return Integer.parseInt(line.trim().split(MULTI_WHITESPACE)[0]);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * How far a parse has got, so that it can carry on when more of the game
+     * arrives. The hash covers every line read, and the used values are taken
+     * after the last line that changed the game. A lenient parse, for games
+     * shown to the user, ends the game at an ending it does not know or a
+     * move it cannot play rather than failing.
+     */
+    private static class ParseState {
+
+        private boolean lenient;
+        private Board board;
+        private String handicap = "";
+        private boolean foundHeader;
+        private Square lastDestination;
+        private int lineCount;
+        private int textHash;
+        private int usedLineCount;
+        private int usedTextHash;
+
+        private void addLine(String line) {
+            lineCount++;
+            textHash = textHash * 31 + line.hashCode();
+        }
+
+        private void useLine() {
+            usedLineCount = lineCount;
+            usedTextHash = textHash;
+        }
     }
 
-    private static Board getStartBoard(Game game) {
-        String sfen;
-        sfen = switch (game.getHandicap()) {
+    /**
+     * @param handicap the handicap, one of the Game.HANDICAP_ values
+     * @return the SFEN of the starting position for the handicap
+     */
+    public static String getStartSFEN(String handicap) {
+        return switch (handicap) {
             case Game.HANDICAP_LANCE ->
                 "lnsgkgsn1/1r5b1/ppppppppp/9/9/9/PPPPPPPPP/1B5R1/LNSGKGSNL w - 1";
             case Game.HANDICAP_BISHOP ->
@@ -154,10 +374,11 @@ public class KifParser {
             default ->
                 "lnsgkgsnl/1r5b1/ppppppppp/9/9/9/PPPPPPPPP/1B5R1/LNSGKGSNL b - 1";
         };
-        return SFENParser.parse(sfen);
     }
 
-    private static Coordinate parseRegularMove(Board board, String line, DefaultListModel<String> moveListModel, Coordinate lastDestination, LinkedList<Position> positionList) {
+    private static Square parseRegularMove(String line, KifHandler handler, ParseState state) {
+        Board board = state.board;
+        Square lastDestination = state.lastDestination;
         String[] splitLine = line.trim().split(MULTI_WHITESPACE);
 
         int gameNum;
@@ -165,20 +386,43 @@ public class KifParser {
         try {
             gameNum = Integer.parseInt(splitLine[0]);
         } catch (NumberFormatException ex) {
-            positionList.getLast().setComment(positionList.getLast().getComment() + line + "\n");
+            handler.comment(line);
             return lastDestination;
         }
 
         String move = extractRegularMove(splitLine, isSame(line));
 
-        Position position = executeMove(board, move, lastDestination);
-        if (position != null) {
-            lastDestination = position.getDestination();
-            addMoveToMoveList(moveListModel, gameNum, position.getNotation().getJapanese(), board.getNextTurn());
-            positionList.add(position);
+        if (!isRegularMove(move)) {
+            if (!state.lenient && !ParserUtils.isEndOfGame(move)) {
+                throw new IllegalArgumentException("Invalid KIF move: " + line.trim());
+            }
+            handler.endOfGame(gameNum, move);
+            return lastDestination;
         }
 
-        return lastDestination;
+        Square thisSource = isDrop(move) ? null : NotationUtils.getSourceCoordinate(move);
+        Square thisDestination = isSame(move) ? lastDestination : getDestinationCoordinate(move);
+        if (thisDestination == null || (thisSource == null && !isDrop(move))) {
+            throw new IllegalArgumentException("Invalid KIF move: " + line.trim());
+        }
+        Notation notation = executeMove(board, move, thisSource, thisDestination, lastDestination);
+        if (notation == null) {
+            throw new IllegalArgumentException("Invalid KIF move: " + line.trim());
+        }
+        handler.move(gameNum, board, thisSource, thisDestination, notation);
+
+        return thisDestination;
+    }
+
+    private static void endOfGame(String line, KifHandler handler) {
+        String[] splitLine = line.trim().split(MULTI_WHITESPACE);
+        if (splitLine.length > 1) {
+            try {
+                handler.endOfGame(Integer.parseInt(splitLine[0]), splitLine[1]);
+            } catch (NumberFormatException ex) {
+                // Not a numbered line, such as the summary that follows the moves.
+            }
+        }
     }
 
     private static String extractRegularMove(String[] moveArray, boolean isSame) {
@@ -189,40 +433,34 @@ public class KifParser {
         return move;
     }
 
-    private static void parseGameDetails(String line, Game game) {
-        if (line.startsWith(SENTE)) {
-            game.setSente(line.substring(SENTE.length()).trim());
-        }
-        if (line.startsWith(GOTE)) {
-            game.setGote(line.substring(GOTE.length()).trim());
-        }
-        if (line.startsWith(PLACE)) {
-            game.setPlace(line.substring(PLACE.length()).trim());
-        }
-        if (line.startsWith(HANDICAP)) {
-            game.setHandicap(line.substring(HANDICAP.length()).trim());
-        }
-        if (line.startsWith(TIME_LIMIT)) {
-            game.setTimeLimit(line.substring(TIME_LIMIT.length()).trim());
-        }
-        if (line.startsWith(TOURNAMENT)) {
-            game.setTournament(line.substring(TOURNAMENT.length()).trim());
-        }
-        if (line.startsWith(DATE)) {
-            game.setDate(line.substring(DATE.length()).trim());
+    private static void parseGameDetails(String name, String value, Game game) {
+        switch (name) {
+            case SENTE ->
+                game.setSente(value);
+            case GOTE ->
+                game.setGote(value);
+            case PLACE ->
+                game.setPlace(value);
+            case HANDICAP ->
+                game.setHandicap(value);
+            case TIME_LIMIT ->
+                game.setTimeLimit(value);
+            case TOURNAMENT ->
+                game.setTournament(value);
+            case DATE ->
+                game.setDate(value);
+            default -> {
+                // Other headers are not shown.
+            }
         }
     }
 
     private static void addMoveToMoveList(DefaultListModel<String> moveListModel, int gameNum, String move, Turn turn) {
-        Transliterator trans = Transliterator.getInstance("Halfwidth-Fullwidth");
-        if (turn == Turn.SENTE) {
-            moveListModel.addElement(gameNum + trans.transliterate(" ☖" + move));
-        } else {
-            moveListModel.addElement(gameNum + trans.transliterate(" ☗" + move));
-        }
+        // The turn is the side to play next, so the other side made the move.
+        moveListModel.addElement(NotationFormatter.getMoveListLabel(gameNum, ParserUtils.switchTurn(turn), move));
     }
 
-    private static Notation getNotation(Coordinate thisSource, Coordinate thisDestination, boolean same, String move, String piece, String disambiguation) {
+    private static Notation getNotation(Square thisSource, Square thisDestination, boolean same, String move, String piece, String disambiguation) {
         String engineMove = "";
         try {
             engineMove = getEngineMoveCoordinate(thisSource) + getEngineMoveCoordinate(thisDestination);
@@ -230,11 +468,11 @@ public class KifParser {
                 engineMove += "+";
             }
         } catch (Exception ex) {
-            Logger.getLogger(GameAnalyser.class.getName()).log(Level.SEVERE, null, ex);
+            Logger.getLogger(KifParser.class.getName()).log(Level.SEVERE, null, ex);
         }
 
         Notation notation = new Notation();
-        notation.setEngineMove(engineMove);
+        notation.setEngineMove(StringPool.NOTATION.intern(engineMove));
 
         String japanese = "";
 
@@ -248,21 +486,17 @@ public class KifParser {
             japanese += NotationUtils.PROMOTED;
         }
 
-        notation.setJapanese(japanese);
+        notation.setJapanese(StringPool.NOTATION.intern(japanese));
 
         return notation;
     }
 
-    private static Notation executeRegularMove(Board board, Coordinate thisDestination, Coordinate thisSource, Coordinate lastDestination, String move) {
-        Koma destinationKoma = getKoma(board, thisDestination);
-        if (destinationKoma != null) {
-            ParserUtils.addPieceToInHand(getKoma(board, thisDestination), board);
-        }
-        Koma sourceKoma = getKoma(board, thisSource);
-        Koma.Type sourceKomaType = sourceKoma.getType();
+    private static Notation executeRegularMove(Board board, Square thisDestination, Square thisSource, Square lastDestination, String move) {
+        int engineMove = Move.normal(thisSource.getIndex(), thisDestination.getIndex(), isPromoted(move));
+        checkLegal(board, engineMove, move);
+        Koma.Type sourceKomaType = getKoma(board, thisSource).getType();
         String disambiguation = NotationUtils.getDisambiguation(board, thisSource, thisDestination, sourceKomaType);
-        putKoma(board, thisDestination, promCheck(sourceKoma, move));
-        putKoma(board, thisSource, null);
+        board.makeMove(engineMove);
 
         boolean same;
         if (lastDestination == null) {
@@ -274,89 +508,47 @@ public class KifParser {
         return getNotation(thisSource, thisDestination, same, move, NotationUtils.getKomaKanji(sourceKomaType), disambiguation);
     }
 
-    private static Notation executeSameMove(Board board, Coordinate thisDestination, Coordinate thisSource, String move) {
-        Koma destinationKoma = getKoma(board, thisDestination);
-        if (destinationKoma != null) {
-            ParserUtils.addPieceToInHand(destinationKoma, board);
-        }
-        Koma sourceKoma = getKoma(board, thisSource);
-        Koma.Type sourceKomaType = sourceKoma.getType();
+    private static Notation executeSameMove(Board board, Square thisDestination, Square thisSource, String move) {
+        int engineMove = Move.normal(thisSource.getIndex(), thisDestination.getIndex(), isPromoted(move));
+        checkLegal(board, engineMove, move);
+        Koma.Type sourceKomaType = getKoma(board, thisSource).getType();
         String disambiguation = NotationUtils.getDisambiguation(board, thisSource, thisDestination, sourceKomaType);
-        putKoma(board, thisDestination, promCheck(sourceKoma, move));
-        putKoma(board, thisSource, null);
+        board.makeMove(engineMove);
 
         return getNotation(thisSource, thisDestination, true, move, NotationUtils.getKomaKanji(sourceKomaType), disambiguation);
     }
 
-    private static Notation executeDropMove(Board board, Coordinate thisDestination, String move) {
-        String engineMove;
-        Koma koma;
-        try {
-            koma = ParserUtils.getDropKoma(move.substring(2, 3), board.getNextTurn());
-            Koma.Type komaType = koma.getType();
-            String dropNotation = NotationUtils.getDropNotation(board, thisDestination, komaType);
-            putKoma(board, thisDestination, koma);
-            removePieceInHand(komaType, board);
-            engineMove = getKomaLetter(komaType) + "*" + getEngineMoveCoordinate(thisDestination);
-            Notation notation = new Notation();
-            notation.setEngineMove(engineMove);
-            notation.setJapanese(NotationUtils.getJapaneseCoordinate(thisDestination) + NotationUtils.getKomaKanji(komaType) + dropNotation);
-            return notation;
-        } catch (Exception ex) {
-            Logger.getLogger(GameAnalyser.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        return null;
-    }
-
-    private static String getKomaLetter(Koma.Type type) {
-        return switch (type) {
-            case SFU, GFU ->
-                "P";
-            case SGI, GGI ->
-                "S";
-            case SHI, GHI ->
-                "R";
-            case SKA, GKA ->
-                "B";
-            case SKE, GKE ->
-                "N";
-            case SKI, GKI ->
-                "G";
-            case SKY, GKY ->
-                "L";
-            default ->
-                null;
-        };
+    private static Notation executeDropMove(Board board, Square thisDestination, String move) {
+        Koma koma = ParserUtils.getDropKoma(move.substring(2, 3), board.getNextTurn());
+        if (koma == null) {
+            throw new IllegalArgumentException("Invalid KIF move: " + move);
+        }
+        Koma.Type komaType = koma.getType();
+        int engineDrop = Move.drop(komaType, thisDestination.getIndex());
+        checkLegal(board, engineDrop, move);
+        String dropNotation = NotationUtils.getDropNotation(board, thisDestination, komaType);
+        board.makeMove(engineDrop);
+        String engineMove = ParserUtils.getHandLetter(komaType) + "*" + getEngineMoveCoordinate(thisDestination);
+        Notation notation = new Notation();
+        notation.setEngineMove(StringPool.NOTATION.intern(engineMove));
+        notation.setJapanese(StringPool.NOTATION.intern(NotationUtils.getJapaneseCoordinate(thisDestination) + NotationUtils.getKomaKanji(komaType) + dropNotation));
+        return notation;
     }
 
-    private static Position executeMove(Board board, String move, Coordinate lastDestination) {
-        Coordinate thisDestination = new Coordinate();
-        Coordinate thisSource;
+    private static void checkLegal(Board board, int move, String text) {
+        if (!MoveGenerator.isLegal(board, move)) {
+            throw new IllegalArgumentException("Illegal KIF move: " + text);
+        }
+    }
 
-        if (!isRegularMove(move)) {
-            return null;
+    private static Notation executeMove(Board board, String move, Square thisSource, Square thisDestination, Square lastDestination) {
+        if (isDrop(move)) {
+            return executeDropMove(board, thisDestination, move);
         } else if (isSame(move)) {
-            thisSource = NotationUtils.getSourceCoordinate(move);
-            copyCoords(lastDestination, thisDestination);
-        } else if (isDrop(move)) {
-            thisDestination = getDestinationCoordinate(move);
-            thisSource = null;
-        } else {
-            thisSource = NotationUtils.getSourceCoordinate(move);
-            thisDestination = getDestinationCoordinate(move);
-        }
-        Notation notation;
-        if (!isDrop(move)) {
-            if (!isSame(move)) {
-                notation = executeRegularMove(board, thisDestination, thisSource, lastDestination, move);
-            } else {
-                notation = executeSameMove(board, thisDestination, thisSource, move);
-            }
+            return executeSameMove(board, thisDestination, thisSource, move);
         } else {
-            notation = executeDropMove(board, thisDestination, move);
+            return executeRegularMove(board, thisDestination, thisSource, lastDestination, move);
         }
-        board.setNextTurn(ParserUtils.switchTurn(board.getNextTurn()));
-        return new Position(SFENParser.getSFEN(board), thisSource, thisDestination, notation);
     }
 
     private static boolean isRegularMove(String move) {
@@ -366,38 +558,17 @@ public class KifParser {
         return move.contains("(") && move.contains(")");
     }
 
-    private static String getEngineMoveCoordinate(Coordinate coordinate) {
+    private static String getEngineMoveCoordinate(Square coordinate) {
         return Integer.toString(coordinate.getX()) + (char) ('a' + coordinate.getY() - 1);
     }
 
-    private static void copyCoords(Coordinate from, Coordinate to) {
-        to.setX(from.getX());
-        to.setY(from.getY());
-    }
-
-    public static Koma getKoma(Board board, Coordinate coords) {
-        return board.getMasu()[9 - coords.getX()][coords.getY() - 1];
+    public static Koma getKoma(Board board, Square coords) {
+        return board.getKoma(coords);
     }
 
-    public static void putKoma(Board board, Coordinate coords, Koma koma) {
+    public static void putKoma(Board board, Square coords, Koma koma) {
         if (coords != null) {
-            board.getMasu()[9 - coords.getX()][coords.getY() - 1] = koma;
-        }
-    }
-
-    public static void removePieceInHand(Koma.Type komaType, Board board) {
-        if (board.getInHandKomaMap().get(komaType) == 1) {
-            board.getInHandKomaMap().remove(komaType);
-        } else {
-            board.getInHandKomaMap().put(komaType, board.getInHandKomaMap().get(komaType) - 1);
-        }
-    }
-
-    private static Koma promCheck(Koma koma, String move) {
-        if (!isPromoted(move)) {
-            return koma;
-        } else {
-            return ParserUtils.promoteKoma(koma.getType());
+            board.putKoma(coords, koma);
         }
     }
 
@@ -405,7 +576,7 @@ public class KifParser {
         return line.startsWith("*");
     }
 
-    private static boolean isHeader(String line) {
+    static boolean isHeader(String line) {
         return line.startsWith(MOVE_HEADER);
     }
 
@@ -424,14 +595,11 @@ public class KifParser {
         return move.contains(NotationUtils.SAME);
     }
 
-    private static Coordinate getDestinationCoordinate(String move) {
-        Coordinate result = new Coordinate();
-        result.setX(Integer.parseInt(move.substring(0, 1)));
-        result.setY(parseJapaneseNumber(move.substring(1, 2)));
-        return result;
+    private static Square getDestinationCoordinate(String move) {
+        return Square.valueOf(Integer.parseInt(move.substring(0, 1)), parseJapaneseNumber(move.substring(1, 2)));
     }
 
-    private static Integer parseJapaneseNumber(String thisChar) {
+    private static int parseJapaneseNumber(String thisChar) {
         return switch (thisChar) {
             case NotationUtils.ICHI ->
                 1;
@@ -452,8 +620,70 @@ public class KifParser {
             case NotationUtils.KYUU ->
                 9;
             default ->
-                null;
+                0;
         };
     }
 
+    /**
+     * Builds the positions and move list shown by the GUI. The move list
+     * model may be null.
+     */
+    static class GameBuilder implements KifHandler {
+
+        private final Game game;
+        private final DefaultListModel<String> moveListModel;
+        final LinkedList<Position> positionList;
+        private Turn nextTurn;
+
+        GameBuilder(Game game, DefaultListModel<String> moveListModel) {
+            this(game, moveListModel, new LinkedList<>());
+        }
+
+        GameBuilder(Game game, DefaultListModel<String> moveListModel, LinkedList<Position> positionList) {
+            this.game = game;
+            this.moveListModel = moveListModel;
+            this.positionList = positionList;
+        }
+
+        @Override
+        public void header(String name, String value) {
+            parseGameDetails(name, value, game);
+        }
+
+        /**
+         * Carry on from the last position already in the list, so that an
+         * end of game read next has a side to move.
+         */
+        void resume(Board board) {
+            nextTurn = board.getNextTurn();
+        }
+
+        @Override
+        public void startPosition(Board board) {
+            nextTurn = board.getNextTurn();
+            positionList.add(new Position(board, null, null, new Notation()));
+        }
+
+        @Override
+        public void move(int moveNumber, Board board, Square source, Square destination, Notation notation) {
+            if (moveListModel != null) {
+                addMoveToMoveList(moveListModel, moveNumber, notation.getJapanese(), board.getNextTurn());
+            }
+            nextTurn = board.getNextTurn();
+            positionList.add(new Position(board, source, destination, notation));
+        }
+
+        @Override
+        public void comment(String comment) {
+            positionList.getLast().setComment(positionList.getLast().getComment() + comment + "\n");
+        }
+
+        @Override
+        public void endOfGame(int moveNumber, String reason) {
+            if (nextTurn != null) {
+                game.setResult(ParserUtils.getResult(reason, nextTurn));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,438 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.CompactPositionList;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.Move;
+import com.chadfield.shogiexplorer.objects.Position;
+import com.chadfield.shogiexplorer.utils.StringUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.harawata.appdirs.AppDirs;
+import net.harawata.appdirs.AppDirsFactory;
+
+/**
+ * The moves played from each opening position in a collection of games, with
+ * how often each was played, how the games ended and when it was last
+ * played.
+ *
+ * Positions are found by Zobrist key, so transpositions share their moves.
+ * Each position holds one int array with a row of fields per move, sorted by
+ * move, and the positions are kept in an open addressing table rather than
+ * a map of objects, so millions of positions fit in a modest heap. Games can
+ * be added at any time, and games from files are remembered so that adding
+ * a file again only counts the games that are new.
+ */
+public class OpeningTree {
+
+    public static final String DEFAULT_FILE_NAME = "openings.dat";
+    public static final int DEFAULT_MAX_PLY = 40;
+
+    private static final int MAGIC = 0x53454f54;
+    private static final int VERSION = 2;
+
+    private static final int MOVE = 0;
+    private static final int GAMES = 1;
+    private static final int SENTE_WINS = 2;
+    private static final int GOTE_WINS = 3;
+    private static final int DRAWS = 4;
+    private static final int LATEST_DATE = 5;
+    private static final int FIELDS = 6;
+
+    private final int maxPly;
+    private long[] keys;
+    private int[][] moves;
+    private int size;
+    // The games added from files, as the file's number in files and the
+    // game's number within it, so that a file can be added again.
+    private final List<String> files = new ArrayList<>();
+    private final Map<String, Integer> fileCodes = new HashMap<>();
+    private final Set<Long> addedGames = new HashSet<>();
+
+    public OpeningTree(int maxPly) {
+        this(maxPly, 1 << 10);
+    }
+
+    private OpeningTree(int maxPly, int capacity) {
+        this.maxPly = maxPly;
+        this.keys = new long[capacity];
+        this.moves = new int[capacity][];
+    }
+
+    /**
+     * A move from a position and the games in which it was played.
+     */
+    public static class Continuation {
+
+        private final int move;
+        private final int games;
+        private final int senteWins;
+        private final int goteWins;
+        private final int draws;
+        private final int latestDate;
+
+        private Continuation(int[] row, int offset) {
+            this.move = row[offset + MOVE];
+            this.games = row[offset + GAMES];
+            this.senteWins = row[offset + SENTE_WINS];
+            this.goteWins = row[offset + GOTE_WINS];
+            this.draws = row[offset + DRAWS];
+            this.latestDate = row[offset + LATEST_DATE];
+        }
+
+        /**
+         * @return the move
+         */
+        public int getMove() {
+            return move;
+        }
+
+        /**
+         * @return the number of games
+         */
+        public int getGames() {
+            return games;
+        }
+
+        /**
+         * @return the number of games sente won
+         */
+        public int getSenteWins() {
+            return senteWins;
+        }
+
+        /**
+         * @return the number of games gote won
+         */
+        public int getGoteWins() {
+            return goteWins;
+        }
+
+        /**
+         * @return the number of drawn games
+         */
+        public int getDraws() {
+            return draws;
+        }
+
+        /**
+         * @return the latest date played as yyyymmdd, or 0 if no game had a
+         * date
+         */
+        public int getLatestDate() {
+            return latestDate;
+        }
+    }
+
+    /**
+     * @return the number of positions with at least one move
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the moves played from the position, most played first
+     */
+    public synchronized List<Continuation> getContinuations(long zobristKey) {
+        List<Continuation> result = new ArrayList<>();
+        int slot = findSlot(zobristKey);
+        if (moves[slot] != null) {
+            int[] row = moves[slot];
+            for (int offset = 0; offset < row.length; offset += FIELDS) {
+                result.add(new Continuation(row, offset));
+            }
+            result.sort(Comparator.comparingInt(Continuation::getGames).reversed());
+        }
+        return result;
+    }
+
+    /**
+     * Count the first moves of a game, up to the maximum ply.
+     */
+    public void addGame(Game game) {
+        List<Position> positionList = game.getPositionList();
+        if (positionList == null || positionList.size() < 2) {
+            return;
+        }
+        int plies = Math.min(positionList.size() - 1, maxPly);
+        Board board = SFENParser.parse(positionList.get(0).getGameSFEN());
+        long[] positionKeys = new long[plies];
+        int[] playedMoves = new int[plies];
+        for (int ply = 0; ply < plies; ply++) {
+            positionKeys[ply] = board.getZobristKey();
+            playedMoves[ply] = getMove(positionList, ply + 1);
+            if (playedMoves[ply] == Move.NONE) {
+                plies = ply;
+                break;
+            }
+            board.makeMove(playedMoves[ply]);
+        }
+        int date = StringUtils.parseDate(game.getDate());
+        synchronized (this) {
+            for (int ply = 0; ply < plies; ply++) {
+                addMove(positionKeys[ply], playedMoves[ply], game.getResult(), date);
+            }
+        }
+    }
+
+    /**
+     * Count the first moves of a game from a file, unless it has been added
+     * already.
+     *
+     * @param gameIndex the number of the game within its file, from zero
+     * @return true if the game was added
+     */
+    public boolean addGame(Path file, int gameIndex, Game game) {
+        synchronized (this) {
+            if (!addedGames.add(getGameKey(file.toAbsolutePath().toString(), gameIndex))) {
+                return false;
+            }
+        }
+        addGame(game);
+        return true;
+    }
+
+    private long getGameKey(String fileName, int gameIndex) {
+        int fileCode = fileCodes.computeIfAbsent(fileName, key -> {
+            files.add(key);
+            return files.size() - 1;
+        });
+        return ((long) fileCode << Integer.SIZE) | gameIndex;
+    }
+
+    private static int getMove(List<Position> positionList, int index) {
+        if (positionList instanceof CompactPositionList compactList) {
+            return compactList.getMove(index);
+        }
+        return Move.parseUSI(positionList.get(index).getNotation().getEngineMove());
+    }
+
+    private void addMove(long zobristKey, int move, Game.Result result, int date) {
+        int slot = findSlot(zobristKey);
+        int[] row = moves[slot];
+        if (row == null) {
+            keys[slot] = zobristKey;
+            row = new int[0];
+            size++;
+        }
+        int offset = findMove(row, move);
+        if (offset < 0) {
+            // Insert a new row, keeping the moves in order.
+            offset = -offset - 1;
+            int[] newRow = new int[row.length + FIELDS];
+            System.arraycopy(row, 0, newRow, 0, offset);
+            System.arraycopy(row, offset, newRow, offset + FIELDS, row.length - offset);
+            newRow[offset + MOVE] = move;
+            row = newRow;
+        }
+        row[offset + GAMES]++;
+        switch (result) {
+            case SENTE_WIN ->
+                row[offset + SENTE_WINS]++;
+            case GOTE_WIN ->
+                row[offset + GOTE_WINS]++;
+            case DRAW ->
+                row[offset + DRAWS]++;
+            default -> {
+                // Only counted as a game.
+            }
+        }
+        row[offset + LATEST_DATE] = Math.max(row[offset + LATEST_DATE], date);
+        moves[slot] = row;
+        if (size * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * @return the offset of the move's row, or -(insertion offset + 1)
+     */
+    private static int findMove(int[] row, int move) {
+        int low = 0;
+        int high = row.length / FIELDS - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleMove = row[middle * FIELDS + MOVE];
+            if (middleMove < move) {
+                low = middle + 1;
+            } else if (middleMove > move) {
+                high = middle - 1;
+            } else {
+                return middle * FIELDS;
+            }
+        }
+        return -(low * FIELDS + 1);
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it belongs
+     */
+    private int findSlot(long zobristKey) {
+        int mask = keys.length - 1;
+        int slot = (int) (zobristKey ^ (zobristKey >>> 32)) & mask;
+        while (moves[slot] != null && keys[slot] != zobristKey) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[][] oldMoves = moves;
+        keys = new long[capacity];
+        moves = new int[capacity][];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldMoves[i] != null) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                moves[slot] = oldMoves[i];
+            }
+        }
+    }
+
+    public synchronized void save(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(maxPly);
+            output.writeInt(size);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (moves[slot] != null) {
+                    output.writeLong(keys[slot]);
+                    output.writeShort(moves[slot].length / FIELDS);
+                    for (int value : moves[slot]) {
+                        output.writeInt(value);
+                    }
+                }
+            }
+            output.writeInt(files.size());
+            for (String fileName : files) {
+                output.writeUTF(fileName);
+            }
+            output.writeInt(addedGames.size());
+            for (long gameKey : addedGames) {
+                output.writeLong(gameKey);
+            }
+        }
+    }
+
+    public static OpeningTree load(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not an opening tree");
+            }
+            int version = input.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported opening tree version: " + version);
+            }
+            int maxPly = input.readInt();
+            int count = input.readInt();
+            OpeningTree tree = new OpeningTree(maxPly, Integer.highestOneBit(Math.max(count + count / 3, 1)) << 1);
+            for (int i = 0; i < count; i++) {
+                long zobristKey = input.readLong();
+                int[] row = new int[input.readUnsignedShort() * FIELDS];
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = input.readInt();
+                }
+                int slot = tree.findSlot(zobristKey);
+                tree.keys[slot] = zobristKey;
+                tree.moves[slot] = row;
+            }
+            tree.size = count;
+            // Trees from before version 2 do not know which games they hold.
+            if (version >= 2) {
+                int fileCount = input.readInt();
+                for (int i = 0; i < fileCount; i++) {
+                    String fileName = input.readUTF();
+                    tree.fileCodes.put(fileName, tree.files.size());
+                    tree.files.add(fileName);
+                }
+                int gameCount = input.readInt();
+                for (int i = 0; i < gameCount; i++) {
+                    tree.addedGames.add(input.readLong());
+                }
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * @return the tree in the user data directory, or null if there is none
+     * or it cannot be read
+     */
+    public static OpeningTree loadDefault() {
+        Path file = getDefaultPath();
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return load(file);
+        } catch (IOException ex) {
+            Logger.getLogger(OpeningTree.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    public static Path getDefaultPath() {
+        AppDirs appDirs = AppDirsFactory.getInstance();
+        return Path.of(appDirs.getUserDataDir("Shogi Explorer", null, null), DEFAULT_FILE_NAME);
+    }
+
+    /**
+     * Add every game under a directory, or in one file, to the tree in the
+     * user data directory, creating it if need be. The arguments are the
+     * corpus path, an optional number of threads and an optional "sjis".
+     * Games already added from the same file are skipped, so a growing
+     * corpus can be added again.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: OpeningTree <corpus> [threads] [sjis]");
+            return;
+        }
+        Path file = getDefaultPath();
+        KifImporter.Corpus corpus = KifImporter.Corpus.fromArgs(args, 0);
+        try {
+            OpeningTree tree = Files.isRegularFile(file) ? load(file) : new OpeningTree(DEFAULT_MAX_PLY);
+            KifImporter.Stats stats = corpus.importGames(tree::addGame);
+            tree.save(file);
+            System.out.println(stats);
+            System.out.println(String.format("%,d positions", tree.size()));
+        } catch (IOException ex) {
+            Logger.getLogger(OpeningTree.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.MoveGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the move tree to a fixed depth.
+ *
+ * The counts catch move generation errors, and the timings show how changes
+ * to the board core affect speed. Run the class directly to print a report
+ * for the standard and handicap starting positions and some positions with
+ * many drops and promotions.
+ */
+public class Perft {
+
+    private static final String[] TRICKY_SFENS = {
+        // Many drops and promotions for both sides.
+        "l6nl/5+P1gk/2np1S3/p1p4Pp/3P2Sp1/1PPb2P1P/P5GS1/R8/LN4bKL w RGgsn5p 1",
+        // A pawn drop to 9b would be mate, so it is not allowed.
+        "kn7/9/1G7/9/9/9/9/9/8K b P 1",
+        // Pawns, lances and knights that must promote.
+        "4k4/PLN6/9/9/9/9/9/6nlp/4K4 b - 1",
+        // A king in check from a lance, with pieces in hand to block.
+        "4k4/9/4L4/9/9/9/9/9/4K4 w GPgp 1"
+    };
+
+    private static final int DEFAULT_DEPTH = 3;
+
+    private Perft() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @return the number of move sequences of the given length
+     */
+    public static long perft(Board board, int depth) {
+        int[][] moveBuffers = new int[depth + 1][MoveGenerator.MAX_MOVES];
+        return perft(board, depth, moveBuffers);
+    }
+
+    private static long perft(Board board, int depth, int[][] moveBuffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = moveBuffers[depth];
+        int count = MoveGenerator.generate(board, moves);
+        if (depth == 1) {
+            return count;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            nodes += perft(board, depth - 1, moveBuffers);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Count as {@link #perft(Board, int)} does, with the root moves shared
+     * out across the common fork-join pool.
+     */
+    public static long perftParallel(Board board, int depth) {
+        if (depth < 2) {
+            return perft(board, depth);
+        }
+        String sfen = SFENParser.getSFEN(board);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generate(board, moves);
+        List<RootMoveTask> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            RootMoveTask task = new RootMoveTask(sfen, moves[i], depth - 1);
+            ForkJoinPool.commonPool().execute(task);
+            tasks.add(task);
+        }
+        long nodes = 0;
+        for (RootMoveTask task : tasks) {
+            nodes += task.join();
+        }
+        return nodes;
+    }
+
+    private static class RootMoveTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String sfen;
+        private final int move;
+        private final int depth;
+
+        RootMoveTask(String sfen, int move, int depth) {
+            this.sfen = sfen;
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            Board board = SFENParser.parse(sfen);
+            board.makeMove(move);
+            return perft(board, depth);
+        }
+    }
+
+    /**
+     * Print node counts and speeds. The arguments are an optional depth and
+     * an optional "parallel" to use {@link #perftParallel(Board, int)}.
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+        boolean parallel = args.length > 1 && args[1].contentEquals("parallel");
+
+        List<String> sfenList = new ArrayList<>();
+        for (String handicap : KifParser.HANDICAPS) {
+            sfenList.add(KifParser.getStartSFEN(handicap));
+        }
+        sfenList.addAll(List.of(TRICKY_SFENS));
+
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (String sfen : sfenList) {
+            Board board = SFENParser.parse(sfen);
+            long start = System.nanoTime();
+            long nodes = parallel ? perftParallel(board, depth) : perft(board, depth);
+            long nanos = System.nanoTime() - start;
+            totalNodes += nodes;
+            totalNanos += nanos;
+            System.out.println(String.format("%-80s depth %d  %,12d nodes  %,12d nps", sfen, depth, nodes, getNodesPerSecond(nodes, nanos)));
+        }
+        System.out.println(String.format("Total %,d nodes  %,d nps", totalNodes, getNodesPerSecond(totalNodes, totalNanos)));
+    }
+
+    private static long getNodesPerSecond(long nodes, long nanos) {
+        return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+    }
+}
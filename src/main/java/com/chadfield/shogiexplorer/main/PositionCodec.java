@@ -0,0 +1,322 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Bitboard;
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Board.Turn;
+import com.chadfield.shogiexplorer.objects.Koma;
+import com.chadfield.shogiexplorer.utils.ParserUtils;
+
+/**
+ * Packs a position into 32 bytes with a fixed Huffman code.
+ *
+ * The stream holds the side to move, the two king squares, then one code
+ * per remaining square and one code per piece in hand. A piece in hand uses
+ * its board code without the leading bit, and pieces that are in neither
+ * place are written as hand pieces with the promotion bit set. Every
+ * position with both kings on the board and all four golds in play takes
+ * exactly 256 bits. The move count is not stored.
+ */
+public class PositionCodec {
+
+    public static final int SIZE = 32;
+
+    private static final int BITS = SIZE * 8;
+    private static final int KOMA_TYPES = Koma.Type.values().length;
+
+    // Kinds of piece other than the king, in code order.
+    private static final int FU = 0;
+    private static final int KY = 1;
+    private static final int KE = 2;
+    private static final int GI = 3;
+    private static final int KI = 4;
+    private static final int KA = 5;
+    private static final int HI = 6;
+    private static final int KINDS = 7;
+
+    private static final Koma.Type[] SENTE_TYPES = {
+        Koma.Type.SFU, Koma.Type.SKY, Koma.Type.SKE, Koma.Type.SGI, Koma.Type.SKI, Koma.Type.SKA, Koma.Type.SHI
+    };
+    private static final int[] KOMA_COUNT = {18, 4, 4, 4, 4, 2, 2};
+    // Hand codes, written from the lowest bit. A board code has a 1 in front.
+    private static final int[] CODE = {0b0, 0b001, 0b101, 0b011, 0b0111, 0b01111, 0b11111};
+    private static final int[] CODE_LENGTH = {1, 3, 3, 3, 4, 5, 5};
+
+    private static final int[] KIND = new int[KOMA_TYPES];
+    private static final boolean[] PROMOTED = new boolean[KOMA_TYPES];
+    private static final Koma.Type[][][] KOMA_TYPE = new Koma.Type[KINDS][2][2];
+
+    static {
+        for (Koma.Type komaType : Koma.Type.values()) {
+            KIND[komaType.ordinal()] = getKind(komaType);
+        }
+        for (int kind = 0; kind < KINDS; kind++) {
+            Koma.Type senteType = SENTE_TYPES[kind];
+            Koma promotedKoma = ParserUtils.promoteKoma(senteType);
+            KOMA_TYPE[kind][0][0] = senteType;
+            KOMA_TYPE[kind][1][0] = ParserUtils.getOtherSideType(senteType);
+            if (promotedKoma != null) {
+                KOMA_TYPE[kind][0][1] = promotedKoma.getType();
+                KOMA_TYPE[kind][1][1] = ParserUtils.getOtherSideType(promotedKoma.getType());
+                PROMOTED[promotedKoma.getType().ordinal()] = true;
+                PROMOTED[ParserUtils.getOtherSideType(promotedKoma.getType()).ordinal()] = true;
+            }
+        }
+    }
+
+    private PositionCodec() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    private static int getKind(Koma.Type komaType) {
+        return switch (komaType) {
+            case SFU, STO, GFU, GTO ->
+                FU;
+            case SKY, SNY, GKY, GNY ->
+                KY;
+            case SKE, SNK, GKE, GNK ->
+                KE;
+            case SGI, SNG, GGI, GNG ->
+                GI;
+            case SKI, GKI ->
+                KI;
+            case SKA, SUM, GKA, GUM ->
+                KA;
+            case SHI, SRY, GHI, GRY ->
+                HI;
+            default ->
+                -1;
+        };
+    }
+
+    /**
+     * @return whether the position can be packed
+     */
+    public static boolean canEncode(Board board) {
+        if (Bitboard.count(board.getKomaLo(Koma.Type.SGY) | board.getKomaLo(Koma.Type.SOU), board.getKomaHi(Koma.Type.SGY) | board.getKomaHi(Koma.Type.SOU)) != 1
+                || Bitboard.count(board.getKomaLo(Koma.Type.GOU) | board.getKomaLo(Koma.Type.GGY), board.getKomaHi(Koma.Type.GOU) | board.getKomaHi(Koma.Type.GGY)) != 1) {
+            return false;
+        }
+        int[] count = new int[KINDS];
+        for (Koma.Type komaType : Koma.Type.values()) {
+            int kind = KIND[komaType.ordinal()];
+            if (kind >= 0) {
+                count[kind] += Bitboard.count(board.getKomaLo(komaType), board.getKomaHi(komaType)) + board.getInHandCount(komaType);
+            }
+        }
+        for (int kind = 0; kind < KINDS; kind++) {
+            if (count[kind] > KOMA_COUNT[kind]) {
+                return false;
+            }
+        }
+        return count[KI] == KOMA_COUNT[KI];
+    }
+
+    /**
+     * @return a new array holding the packed position
+     * @throws IllegalArgumentException if the position cannot be packed
+     */
+    public static byte[] encode(Board board) {
+        byte[] buffer = new byte[SIZE];
+        encode(board, buffer, 0);
+        return buffer;
+    }
+
+    /**
+     * Pack a position into {@link #SIZE} bytes of the buffer.
+     *
+     * @throws IllegalArgumentException if a king is missing, a side has two
+     * kings, or there are more pieces of a kind than the game has
+     */
+    public static void encode(Board board, byte[] buffer, int offset) {
+        int senteKing = board.getKingIndex(Turn.SENTE);
+        int goteKing = board.getKingIndex(Turn.GOTE);
+        if (senteKing < 0 || goteKing < 0) {
+            throw new IllegalArgumentException("Both kings must be on the board");
+        }
+
+        int[] boxCount = KOMA_COUNT.clone();
+        BitWriter writer = new BitWriter(buffer, offset);
+        writer.write(board.getNextTurn() == Turn.GOTE ? 1 : 0, 1);
+        writer.write(senteKing, 7);
+        writer.write(goteKing, 7);
+        for (int index = 0; index < Bitboard.SQUARES; index++) {
+            if (index == senteKing || index == goteKing) {
+                continue;
+            }
+            Koma koma = board.getKomaAt(index);
+            if (koma == null) {
+                writer.write(0, 1);
+                continue;
+            }
+            Koma.Type komaType = koma.getType();
+            int kind = KIND[komaType.ordinal()];
+            if (kind < 0) {
+                throw new IllegalArgumentException("A side has more than one king");
+            }
+            boxCount[kind]--;
+            writer.write(1, 1);
+            writeKoma(writer, kind, PROMOTED[komaType.ordinal()], Bitboard.isSente(komaType));
+        }
+
+        for (int kind = 0; kind < KINDS; kind++) {
+            for (int side = 0; side < 2; side++) {
+                int count = board.getInHandCount(KOMA_TYPE[kind][side][0]);
+                for (int i = 0; i < count; i++) {
+                    writeKoma(writer, kind, false, side == 0);
+                }
+                boxCount[kind] -= count;
+            }
+            if (boxCount[kind] < 0) {
+                throw new IllegalArgumentException("Too many pieces of one kind");
+            }
+            if (kind == KI && boxCount[kind] > 0) {
+                throw new IllegalArgumentException("All golds must be on the board or in hand");
+            }
+            for (int i = 0; i < boxCount[kind]; i++) {
+                writeKoma(writer, kind, true, true);
+            }
+        }
+    }
+
+    private static void writeKoma(BitWriter writer, int kind, boolean promoted, boolean sente) {
+        writer.write(CODE[kind], CODE_LENGTH[kind]);
+        if (kind != KI) {
+            writer.write(promoted ? 1 : 0, 1);
+        }
+        writer.write(sente ? 0 : 1, 1);
+    }
+
+    public static Board decode(byte[] buffer) {
+        return decode(buffer, 0);
+    }
+
+    /**
+     * Unpack a position written by {@link #encode(Board, byte[], int)}. The
+     * move count of the result is 1.
+     */
+    public static Board decode(byte[] buffer, int offset) {
+        return decode(buffer, offset, new Board());
+    }
+
+    /**
+     * Unpack a position into an existing board, replacing everything on it.
+     * The move count of the result is 1.
+     *
+     * @return the board
+     */
+    public static Board decode(byte[] buffer, int offset, Board board) {
+        board.clear();
+        board.setMoveCount(1);
+
+        BitReader reader = new BitReader(buffer, offset);
+        board.setNextTurn(reader.read() == 1 ? Turn.GOTE : Turn.SENTE);
+        int senteKing = reader.read(7);
+        int goteKing = reader.read(7);
+        board.putKomaAt(senteKing, Koma.valueOf(Koma.Type.SGY));
+        board.putKomaAt(goteKing, Koma.valueOf(Koma.Type.GOU));
+        for (int index = 0; index < Bitboard.SQUARES; index++) {
+            if (index == senteKing || index == goteKing || reader.read() == 0) {
+                continue;
+            }
+            int kind = readKind(reader);
+            int promoted = kind == KI ? 0 : reader.read();
+            board.putKomaAt(index, Koma.valueOf(KOMA_TYPE[kind][reader.read()][promoted]));
+        }
+        while (reader.getPosition() < BITS) {
+            int kind = readKind(reader);
+            int promoted = kind == KI ? 0 : reader.read();
+            int side = reader.read();
+            if (promoted == 0) {
+                board.addInHand(KOMA_TYPE[kind][side][0]);
+            }
+        }
+        return board;
+    }
+
+    private static int readKind(BitReader reader) {
+        if (reader.read() == 0) {
+            return FU;
+        }
+        if (reader.read() == 0) {
+            return reader.read() == 0 ? KY : KE;
+        }
+        if (reader.read() == 0) {
+            return GI;
+        }
+        if (reader.read() == 0) {
+            return KI;
+        }
+        return reader.read() == 0 ? KA : HI;
+    }
+
+    private static class BitWriter {
+
+        private final byte[] buffer;
+        private final int offset;
+        private int position;
+
+        BitWriter(byte[] buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            for (int i = 0; i < SIZE; i++) {
+                buffer[offset + i] = 0;
+            }
+        }
+
+        void write(int value, int length) {
+            for (int i = 0; i < length; i++) {
+                if ((value >>> i & 1) != 0) {
+                    buffer[offset + (position >>> 3)] |= (byte) (1 << (position & 7));
+                }
+                position++;
+            }
+        }
+    }
+
+    private static class BitReader {
+
+        private final byte[] buffer;
+        private final int offset;
+        private int position;
+
+        BitReader(byte[] buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        int read() {
+            int bit = buffer[offset + (position >>> 3)] >>> (position & 7) & 1;
+            position++;
+            return bit;
+        }
+
+        int read(int length) {
+            int value = 0;
+            for (int i = 0; i < length; i++) {
+                value |= read() << i;
+            }
+            return value;
+        }
+
+        int getPosition() {
+            return position;
+        }
+    }
+}
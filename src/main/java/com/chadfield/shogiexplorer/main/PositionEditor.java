@@ -18,7 +18,7 @@
 package com.chadfield.shogiexplorer.main;
 
 import com.chadfield.shogiexplorer.objects.Board;
-import com.chadfield.shogiexplorer.objects.Coordinate;
+import com.chadfield.shogiexplorer.objects.Square;
 import com.chadfield.shogiexplorer.objects.Koma;
 import java.util.HashMap;
 import java.util.Map;
@@ -33,12 +33,12 @@ public class PositionEditor {
         int x = board.getEdit().getX();
         int y = board.getEdit().getY();
         if (x < 9) {
-            board.setEdit(new Coordinate(++x, y));
+            board.setEdit(Square.valueOf(++x, y));
         } else {
             if (y > 1) {
-                board.setEdit(new Coordinate(1, --y));
+                board.setEdit(Square.valueOf(1, --y));
             } else {
-                board.setEdit(new Coordinate(1, 9));
+                board.setEdit(Square.valueOf(1, 9));
             }
         }
     }
@@ -47,12 +47,12 @@ public class PositionEditor {
         int x = board.getEdit().getX();
         int y = board.getEdit().getY();
         if (x > 1) {
-            board.setEdit(new Coordinate(--x, y));
+            board.setEdit(Square.valueOf(--x, y));
         } else {
             if (y < 9) {
-                board.setEdit(new Coordinate(9, ++y));
+                board.setEdit(Square.valueOf(9, ++y));
             } else {
-                board.setEdit(new Coordinate(9, 1));
+                board.setEdit(Square.valueOf(9, 1));
             }
         }
     }
@@ -62,7 +62,7 @@ public class PositionEditor {
             int x = board.getEdit().getX();
             int y = board.getEdit().getY();
             if (y > 1) {
-                board.setEdit(new Coordinate(x, --y));
+                board.setEdit(Square.valueOf(x, --y));
             }
         }
     }
@@ -72,7 +72,7 @@ public class PositionEditor {
             int x = board.getEdit().getX();
             int y = board.getEdit().getY();
             if (y < 9) {
-                board.setEdit(new Coordinate(x, ++y));
+                board.setEdit(Square.valueOf(x, ++y));
             }
         }
     }
@@ -83,7 +83,7 @@ public class PositionEditor {
             if (komadaiCount != -1) {
                 updateInHand(board, komaType, komadaiCount);
             } else {
-                KifParser.putKoma(board, board.getEdit(), new Koma(komaType));
+                KifParser.putKoma(board, board.getEdit(), Koma.valueOf(komaType));
             }
             return true;
         }
@@ -91,11 +91,8 @@ public class PositionEditor {
     }
 
     private static void updateInHand(Board board, Koma.Type komaType, int komadaiCount) {
-        if (komadaiCount == 0) {
-            board.getInHandKomaMap().remove(komaType);
-        } else {
-            board.getInHandKomaMap().put(komaType, komadaiCount);
-        }
+        // Counts above the number of pieces of the kind in the game are capped.
+        board.setInHandCount(komaType, komadaiCount);
     }
 
     private static Koma.Type getKomaType(char thisChar, boolean modified) {
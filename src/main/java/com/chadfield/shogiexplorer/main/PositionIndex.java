@@ -0,0 +1,432 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.CompactPositionList;
+import com.chadfield.shogiexplorer.objects.Game;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.harawata.appdirs.AppDirs;
+import net.harawata.appdirs.AppDirsFactory;
+
+/**
+ * An index from position to the games and moves where it occurs, over a
+ * corpus of game files.
+ *
+ * The index is a file holding an open addressing table of Zobrist keys, each
+ * slot pointing at a run of hits sorted by game and ply, followed by the
+ * file and game number of every game. It is memory mapped when opened, so a
+ * lookup reads only the few pages it needs.
+ *
+ * A hit packs the game id and ply into an int, so an index holds up to
+ * 4,194,304 games and plies past 1023 are left out. The file must be smaller
+ * than 2 GB.
+ */
+public class PositionIndex {
+
+    public static final String DEFAULT_FILE_NAME = "positions.idx";
+
+    private static final int MAGIC = 0x53455049;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_SLOTS = 16;
+    private static final int PLY_BITS = 10;
+    private static final int MAX_PLY = (1 << PLY_BITS) - 1;
+    private static final int MAX_GAMES = 1 << (Integer.SIZE - PLY_BITS);
+
+    private final ByteBuffer buffer;
+    private final int slotMask;
+    private final int gameCount;
+    private final int hitsOffset;
+    private final int gamesOffset;
+
+    private PositionIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a position index");
+        }
+        int slotCount = buffer.getInt(8);
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1 || HEADER_SIZE + (long) slotCount * SLOT_SIZE > buffer.limit()) {
+            throw new IOException("Invalid position index slot count: " + slotCount);
+        }
+        this.buffer = buffer;
+        this.slotMask = slotCount - 1;
+        this.gameCount = buffer.getInt(12);
+        this.hitsOffset = (int) buffer.getLong(16);
+        this.gamesOffset = (int) buffer.getLong(24);
+    }
+
+    /**
+     * Map an index file written by {@link #build}.
+     */
+    public static PositionIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Position index too large");
+            }
+            return new PositionIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the index in the user data directory, or null if there is none
+     * or it cannot be read
+     */
+    public static PositionIndex openDefault() {
+        Path indexFile = getDefaultPath();
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        try {
+            return open(indexFile);
+        } catch (IOException ex) {
+            Logger.getLogger(PositionIndex.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    public static Path getDefaultPath() {
+        AppDirs appDirs = AppDirsFactory.getInstance();
+        return Path.of(appDirs.getUserDataDir("Shogi Explorer", null, null), DEFAULT_FILE_NAME);
+    }
+
+    /**
+     * Where a position occurred.
+     */
+    public static class Hit {
+
+        private final Path file;
+        private final int gameIndex;
+        private final int ply;
+
+        private Hit(Path file, int gameIndex, int ply) {
+            this.file = file;
+            this.gameIndex = gameIndex;
+            this.ply = ply;
+        }
+
+        /**
+         * @return the file
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return the number of the game within its file, from zero
+         */
+        public int getGameIndex() {
+            return gameIndex;
+        }
+
+        /**
+         * @return the number of moves played to reach the position
+         */
+        public int getPly() {
+            return ply;
+        }
+
+        @Override
+        public String toString() {
+            return file.getFileName() + (gameIndex > 0 ? " #" + (gameIndex + 1) : "") + " " + ply;
+        }
+    }
+
+    /**
+     * @return the number of games indexed
+     */
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * @return the number of times the position occurs in the corpus
+     */
+    public int count(long zobristKey) {
+        int slot = findSlot(zobristKey);
+        return slot < 0 ? 0 : buffer.getInt(slot + 12);
+    }
+
+    /**
+     * @param limit the most hits to return
+     * @return where the position occurs, in the order the games were indexed
+     */
+    public List<Hit> lookup(long zobristKey, int limit) {
+        List<Hit> result = new ArrayList<>();
+        int slot = findSlot(zobristKey);
+        if (slot < 0) {
+            return result;
+        }
+        int start = buffer.getInt(slot + 8);
+        int count = Math.min(buffer.getInt(slot + 12), limit);
+        for (int i = 0; i < count; i++) {
+            int hit = buffer.getInt(hitsOffset + (start + i) * Integer.BYTES);
+            int gameId = hit >>> PLY_BITS;
+            int gameEntry = gamesOffset + buffer.getInt(gamesOffset + gameId * Integer.BYTES);
+            byte[] name = new byte[buffer.getShort(gameEntry + Integer.BYTES) & 0xFFFF];
+            buffer.get(gameEntry + Integer.BYTES + Short.BYTES, name);
+            result.add(new Hit(Path.of(new String(name, StandardCharsets.UTF_8)), buffer.getInt(gameEntry), hit & MAX_PLY));
+        }
+        return result;
+    }
+
+    /**
+     * @return the offset of the slot holding the key, or -1 if there is none
+     */
+    private int findSlot(long zobristKey) {
+        int slot = getSlot(zobristKey, slotMask);
+        while (true) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            if (buffer.getInt(offset + 12) == 0) {
+                return -1;
+            }
+            if (buffer.getLong(offset) == zobristKey) {
+                return offset;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private static int getSlot(long zobristKey, int slotMask) {
+        return (int) (zobristKey ^ (zobristKey >>> 32)) & slotMask;
+    }
+
+    /**
+     * Index every game under a directory, or in one file, and write the
+     * index. Games are read on several threads by {@link KifImporter}.
+     *
+     * @return the import statistics
+     */
+    public static KifImporter.Stats build(Path corpus, Path indexFile, Charset charset, int threads) throws IOException {
+        HitBuffer hits = new HitBuffer();
+        List<String> gameFiles = new ArrayList<>();
+        List<Integer> gameIndexes = new ArrayList<>();
+        KifImporter.GameConsumer consumer = (file, gameIndex, game) -> {
+            long[] keys = getZobristKeys(game);
+            synchronized (hits) {
+                if (gameFiles.size() < MAX_GAMES) {
+                    hits.add(keys, gameFiles.size());
+                    gameFiles.add(file.toAbsolutePath().toString());
+                    gameIndexes.add(gameIndex);
+                }
+            }
+        };
+        KifImporter.Stats stats = KifImporter.importPath(corpus, charset, threads, consumer);
+        hits.sort();
+        write(indexFile, hits, gameFiles, gameIndexes);
+        return stats;
+    }
+
+    private static long[] getZobristKeys(Game game) {
+        if (game.getPositionList() instanceof CompactPositionList compactList) {
+            return compactList.getZobristKeys();
+        }
+        return game.getPositionList().stream().mapToLong(position -> position.getZobristKey()).toArray();
+    }
+
+    private static void write(Path indexFile, HitBuffer hits, List<String> gameFiles, List<Integer> gameIndexes) throws IOException {
+        int keyCount = 0;
+        for (int i = 0; i < hits.size; i++) {
+            if (i == 0 || hits.keys[i] != hits.keys[i - 1]) {
+                keyCount++;
+            }
+        }
+        // At most three quarters full, so that a missing key is found to be
+        // missing within a few probes.
+        int slotCount = Math.max(MIN_SLOTS, Integer.highestOneBit(keyCount + keyCount / 3) << 1);
+        long[] slotKeys = new long[slotCount];
+        int[] slotStarts = new int[slotCount];
+        int[] slotCounts = new int[slotCount];
+        for (int i = 0; i < hits.size; i++) {
+            if (i > 0 && hits.keys[i] == hits.keys[i - 1]) {
+                continue;
+            }
+            int slot = getSlot(hits.keys[i], slotCount - 1);
+            while (slotCounts[slot] != 0) {
+                slot = (slot + 1) & (slotCount - 1);
+            }
+            int end = i;
+            while (end < hits.size && hits.keys[end] == hits.keys[i]) {
+                end++;
+            }
+            slotKeys[slot] = hits.keys[i];
+            slotStarts[slot] = i;
+            slotCounts[slot] = end - i;
+        }
+
+        List<byte[]> names = new ArrayList<>(gameFiles.size());
+        for (String gameFile : gameFiles) {
+            byte[] name = gameFile.getBytes(StandardCharsets.UTF_8);
+            names.add(name.length > 0xFFFF ? Arrays.copyOf(name, 0xFFFF) : name);
+        }
+        long hitsOffset = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+        long gamesOffset = hitsOffset + (long) hits.size * Integer.BYTES;
+
+        Files.createDirectories(indexFile.toAbsolutePath().getParent());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(slotCount);
+            output.writeInt(gameFiles.size());
+            output.writeLong(hitsOffset);
+            output.writeLong(gamesOffset);
+            for (int slot = 0; slot < slotCount; slot++) {
+                output.writeLong(slotKeys[slot]);
+                output.writeInt(slotStarts[slot]);
+                output.writeInt(slotCounts[slot]);
+            }
+            for (int i = 0; i < hits.size; i++) {
+                output.writeInt(hits.values[i]);
+            }
+            // The offset of each game entry from the start of this section,
+            // then the entries: game number, name length and UTF-8 name.
+            int entryOffset = names.size() * Integer.BYTES;
+            for (byte[] name : names) {
+                output.writeInt(entryOffset);
+                entryOffset += Integer.BYTES + Short.BYTES + name.length;
+            }
+            for (int id = 0; id < names.size(); id++) {
+                output.writeInt(gameIndexes.get(id));
+                output.writeShort(names.get(id).length);
+                output.write(names.get(id));
+            }
+        }
+    }
+
+    /**
+     * The keys and packed hits of every position, sorted by key and then hit
+     * before the table is written.
+     */
+    private static class HitBuffer {
+
+        private long[] keys = new long[1 << 16];
+        private int[] values = new int[1 << 16];
+        private int size;
+
+        private void add(long[] gameKeys, int gameId) {
+            int count = Math.min(gameKeys.length, MAX_PLY + 1);
+            if (size + count > keys.length) {
+                int capacity = Math.max(keys.length * 2, size + count);
+                keys = Arrays.copyOf(keys, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            for (int ply = 0; ply < count; ply++) {
+                keys[size] = gameKeys[ply];
+                values[size] = (gameId << PLY_BITS) | ply;
+                size++;
+            }
+        }
+
+        private void sort() {
+            sort(0, size - 1);
+        }
+
+        private void sort(int low, int high) {
+            while (high - low > 16) {
+                int middle = (low + high) >>> 1;
+                long pivotKey = keys[middle];
+                int pivotValue = values[middle];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (compare(i, pivotKey, pivotValue) < 0) {
+                        i++;
+                    }
+                    while (compare(j, pivotKey, pivotValue) > 0) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                // Recurse into the smaller part to bound the stack depth.
+                if (j - low < high - i) {
+                    sort(low, j);
+                    low = i;
+                } else {
+                    sort(i, high);
+                    high = j;
+                }
+            }
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && compare(j - 1, keys[j], values[j]) > 0; j--) {
+                    swap(j - 1, j);
+                }
+            }
+        }
+
+        private int compare(int index, long key, int value) {
+            int result = Long.compare(keys[index], key);
+            return result != 0 ? result : Integer.compare(values[index], value);
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            int value = values[a];
+            values[a] = values[b];
+            values[b] = value;
+        }
+    }
+
+    /**
+     * Build an index, or look up a position in one. The arguments are either
+     * "build", the corpus path, an optional number of threads and an optional
+     * "sjis", or "lookup", an SFEN and an optional index file. The index is
+     * written to the user data directory unless a path is given with
+     * -Dshogiexplorer.positionIndex.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("build") || args[0].equals("lookup"))) {
+            System.out.println("Usage: PositionIndex build <corpus> [threads] [sjis] | lookup <sfen>");
+            return;
+        }
+        String indexPath = System.getProperty("shogiexplorer.positionIndex");
+        Path indexFile = indexPath == null ? getDefaultPath() : Path.of(indexPath);
+        try {
+            if (args[0].equals("build")) {
+                KifImporter.Corpus corpus = KifImporter.Corpus.fromArgs(args, 1);
+                System.out.println(build(corpus.getPath(), indexFile, corpus.getCharset(), corpus.getThreads()));
+            } else {
+                PositionIndex index = open(indexFile);
+                long key = SFENParser.parse(args[1]).getZobristKey();
+                long start = System.nanoTime();
+                List<Hit> hits = index.lookup(key, 20);
+                long nanos = System.nanoTime() - start;
+                System.out.println(String.format("%,d hits  %.3f ms", index.count(key), nanos / 1_000_000.0));
+                hits.forEach(System.out::println);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(PositionIndex.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
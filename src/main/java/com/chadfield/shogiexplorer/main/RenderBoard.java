@@ -20,12 +20,14 @@ import java.awt.Image;
 import com.chadfield.shogiexplorer.objects.ImageCache;
 import com.chadfield.shogiexplorer.objects.Koma;
 import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Bitboard;
 import com.chadfield.shogiexplorer.utils.MathUtils;
 import com.chadfield.shogiexplorer.utils.ImageUtils;
 import javax.swing.JPanel;
 import com.chadfield.shogiexplorer.objects.Board.Turn;
 import com.chadfield.shogiexplorer.objects.Coordinate;
 import com.chadfield.shogiexplorer.objects.Dimension;
+import com.chadfield.shogiexplorer.objects.Square;
 import static com.chadfield.shogiexplorer.utils.StringUtils.substituteKomaName;
 import static com.chadfield.shogiexplorer.utils.StringUtils.substituteKomaNameRotated;
 import java.awt.Color;
@@ -323,8 +325,8 @@ public class RenderBoard {
 
         //</editor-fold>
         for (Koma.Type komaType : Koma.Type.values()) {
-            Integer numberHeld = board.getInHandKomaMap().get(komaType);
-            if (numberHeld != null && numberHeld > 0) {
+            int numberHeld = board.getInHandCount(komaType);
+            if (numberHeld > 0) {
                 BaseMultiResolutionImage pieceImage;
                 if (rotatedView) {
                     String name = PIECE_SET_CLASSIC + "/" + substituteKomaNameRotated(komaType.toString());
@@ -361,7 +363,7 @@ public class RenderBoard {
                                     new Coordinate(xCoordMapRotated.get(komaType) + 1, yCoordMapRotated.get(komaType)),
                                     new Dimension(xOffsetMapRotated.get(komaType), yOffsetMapRotated.get(komaType)),
                                     new Coordinate(CENTRE_X, CENTRE_Y),
-                                    numberHeld.toString(),
+                                    Integer.toString(numberHeld),
                                     scale
                             ));
                 } else {
@@ -378,7 +380,7 @@ public class RenderBoard {
                                     new Coordinate(xCoordMap.get(komaType) + 1, yCoordMap.get(komaType)),
                                     new Dimension(xOffsetMap.get(komaType), yOffsetMap.get(komaType)),
                                     new Coordinate(CENTRE_X, CENTRE_Y),
-                                    numberHeld.toString(),
+                                    Integer.toString(numberHeld),
                                     scale
                             ));
                 }
@@ -388,7 +390,7 @@ public class RenderBoard {
     }
 
     private static void drawHighlights(Board board, JPanel boardPanel, boolean rotatedView, Color highlightColor) {
-        Coordinate thisCoord = board.getSource();
+        Square thisCoord = board.getSource();
         if (thisCoord != null) {
             drawThisHighlight(rotatedView, boardPanel, thisCoord, highlightColor);
         }
@@ -402,7 +404,7 @@ public class RenderBoard {
         }
     }
 
-    private static void drawThisHighlight(boolean rotatedView, JPanel boardPanel, Coordinate thisCoord, Color highlightColor) {
+    private static void drawThisHighlight(boolean rotatedView, JPanel boardPanel, Square thisCoord, Color highlightColor) {
         int x;
         int y;
         if (rotatedView) {
@@ -424,30 +426,28 @@ public class RenderBoard {
     }
 
     private static void drawPieces(Board board, ImageCache imageCache, JPanel boardPanel, boolean rotatedView) {
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                Image pieceImage = getPieceImage(rotatedView, i, j, board, imageCache);
-                if (pieceImage != null) {
-                    addPiece(boardPanel, pieceImage, i, j);
-                }
+        // Visit only the occupied squares rather than all 81.
+        long occupiedLo = board.getOccupiedLo();
+        long occupiedHi = board.getOccupiedHi();
+        int index;
+        while ((index = Bitboard.first(occupiedLo, occupiedHi)) >= 0) {
+            occupiedLo &= ~Bitboard.lo(index);
+            occupiedHi &= ~Bitboard.hi(index);
+            int i = index % 9;
+            int j = index / 9;
+            if (rotatedView) {
+                i = 8 - i;
+                j = 8 - j;
             }
+            addPiece(boardPanel, getPieceImage(rotatedView, board.getKomaAt(index), imageCache), i, j);
         }
     }
 
-    private static Image getPieceImage(boolean rotatedView, int i, int j, Board board, ImageCache imageCache) {
-        Koma koma;
+    private static Image getPieceImage(boolean rotatedView, Koma koma, ImageCache imageCache) {
         String name;
         if (rotatedView) {
-            koma = board.getMasu()[8 - i][8 - j];
-            if (koma == null) {
-                return null;
-            }
             name = PIECE_SET_CLASSIC + "/" + substituteKomaNameRotated(koma.getType().toString());
         } else {
-            koma = board.getMasu()[i][j];
-            if (koma == null) {
-                return null;
-            }
             name = PIECE_SET_CLASSIC + "/" + substituteKomaName(koma.getType().toString());
         }
         BaseMultiResolutionImage cacheImage = imageCache.getImage(name);
@@ -17,13 +17,10 @@
 
 package com.chadfield.shogiexplorer.main;
 
-import java.util.EnumMap;
-import java.util.HashMap;
 import com.chadfield.shogiexplorer.objects.Board;
 import com.chadfield.shogiexplorer.objects.Board.Turn;
+import com.chadfield.shogiexplorer.objects.Hand;
 import com.chadfield.shogiexplorer.objects.Koma;
-import java.util.LinkedHashMap;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,313 +30,244 @@ public class SFENParser {
         BOARD, MOVE, INHAND, COUNT
     }
 
-    public static Board parse(String sfen) {
+    private static final ThreadLocal<StringBuilder> SFEN_BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+    private static final Koma.Type[] KOMA_TYPES = Koma.Type.values();
+    private static final Koma[] KOMA_BY_CHAR = new Koma[128];
+    private static final Koma[] PROMOTED_KOMA_BY_CHAR = new Koma[128];
+    private static final String[] SFEN_CODE = new String[KOMA_TYPES.length];
+    private static final Koma.Type[] IN_HAND_ORDER = {
+        Koma.Type.SHI, Koma.Type.SKA, Koma.Type.SKI, Koma.Type.SGI, Koma.Type.SKE, Koma.Type.SKY, Koma.Type.SFU,
+        Koma.Type.GHI, Koma.Type.GKA, Koma.Type.GKI, Koma.Type.GGI, Koma.Type.GKE, Koma.Type.GKY, Koma.Type.GFU
+    };
+
+    static {
+        for (Koma.Type komaType : KOMA_TYPES) {
+            String code = getSFENCode(komaType);
+            SFEN_CODE[komaType.ordinal()] = code;
+            if (komaType == Koma.Type.SOU || komaType == Koma.Type.GGY) {
+                // Kings are read as SGY and GOU.
+                continue;
+            }
+            if (code.length() == 1) {
+                KOMA_BY_CHAR[code.charAt(0)] = Koma.valueOf(komaType);
+            } else {
+                PROMOTED_KOMA_BY_CHAR[code.charAt(1)] = Koma.valueOf(komaType);
+            }
+        }
+    }
 
-        Board board = new Board();
-        board.setInHandKomaMap(new EnumMap<>(Koma.Type.class));
+    private SFENParser() {
+        throw new IllegalStateException("Utility class");
+    }
 
-        String[] splitSfen = sfen.split(" ");
+    private static String getSFENCode(Koma.Type komaType) {
+        return switch (komaType) {
+            case SFU ->
+                "P";
+            case SKY ->
+                "L";
+            case SKE ->
+                "N";
+            case SGI ->
+                "S";
+            case SKI ->
+                "G";
+            case SKA ->
+                "B";
+            case SHI ->
+                "R";
+            case SGY, SOU ->
+                "K";
+            case STO ->
+                "+P";
+            case SNY ->
+                "+L";
+            case SNK ->
+                "+N";
+            case SNG ->
+                "+S";
+            case SUM ->
+                "+B";
+            case SRY ->
+                "+R";
+            case GFU ->
+                "p";
+            case GKY ->
+                "l";
+            case GKE ->
+                "n";
+            case GGI ->
+                "s";
+            case GKI ->
+                "g";
+            case GKA ->
+                "b";
+            case GHI ->
+                "r";
+            case GOU, GGY ->
+                "k";
+            case GTO ->
+                "+p";
+            case GNY ->
+                "+l";
+            case GNK ->
+                "+n";
+            case GNG ->
+                "+s";
+            case GUM ->
+                "+b";
+            case GRY ->
+                "+r";
+        };
+    }
 
-        parsePieces(board, splitSfen[0]);
-        board.setNextTurn(getTurn(splitSfen[1]));
-        board = parseInHand(board, splitSfen[2]);
-        board.setMoveCount(Integer.parseInt(splitSfen[3]));
-        return board;
+    public static Board parse(String sfen) {
+        return parse(sfen, new Board());
     }
 
-    public static String getSFEN(Board board) {
-        StringBuilder bldResult = new StringBuilder();
-        int spaceCount = 0;
-        for (int j = 0; j < 9; j++) {
-            for (int i = 0; i < 9; i++) {
-                if (board.getMasu()[i][j] != null) {
-                    if (spaceCount > 0) {
-                        bldResult.append(spaceCount);
-                        spaceCount = 0;
-                    }
-                    bldResult.append(getSFENCode(board.getMasu()[i][j]));
-                } else {
-                    spaceCount++;
-                }
-            }
-            if (spaceCount > 0) {
-                bldResult.append(spaceCount);
-                spaceCount = 0;
-            }
-            if (j < 8) {
-                bldResult.append('/');
-            }
-        }
+    /**
+     * Parse a SFEN into an existing board, replacing everything on it.
+     *
+     * @return the board
+     */
+    public static Board parse(CharSequence sfen, Board board) {
+        return parse(sfen, null, 0, sfen.length(), board);
+    }
 
-        bldResult.append(getNextTurnString(board.getNextTurn()));
-        bldResult.append(getInHandString(board));
-        bldResult.append(" ");
-        bldResult.append(board.getMoveCount());
-        return bldResult.toString();
+    /**
+     * Parse an ASCII SFEN held in part of a byte array into an existing
+     * board, replacing everything on it.
+     *
+     * @return the board
+     */
+    public static Board parse(byte[] sfen, int offset, int length, Board board) {
+        return parse(null, sfen, offset, offset + length, board);
     }
 
-    private static Board parseInHand(Board board, String pieceStr) {
-        int inHandCount = 1;
-        boolean foundNum = false;
-        for (int k = 0; k < pieceStr.length(); k++) {
-            char thisChar = pieceStr.charAt(k);
-            if (thisChar == '-') {
-                return board;
-            } else {
-                if (isNumber(thisChar)) {
-                    if (foundNum) {
-                        inHandCount = inHandCount * 10 + thisChar - 48;
-                    } else {
-                        inHandCount = thisChar - 48;
-                        foundNum = true;
-                    }
+    private static Board parse(CharSequence chars, byte[] bytes, int start, int end, Board board) {
+        board.clear();
+        int k = start;
+
+        // The pieces on the board.
+        int index = 0;
+        boolean isPromoted = false;
+        for (; k < end; k++) {
+            char thisChar = charAt(chars, bytes, k);
+            if (thisChar == ' ') {
+                break;
+            }
+            if (isNumber(thisChar)) {
+                index += thisChar - '0';
+            } else if (thisChar == '+') {
+                isPromoted = true;
+            } else if (thisChar != '/') {
+                Koma koma = thisChar < 128 ? (isPromoted ? PROMOTED_KOMA_BY_CHAR : KOMA_BY_CHAR)[thisChar] : null;
+                if (koma == null || index >= 81) {
+                    logInvalidSyntax();
                 } else {
-                    switch (thisChar) {
-                        case 'R' -> {
-                            board.getInHandKomaMap().put(Koma.Type.SHI, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'B' -> {
-                            board.getInHandKomaMap().put(Koma.Type.SKA, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'G' -> {
-                            board.getInHandKomaMap().put(Koma.Type.SKI, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'S' -> {
-                            board.getInHandKomaMap().put(Koma.Type.SGI, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'N' -> {
-                            board.getInHandKomaMap().put(Koma.Type.SKE, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'L' -> {
-                            board.getInHandKomaMap().put(Koma.Type.SKY, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'P' -> {
-                            board.getInHandKomaMap().put(Koma.Type.SFU, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'r' -> {
-                            board.getInHandKomaMap().put(Koma.Type.GHI, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'b' -> {
-                            board.getInHandKomaMap().put(Koma.Type.GKA, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'g' -> {
-                            board.getInHandKomaMap().put(Koma.Type.GKI, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 's' -> {
-                            board.getInHandKomaMap().put(Koma.Type.GGI, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'n' -> {
-                            board.getInHandKomaMap().put(Koma.Type.GKE, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'l' -> {
-                            board.getInHandKomaMap().put(Koma.Type.GKY, inHandCount);
-                            inHandCount = 1;
-                        }
-                        case 'p' -> {
-                            board.getInHandKomaMap().put(Koma.Type.GFU, inHandCount);
-                            inHandCount = 1;
-                        }
-                        default -> 
-                            Logger.getLogger(SFENParser.class.getName()).log(Level.SEVERE, "Invalid SFEN syntax.");
-                    }
-                    foundNum = false;
+                    board.putKomaAt(index, koma);
                 }
+                isPromoted = false;
+                index++;
             }
         }
-        return board;
-    }
 
-    private static Board parsePieces(Board board, String pieceStr) {
-        int i = 0;
-        int j = 0;
-        boolean isPromoted = false;
-        for (int k = 0; k < pieceStr.length(); k++) {
-            char thisChar = pieceStr.charAt(k);
+        // The side to move.
+        k++;
+        board.setNextTurn(k < end && charAt(chars, bytes, k) == 'b' ? Turn.SENTE : Turn.GOTE);
+        k += 2;
+
+        // The pieces in hand.
+        int inHandCount = 0;
+        for (; k < end; k++) {
+            char thisChar = charAt(chars, bytes, k);
+            if (thisChar == ' ') {
+                break;
+            }
             if (isNumber(thisChar)) {
-                i += putBlanks(thisChar, board, i, j, k);
-            } else {
-                if (thisChar != '/') {
-                    if (thisChar == '+') {
-                        isPromoted = true;
-                    } else {
-                        board.getMasu()[i][j] = getKoma(thisChar, isPromoted);
-                        isPromoted = false;
-                        i++;
-                    }
+                inHandCount = inHandCount * 10 + thisChar - '0';
+            } else if (thisChar != '-') {
+                Koma koma = thisChar < 128 ? KOMA_BY_CHAR[thisChar] : null;
+                if (koma == null || Hand.getMaxCount(koma.getType()) == 0) {
+                    logInvalidSyntax();
+                } else {
+                    board.setInHandCount(koma.getType(), inHandCount == 0 ? 1 : inHandCount);
                 }
+                inHandCount = 0;
             }
-            if (i == 9) {
-                i = 0;
-                j++;
+        }
+
+        // The move count.
+        int moveCount = 0;
+        for (k++; k < end; k++) {
+            char thisChar = charAt(chars, bytes, k);
+            if (!isNumber(thisChar)) {
+                break;
             }
+            moveCount = moveCount * 10 + thisChar - '0';
         }
+        board.setMoveCount(moveCount == 0 ? 1 : moveCount);
         return board;
     }
 
-    private static Board.Turn getTurn(String thisStr) {
-        if (thisStr.contains("b")) {
-            return Turn.SENTE;
-        } else {
-            return Turn.GOTE;
-        }
+    private static char charAt(CharSequence chars, byte[] bytes, int index) {
+        return bytes == null ? chars.charAt(index) : (char) (bytes[index] & 0xFF);
     }
 
-    private static Koma getKoma(char thisChar, boolean isPromoted) {
-        HashMap<Character, Koma.Type> pieceMap = new HashMap<>();
-        HashMap<Character, Koma.Type> pieceMapPromoted = new HashMap<>();
-
-        //<editor-fold defaultstate="collapsed" desc="Map initialization">
-        pieceMap.put('l', Koma.Type.GKY);
-        pieceMap.put('n', Koma.Type.GKE);
-        pieceMap.put('s', Koma.Type.GGI);
-        pieceMap.put('g', Koma.Type.GKI);
-        pieceMap.put('k', Koma.Type.GOU);
-        pieceMap.put('r', Koma.Type.GHI);
-        pieceMap.put('b', Koma.Type.GKA);
-        pieceMap.put('p', Koma.Type.GFU);
-
-        pieceMap.put('L', Koma.Type.SKY);
-        pieceMap.put('N', Koma.Type.SKE);
-        pieceMap.put('S', Koma.Type.SGI);
-        pieceMap.put('G', Koma.Type.SKI);
-        pieceMap.put('K', Koma.Type.SGY);
-        pieceMap.put('R', Koma.Type.SHI);
-        pieceMap.put('B', Koma.Type.SKA);
-        pieceMap.put('P', Koma.Type.SFU);
-
-        pieceMapPromoted.put('l', Koma.Type.GNY);
-        pieceMapPromoted.put('n', Koma.Type.GNK);
-        pieceMapPromoted.put('s', Koma.Type.GNG);
-        pieceMapPromoted.put('r', Koma.Type.GRY);
-        pieceMapPromoted.put('b', Koma.Type.GUM);
-        pieceMapPromoted.put('p', Koma.Type.GTO);
-
-        pieceMapPromoted.put('L', Koma.Type.SNY);
-        pieceMapPromoted.put('N', Koma.Type.SNK);
-        pieceMapPromoted.put('S', Koma.Type.SNG);
-        pieceMapPromoted.put('R', Koma.Type.SRY);
-        pieceMapPromoted.put('B', Koma.Type.SUM);
-        pieceMapPromoted.put('P', Koma.Type.STO);
-        //</editor-fold>
-
-        if (isPromoted) {
-            return new Koma(pieceMapPromoted.get(thisChar));
-        } else {
-            return new Koma(pieceMap.get(thisChar));
-        }
+    private static void logInvalidSyntax() {
+        Logger.getLogger(SFENParser.class.getName()).log(Level.SEVERE, "Invalid SFEN syntax.");
     }
 
-    private static int putBlanks(char thisChar, Board board, int i, int j, int k) {
-        int numBlanks = thisChar - 48;
-        for (int x = k; x < numBlanks; x++) {
-            board.getMasu()[i + x][j] = null;
-        }
-        return numBlanks;
+    public static String getSFEN(Board board) {
+        StringBuilder bldResult = SFEN_BUILDER.get();
+        bldResult.setLength(0);
+        appendSFEN(board, bldResult);
+        return bldResult.toString();
     }
 
-    private static String getNextTurnString(Turn nextMove) {
-        if (nextMove == Board.Turn.SENTE) {
-            return " b";
-        } else {
-            return " w";
+    /**
+     * Append the SFEN of a board to a builder.
+     */
+    public static void appendSFEN(Board board, StringBuilder bldResult) {
+        int spaceCount = 0;
+        for (int j = 0; j < 9; j++) {
+            for (int i = 0; i < 9; i++) {
+                Koma koma = board.getKomaAt(j * 9 + i);
+                if (koma != null) {
+                    if (spaceCount > 0) {
+                        bldResult.append(spaceCount);
+                        spaceCount = 0;
+                    }
+                    bldResult.append(SFEN_CODE[koma.getType().ordinal()]);
+                } else {
+                    spaceCount++;
+                }
+            }
+            if (spaceCount > 0) {
+                bldResult.append(spaceCount);
+                spaceCount = 0;
+            }
+            if (j < 8) {
+                bldResult.append('/');
+            }
         }
-    }
 
-    private static String getInHandString(Board board) {
-        if (board.getInHandKomaMap().isEmpty()) {
-            return " -";
+        bldResult.append(board.getNextTurn() == Turn.SENTE ? " b " : " w ");
+        if (board.getHand(Turn.SENTE) == Hand.EMPTY && board.getHand(Turn.GOTE) == Hand.EMPTY) {
+            bldResult.append('-');
         } else {
-            return getNonEmptyInHandString(board);
-        }
-
-    }
-
-    private static String getNonEmptyInHandString(Board board) {
-        LinkedHashMap<Koma.Type, String> pieceMap = new LinkedHashMap<>();
-
-        //<editor-fold defaultstate="collapsed" desc="Map initialization">
-        pieceMap.put(Koma.Type.SHI, "R");
-        pieceMap.put(Koma.Type.SKA, "B");
-        pieceMap.put(Koma.Type.SKI, "G");
-        pieceMap.put(Koma.Type.SGI, "S");
-        pieceMap.put(Koma.Type.SKE, "N");
-        pieceMap.put(Koma.Type.SKY, "L");
-        pieceMap.put(Koma.Type.SFU, "P");
-
-        pieceMap.put(Koma.Type.GHI, "r");
-        pieceMap.put(Koma.Type.GKA, "b");
-        pieceMap.put(Koma.Type.GKI, "g");
-        pieceMap.put(Koma.Type.GGI, "s");
-        pieceMap.put(Koma.Type.GKE, "n");
-        pieceMap.put(Koma.Type.GKY, "l");
-        pieceMap.put(Koma.Type.GFU, "p");
-        //</editor-fold>
-
-        StringBuilder bldResult = new StringBuilder(" ");
-
-        Set<Koma.Type> keys = pieceMap.keySet();
-        for (Koma.Type thisType : keys) {
-            if (board.getInHandKomaMap().containsKey(thisType)) {
-                int number = board.getInHandKomaMap().get(thisType);
-                if (number > 1) {
-                    bldResult.append(number);
+            for (Koma.Type komaType : IN_HAND_ORDER) {
+                int number = board.getInHandCount(komaType);
+                if (number > 0) {
+                    if (number > 1) {
+                        bldResult.append(number);
+                    }
+                    bldResult.append(SFEN_CODE[komaType.ordinal()]);
                 }
-                bldResult.append(pieceMap.get(thisType));
             }
         }
-        return bldResult.toString();
-    }
-
-    private static String getSFENCode(Koma koma) {
-        EnumMap<Koma.Type, String> pieceMap = new EnumMap<>(Koma.Type.class);
-
-        //<editor-fold defaultstate="collapsed" desc="Map initialization">
-        pieceMap.put(Koma.Type.GKY, "l");
-        pieceMap.put(Koma.Type.GKE, "n");
-        pieceMap.put(Koma.Type.GGI, "s");
-        pieceMap.put(Koma.Type.GKI, "g");
-        pieceMap.put(Koma.Type.GOU, "k");
-        pieceMap.put(Koma.Type.GHI, "r");
-        pieceMap.put(Koma.Type.GKA, "b");
-        pieceMap.put(Koma.Type.GFU, "p");
-
-        pieceMap.put(Koma.Type.SKY, "L");
-        pieceMap.put(Koma.Type.SKE, "N");
-        pieceMap.put(Koma.Type.SGI, "S");
-        pieceMap.put(Koma.Type.SKI, "G");
-        pieceMap.put(Koma.Type.SGY, "K");
-        pieceMap.put(Koma.Type.SHI, "R");
-        pieceMap.put(Koma.Type.SKA, "B");
-        pieceMap.put(Koma.Type.SFU, "P");
-
-        pieceMap.put(Koma.Type.GNY, "+l");
-        pieceMap.put(Koma.Type.GNK, "+n");
-        pieceMap.put(Koma.Type.GNG, "+s");
-        pieceMap.put(Koma.Type.GRY, "+r");
-        pieceMap.put(Koma.Type.GUM, "+b");
-        pieceMap.put(Koma.Type.GTO, "+p");
-
-        pieceMap.put(Koma.Type.SNY, "+L");
-        pieceMap.put(Koma.Type.SNK, "+N");
-        pieceMap.put(Koma.Type.SNG, "+S");
-        pieceMap.put(Koma.Type.SRY, "+R");
-        pieceMap.put(Koma.Type.SUM, "+B");
-        pieceMap.put(Koma.Type.STO, "+P");
-
-        //</editor-fold>
-        return pieceMap.get(koma.getType());
+        bldResult.append(' ');
+        bldResult.append(board.getMoveCount());
     }
 
     private static boolean isNumber(char thisChar) {
@@ -0,0 +1,67 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Square;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+/**
+ * Writes a square as its x and y coordinates, the same layout that analysis
+ * files have always used, and reads it back as the shared instance.
+ */
+public class SquareConverter implements Converter {
+
+    private static final String NODE_X = "x";
+    private static final String NODE_Y = "y";
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean canConvert(Class type) {
+        return type == Square.class;
+    }
+
+    @Override
+    public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+        Square square = (Square) source;
+        writer.startNode(NODE_X);
+        writer.setValue(Integer.toString(square.getX()));
+        writer.endNode();
+        writer.startNode(NODE_Y);
+        writer.setValue(Integer.toString(square.getY()));
+        writer.endNode();
+    }
+
+    @Override
+    public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+        int x = 0;
+        int y = 0;
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            if (reader.getNodeName().contentEquals(NODE_X)) {
+                x = Integer.parseInt(reader.getValue());
+            } else if (reader.getNodeName().contentEquals(NODE_Y)) {
+                y = Integer.parseInt(reader.getValue());
+            }
+            reader.moveUp();
+        }
+        return Square.valueOf(x, y);
+    }
+}
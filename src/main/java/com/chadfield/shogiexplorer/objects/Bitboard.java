@@ -0,0 +1,298 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+/**
+ * Static helpers for 81-square bitboards.
+ *
+ * A bitboard is held as a pair of longs: squares 0..63 in the low word and
+ * squares 64..80 in the high word. Squares are numbered in SFEN order, from
+ * 9一 (index 0) across each rank to 1九 (index 80).
+ */
+public class Bitboard {
+
+    public static final int SQUARES = 81;
+    public static final int DIRECTIONS = 8;
+
+    // Directions are seen from sente's side of the board.
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int RIGHT = 2;
+    public static final int LEFT = 3;
+    public static final int UP_RIGHT = 4;
+    public static final int UP_LEFT = 5;
+    public static final int DOWN_RIGHT = 6;
+    public static final int DOWN_LEFT = 7;
+
+    private static final int[] DELTA_X = {0, 0, -1, 1, -1, 1, -1, 1};
+    private static final int[] DELTA_Y = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] OPPOSITE = {DOWN, UP, LEFT, RIGHT, DOWN_LEFT, DOWN_RIGHT, UP_LEFT, UP_RIGHT};
+    private static final int KOMA_TYPES = Koma.Type.values().length;
+
+    private static final long[][] STEP_LO = new long[KOMA_TYPES][SQUARES];
+    private static final long[][] STEP_HI = new long[KOMA_TYPES][SQUARES];
+    private static final long[][] RAY_LO = new long[DIRECTIONS][SQUARES];
+    private static final long[][] RAY_HI = new long[DIRECTIONS][SQUARES];
+    private static final boolean[][] SLIDES = new boolean[KOMA_TYPES][DIRECTIONS];
+
+    static {
+        for (int index = 0; index < SQUARES; index++) {
+            for (int direction = 0; direction < DIRECTIONS; direction++) {
+                int x = getX(index) + DELTA_X[direction];
+                int y = getY(index) + DELTA_Y[direction];
+                while (onBoard(x, y)) {
+                    RAY_LO[direction][index] |= lo(getIndex(x, y));
+                    RAY_HI[direction][index] |= hi(getIndex(x, y));
+                    x += DELTA_X[direction];
+                    y += DELTA_Y[direction];
+                }
+            }
+        }
+        for (Koma.Type komaType : Koma.Type.values()) {
+            initKoma(komaType);
+        }
+    }
+
+    private Bitboard() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    private static void initKoma(Koma.Type komaType) {
+        int[] steps;
+        int[] slides;
+        switch (komaType) {
+            case SFU, GFU -> {
+                steps = new int[]{UP};
+                slides = new int[]{};
+            }
+            case SKY, GKY -> {
+                steps = new int[]{};
+                slides = new int[]{UP};
+            }
+            case SKE, GKE -> {
+                steps = new int[]{};
+                slides = new int[]{};
+            }
+            case SGI, GGI -> {
+                steps = new int[]{UP, UP_RIGHT, UP_LEFT, DOWN_RIGHT, DOWN_LEFT};
+                slides = new int[]{};
+            }
+            case SKA, GKA -> {
+                steps = new int[]{};
+                slides = new int[]{UP_RIGHT, UP_LEFT, DOWN_RIGHT, DOWN_LEFT};
+            }
+            case SHI, GHI -> {
+                steps = new int[]{};
+                slides = new int[]{UP, DOWN, RIGHT, LEFT};
+            }
+            case SUM, GUM -> {
+                steps = new int[]{UP, DOWN, RIGHT, LEFT};
+                slides = new int[]{UP_RIGHT, UP_LEFT, DOWN_RIGHT, DOWN_LEFT};
+            }
+            case SRY, GRY -> {
+                steps = new int[]{UP_RIGHT, UP_LEFT, DOWN_RIGHT, DOWN_LEFT};
+                slides = new int[]{UP, DOWN, RIGHT, LEFT};
+            }
+            case SGY, SOU, GGY, GOU -> {
+                steps = new int[]{UP, DOWN, RIGHT, LEFT, UP_RIGHT, UP_LEFT, DOWN_RIGHT, DOWN_LEFT};
+                slides = new int[]{};
+            }
+            default -> {
+                // Gold and the pieces that move like gold.
+                steps = new int[]{UP, DOWN, RIGHT, LEFT, UP_RIGHT, UP_LEFT};
+                slides = new int[]{};
+            }
+        }
+
+        boolean isSente = isSente(komaType);
+        int komaIndex = komaType.ordinal();
+        for (int direction : slides) {
+            SLIDES[komaIndex][isSente ? direction : OPPOSITE[direction]] = true;
+        }
+        int forward = isSente ? -1 : 1;
+        for (int index = 0; index < SQUARES; index++) {
+            int x = getX(index);
+            int y = getY(index);
+            for (int direction : steps) {
+                int stepDirection = isSente ? direction : OPPOSITE[direction];
+                addStep(komaIndex, index, x + DELTA_X[stepDirection], y + DELTA_Y[stepDirection]);
+            }
+            if (komaType == Koma.Type.SKE || komaType == Koma.Type.GKE) {
+                addStep(komaIndex, index, x - 1, y + 2 * forward);
+                addStep(komaIndex, index, x + 1, y + 2 * forward);
+            }
+        }
+    }
+
+    private static void addStep(int komaIndex, int index, int x, int y) {
+        if (onBoard(x, y)) {
+            STEP_LO[komaIndex][index] |= lo(getIndex(x, y));
+            STEP_HI[komaIndex][index] |= hi(getIndex(x, y));
+        }
+    }
+
+    public static boolean isSente(Koma.Type komaType) {
+        // The enum lists all sente pieces before all gote pieces.
+        return komaType.ordinal() < KOMA_TYPES / 2;
+    }
+
+    public static boolean onBoard(int x, int y) {
+        return x > 0 && x < 10 && y > 0 && y < 10;
+    }
+
+    public static int getIndex(int x, int y) {
+        return (y - 1) * 9 + 9 - x;
+    }
+
+    public static int getX(int index) {
+        return 9 - index % 9;
+    }
+
+    public static int getY(int index) {
+        return index / 9 + 1;
+    }
+
+    public static long lo(int index) {
+        return index < 64 ? 1L << index : 0L;
+    }
+
+    public static long hi(int index) {
+        return index < 64 ? 0L : 1L << (index - 64);
+    }
+
+    public static boolean contains(long lo, long hi, int index) {
+        return ((lo & lo(index)) | (hi & hi(index))) != 0;
+    }
+
+    public static int count(long lo, long hi) {
+        return Long.bitCount(lo) + Long.bitCount(hi);
+    }
+
+    /**
+     * @return the lowest square in the set, or -1 if it is empty
+     */
+    public static int first(long lo, long hi) {
+        if (lo != 0) {
+            return Long.numberOfTrailingZeros(lo);
+        }
+        if (hi != 0) {
+            return 64 + Long.numberOfTrailingZeros(hi);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the highest square in the set, or -1 if it is empty
+     */
+    public static int last(long lo, long hi) {
+        if (hi != 0) {
+            return 127 - Long.numberOfLeadingZeros(hi);
+        }
+        if (lo != 0) {
+            return 63 - Long.numberOfLeadingZeros(lo);
+        }
+        return -1;
+    }
+
+    public static int opposite(int direction) {
+        return OPPOSITE[direction];
+    }
+
+    public static int step(int index, int direction) {
+        int x = getX(index) + DELTA_X[direction];
+        int y = getY(index) + DELTA_Y[direction];
+        return onBoard(x, y) ? getIndex(x, y) : -1;
+    }
+
+    /**
+     * @return whether the piece can slide any distance in the given direction
+     */
+    public static boolean slides(Koma.Type komaType, int direction) {
+        return SLIDES[komaType.ordinal()][direction];
+    }
+
+    public static long stepAttacksLo(Koma.Type komaType, int index) {
+        return STEP_LO[komaType.ordinal()][index];
+    }
+
+    public static long stepAttacksHi(Koma.Type komaType, int index) {
+        return STEP_HI[komaType.ordinal()][index];
+    }
+
+    public static long rayLo(int direction, int index) {
+        return RAY_LO[direction][index];
+    }
+
+    public static long rayHi(int direction, int index) {
+        return RAY_HI[direction][index];
+    }
+
+    /**
+     * @return the first occupied square along the ray, or -1 if there is none
+     */
+    public static int nearest(int direction, int index, long occupiedLo, long occupiedHi) {
+        long blockersLo = RAY_LO[direction][index] & occupiedLo;
+        long blockersHi = RAY_HI[direction][index] & occupiedHi;
+        if (isAscending(direction)) {
+            return first(blockersLo, blockersHi);
+        } else {
+            return last(blockersLo, blockersHi);
+        }
+    }
+
+    public static long rayAttacksLo(int direction, int index, long occupiedLo, long occupiedHi) {
+        int blocker = nearest(direction, index, occupiedLo, occupiedHi);
+        if (blocker < 0) {
+            return RAY_LO[direction][index];
+        }
+        return RAY_LO[direction][index] & ~RAY_LO[direction][blocker];
+    }
+
+    public static long rayAttacksHi(int direction, int index, long occupiedLo, long occupiedHi) {
+        int blocker = nearest(direction, index, occupiedLo, occupiedHi);
+        if (blocker < 0) {
+            return RAY_HI[direction][index];
+        }
+        return RAY_HI[direction][index] & ~RAY_HI[direction][blocker];
+    }
+
+    public static long attacksLo(Koma.Type komaType, int index, long occupiedLo, long occupiedHi) {
+        long result = STEP_LO[komaType.ordinal()][index];
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            if (SLIDES[komaType.ordinal()][direction]) {
+                result |= rayAttacksLo(direction, index, occupiedLo, occupiedHi);
+            }
+        }
+        return result;
+    }
+
+    public static long attacksHi(Koma.Type komaType, int index, long occupiedLo, long occupiedHi) {
+        long result = STEP_HI[komaType.ordinal()][index];
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            if (SLIDES[komaType.ordinal()][direction]) {
+                result |= rayAttacksHi(direction, index, occupiedLo, occupiedHi);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isAscending(int direction) {
+        // Square numbers grow downwards and towards the 1 file.
+        return DELTA_Y[direction] > 0 || (DELTA_Y[direction] == 0 && DELTA_X[direction] < 0);
+    }
+}
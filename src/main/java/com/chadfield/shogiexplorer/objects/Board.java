@@ -17,7 +17,8 @@
 
 package com.chadfield.shogiexplorer.objects;
 
-import java.util.Map;
+import com.chadfield.shogiexplorer.utils.ParserUtils;
+import java.util.Arrays;
 
 public class Board {
 
@@ -25,50 +26,326 @@ public class Board {
         SENTE, GOTE
     }
 
-    private Koma[][] masu = new Koma[9][9];
-    private Map<Koma.Type, Integer> inHandKomaMap;
+    private static final Koma.Type[] KOMA_TYPE_VALUES = Koma.Type.values();
+    private static final int KOMA_TYPES = KOMA_TYPE_VALUES.length;
+
+    private final Koma[] masu = new Koma[Bitboard.SQUARES];
+    private final long[] komaLo = new long[KOMA_TYPES];
+    private final long[] komaHi = new long[KOMA_TYPES];
+    private final long[] turnLo = new long[2];
+    private final long[] turnHi = new long[2];
+    private final int[] hands = new int[2];
+    private long zobristKey;
     private Turn nextTurn;
     private int moveCount;
-    private Coordinate source = null;
-    private Coordinate destination = null;
-    private Coordinate edit = null;
+    private Square source = null;
+    private Square destination = null;
+    private Square edit = null;
+    private long[] undoStack = new long[64];
+    private int undoCount = 0;
 
     public Board() {
+        // An empty board has no pieces and all bitboards clear.
+    }
+
+    /**
+     * Empty the board and the hands, and reset everything else to the state
+     * of a new board, so that the board can be reused.
+     */
+    public void clear() {
+        Arrays.fill(masu, null);
+        Arrays.fill(komaLo, 0);
+        Arrays.fill(komaHi, 0);
+        Arrays.fill(turnLo, 0);
+        Arrays.fill(turnHi, 0);
+        Arrays.fill(hands, Hand.EMPTY);
+        zobristKey = 0;
+        nextTurn = null;
+        moveCount = 0;
+        source = null;
+        destination = null;
+        edit = null;
+        undoCount = 0;
+    }
+
+    public Koma getKoma(Square square) {
+        return masu[square.getIndex()];
+    }
+
+    public void putKoma(Square square, Koma koma) {
+        putKomaAt(square.getIndex(), koma);
+    }
+
+    /**
+     * @param index the square in SFEN order, see {@link Bitboard}
+     * @return the koma on the square, or null if it is empty
+     */
+    public Koma getKomaAt(int index) {
+        return masu[index];
+    }
+
+    /**
+     * Place a koma on a square, keeping the bitboards in step.
+     *
+     * @param index the square in SFEN order, see {@link Bitboard}
+     * @param koma the koma to place, or null to empty the square
+     */
+    public void putKomaAt(int index, Koma koma) {
+        long bitLo = Bitboard.lo(index);
+        long bitHi = Bitboard.hi(index);
+        Koma oldKoma = masu[index];
+        if (oldKoma != null) {
+            int oldType = oldKoma.getType().ordinal();
+            int oldTurn = getTurnIndex(oldKoma.getType());
+            komaLo[oldType] &= ~bitLo;
+            komaHi[oldType] &= ~bitHi;
+            turnLo[oldTurn] &= ~bitLo;
+            turnHi[oldTurn] &= ~bitHi;
+            zobristKey ^= Zobrist.komaKey(oldKoma.getType(), index);
+        }
+        masu[index] = koma;
+        if (koma != null) {
+            int newType = koma.getType().ordinal();
+            int newTurn = getTurnIndex(koma.getType());
+            komaLo[newType] |= bitLo;
+            komaHi[newType] |= bitHi;
+            turnLo[newTurn] |= bitLo;
+            turnHi[newTurn] |= bitHi;
+            zobristKey ^= Zobrist.komaKey(koma.getType(), index);
+        }
+    }
+
+    /**
+     * The key covers the pieces on the board, the pieces in hand and the side
+     * to move. It is kept up to date as pieces are placed and taken in hand.
+     *
+     * @return the Zobrist key of the position
+     */
+    public long getZobristKey() {
+        return zobristKey ^ Zobrist.turnKey(nextTurn);
+    }
+
+    public long getKomaLo(Koma.Type komaType) {
+        return komaLo[komaType.ordinal()];
+    }
+
+    public long getKomaHi(Koma.Type komaType) {
+        return komaHi[komaType.ordinal()];
+    }
+
+    public long getOccupiedLo(Turn turn) {
+        return turnLo[turn.ordinal()];
+    }
+
+    public long getOccupiedHi(Turn turn) {
+        return turnHi[turn.ordinal()];
+    }
+
+    public long getOccupiedLo() {
+        return turnLo[0] | turnLo[1];
+    }
+
+    public long getOccupiedHi() {
+        return turnHi[0] | turnHi[1];
+    }
+
+    /**
+     * @return the square of the king, or -1 if the side has no king
+     */
+    public int getKingIndex(Turn turn) {
+        if (turn == Turn.SENTE) {
+            return Bitboard.first(getKomaLo(Koma.Type.SGY) | getKomaLo(Koma.Type.SOU), getKomaHi(Koma.Type.SGY) | getKomaHi(Koma.Type.SOU));
+        } else {
+            return Bitboard.first(getKomaLo(Koma.Type.GOU) | getKomaLo(Koma.Type.GGY), getKomaHi(Koma.Type.GOU) | getKomaHi(Koma.Type.GGY));
+        }
+    }
 
-        for (int i = 0;
-                i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                masu[i][j] = null;
+    /**
+     * @return whether any piece belonging to the attacker can move to the square
+     */
+    public boolean isAttacked(int index, Turn attacker) {
+        long occupiedLo = getOccupiedLo();
+        long occupiedHi = getOccupiedHi();
+        int first = attacker == Turn.SENTE ? 0 : KOMA_TYPES / 2;
+        for (int k = first; k < first + KOMA_TYPES / 2; k++) {
+            if ((komaLo[k] | komaHi[k]) == 0) {
+                continue;
+            }
+            // A piece attacks the square exactly when the same piece of the
+            // other side, placed on the square, would attack the piece.
+            Koma.Type mirrorType = getMirrorType(KOMA_TYPE_VALUES[k]);
+            if ((Bitboard.stepAttacksLo(mirrorType, index) & komaLo[k]) != 0
+                    || (Bitboard.stepAttacksHi(mirrorType, index) & komaHi[k]) != 0) {
+                return true;
+            }
+        }
+        for (int direction = 0; direction < Bitboard.DIRECTIONS; direction++) {
+            int blocker = Bitboard.nearest(direction, index, occupiedLo, occupiedHi);
+            if (blocker >= 0) {
+                Koma.Type blockerType = masu[blocker].getType();
+                if (getTurnIndex(blockerType) == attacker.ordinal()
+                        && Bitboard.slides(blockerType, Bitboard.opposite(direction))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the pieces of the given type that can move to the square
+     */
+    public long getAttackersLo(Koma.Type komaType, int index) {
+        return Bitboard.attacksLo(getMirrorType(komaType), index, getOccupiedLo(), getOccupiedHi()) & komaLo[komaType.ordinal()];
+    }
+
+    /**
+     * @return the pieces of the given type that can move to the square
+     */
+    public long getAttackersHi(Koma.Type komaType, int index) {
+        return Bitboard.attacksHi(getMirrorType(komaType), index, getOccupiedLo(), getOccupiedHi()) & komaHi[komaType.ordinal()];
+    }
+
+    private static Koma.Type getMirrorType(Koma.Type komaType) {
+        // The same piece belonging to the other side moves in the mirrored directions.
+        return ParserUtils.getOtherSideType(komaType);
+    }
+
+    public boolean isInCheck(Turn turn) {
+        int kingIndex = getKingIndex(turn);
+        if (kingIndex < 0) {
+            return false;
+        }
+        if (turn == Turn.SENTE) {
+            return isAttacked(kingIndex, Turn.GOTE);
+        } else {
+            return isAttacked(kingIndex, Turn.SENTE);
+        }
+    }
+
+    /**
+     * Play a move on the board, switching the turn and recording what is
+     * needed to take it back with {@link #unmakeMove()}.
+     *
+     * @param move the move, see {@link Move}
+     * @throws IllegalArgumentException for a drop of a piece that is not held
+     */
+    public void makeMove(int move) {
+        int to = Move.getTo(move);
+        Koma.Type movedType;
+        Koma capturedKoma = null;
+        if (Move.isDrop(move)) {
+            movedType = Move.getDropType(move, nextTurn);
+            removeInHand(movedType);
+            putKomaAt(to, Koma.valueOf(movedType));
+        } else {
+            int from = Move.getFrom(move);
+            movedType = masu[from].getType();
+            capturedKoma = masu[to];
+            // Positions set up in the editor can leave a king en prise. A
+            // captured king cannot be held, so it just leaves the board.
+            Koma handKoma = capturedKoma == null ? null : ParserUtils.invertKoma(capturedKoma.getType());
+            if (handKoma != null) {
+                addInHand(handKoma.getType());
             }
+            Koma promotedKoma = ParserUtils.promoteKoma(movedType);
+            if (Move.isPromote(move) && promotedKoma != null) {
+                putKomaAt(to, promotedKoma);
+            } else {
+                putKomaAt(to, masu[from]);
+            }
+            putKomaAt(from, null);
+        }
+
+        if (undoCount == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoCount * 2);
         }
+        undoStack[undoCount++] = move
+                | (long) (movedType.ordinal() + 1) << 16
+                | (long) (capturedKoma == null ? 0 : capturedKoma.getType().ordinal() + 1) << 21
+                | (long) (source == null ? 0 : source.getIndex() + 1) << 26
+                | (long) (destination == null ? 0 : destination.getIndex() + 1) << 33;
+
+        nextTurn = nextTurn == Turn.SENTE ? Turn.GOTE : Turn.SENTE;
+        moveCount++;
+        source = Move.isDrop(move) ? null : Square.valueOf(Move.getFrom(move));
+        destination = Square.valueOf(to);
     }
 
     /**
-     * @return the masu
+     * Take back the last move played with {@link #makeMove(int)}.
      */
-    public Koma[][] getMasu() {
-        return masu;
+    public void unmakeMove() {
+        long undo = undoStack[--undoCount];
+        int move = (int) (undo & 0xFFFF);
+        int movedType = (int) (undo >>> 16 & 0x1F) - 1;
+        int capturedType = (int) (undo >>> 21 & 0x1F) - 1;
+        int oldSource = (int) (undo >>> 26 & 0x7F) - 1;
+        int oldDestination = (int) (undo >>> 33 & 0x7F) - 1;
+
+        int to = Move.getTo(move);
+        if (Move.isDrop(move)) {
+            putKomaAt(to, null);
+            addInHand(KOMA_TYPE_VALUES[movedType]);
+        } else {
+            putKomaAt(Move.getFrom(move), Koma.valueOf(KOMA_TYPE_VALUES[movedType]));
+            if (capturedType < 0) {
+                putKomaAt(to, null);
+            } else {
+                putKomaAt(to, Koma.valueOf(KOMA_TYPE_VALUES[capturedType]));
+                Koma handKoma = ParserUtils.invertKoma(KOMA_TYPE_VALUES[capturedType]);
+                if (handKoma != null) {
+                    removeInHand(handKoma.getType());
+                }
+            }
+        }
+
+        nextTurn = nextTurn == Turn.SENTE ? Turn.GOTE : Turn.SENTE;
+        moveCount--;
+        source = oldSource < 0 ? null : Square.valueOf(oldSource);
+        destination = oldDestination < 0 ? null : Square.valueOf(oldDestination);
     }
 
     /**
-     * @param masu the masu to set
+     * @return the packed hand of the side, see {@link Hand}
      */
-    public void setMasu(Koma[][] masu) {
-        this.masu = masu;
+    public int getHand(Turn turn) {
+        return hands[turn.ordinal()];
     }
 
     /**
-     * @return the inHandKomaMap
+     * @param komaType an unpromoted piece; sente types count sente's hand and
+     * gote types count gote's hand
+     * @return the number held
      */
-    public Map<Koma.Type, Integer> getInHandKomaMap() {
-        return inHandKomaMap;
+    public int getInHandCount(Koma.Type komaType) {
+        return Hand.getCount(hands[getTurnIndex(komaType)], komaType);
+    }
+
+    public void setInHandCount(Koma.Type komaType, int count) {
+        int turnIndex = getTurnIndex(komaType);
+        int oldCount = Hand.getCount(hands[turnIndex], komaType);
+        hands[turnIndex] = Hand.setCount(hands[turnIndex], komaType, count);
+        zobristKey ^= Zobrist.inHandKey(komaType, oldCount) ^ Zobrist.inHandKey(komaType, Hand.getCount(hands[turnIndex], komaType));
+    }
+
+    public void addInHand(Koma.Type komaType) {
+        setInHandCount(komaType, getInHandCount(komaType) + 1);
     }
 
     /**
-     * @param inHandKomaMap the inHandKomaMap to set
+     * @throws IllegalArgumentException if none are held
      */
-    public void setInHandKomaMap(Map<Koma.Type, Integer> inHandKomaMap) {
-        this.inHandKomaMap = inHandKomaMap;
+    public void removeInHand(Koma.Type komaType) {
+        int count = getInHandCount(komaType);
+        if (count == 0) {
+            throw new IllegalArgumentException("No " + komaType + " in hand");
+        }
+        setInHandCount(komaType, count - 1);
+    }
+
+    private static int getTurnIndex(Koma.Type komaType) {
+        return Bitboard.isSente(komaType) ? Turn.SENTE.ordinal() : Turn.GOTE.ordinal();
     }
 
     /**
@@ -102,42 +379,42 @@ public class Board {
     /**
      * @return the source
      */
-    public Coordinate getSource() {
+    public Square getSource() {
         return source;
     }
 
     /**
      * @param source the source to set
      */
-    public void setSource(Coordinate source) {
+    public void setSource(Square source) {
         this.source = source;
     }
 
     /**
      * @return the destination
      */
-    public Coordinate getDestination() {
+    public Square getDestination() {
         return destination;
     }
 
     /**
      * @param destination the destination to set
      */
-    public void setDestination(Coordinate destination) {
+    public void setDestination(Square destination) {
         this.destination = destination;
     }
 
     /**
      * @return the edit
      */
-    public Coordinate getEdit() {
+    public Square getEdit() {
         return edit;
     }
 
     /**
      * @param edit the edit to set
      */
-    public void setEdit(Coordinate edit) {
+    public void setEdit(Square edit) {
         this.edit = edit;
     }
 
@@ -0,0 +1,218 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.main.PositionCodec;
+import com.chadfield.shogiexplorer.main.SFENParser;
+import com.chadfield.shogiexplorer.utils.NotationUtils;
+import com.chadfield.shogiexplorer.utils.StringPool;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The positions of a game held as its moves, two bytes each, with a packed
+ * board every few moves. A position is rebuilt when it is asked for by
+ * playing at most that many moves from the checkpoint before it, so a game
+ * takes a few bytes per move instead of a Position each.
+ *
+ * The list cannot be changed. Changes made to the positions it returns are
+ * not kept, and the Japanese notation is worked out again from the moves.
+ */
+public class CompactPositionList extends AbstractList<Position> implements RandomAccess {
+
+    public static final int DEFAULT_INTERVAL = 16;
+
+    private final short[] moves;
+    private final int interval;
+    private final int startMoveCount;
+    // One of these holds the checkpoints, depending on whether the boards
+    // could be packed.
+    private final byte[] packedCheckpoints;
+    private final String[] sfenCheckpoints;
+    private final Map<Integer, String> comments;
+
+    // The board last rebuilt on each thread, so that stepping through a game
+    // plays one move at a time. It is shared by every list rather than held
+    // by each.
+    private static final ThreadLocal<Cursor> CURSOR = ThreadLocal.withInitial(Cursor::new);
+
+    private static class Cursor {
+
+        private WeakReference<CompactPositionList> list = new WeakReference<>(null);
+        private final Board board = new Board();
+        private int ply = -1;
+    }
+
+    private CompactPositionList(short[] moves, int interval, int startMoveCount, byte[] packedCheckpoints, String[] sfenCheckpoints, Map<Integer, String> comments) {
+        this.moves = moves;
+        this.interval = interval;
+        this.startMoveCount = startMoveCount;
+        this.packedCheckpoints = packedCheckpoints;
+        this.sfenCheckpoints = sfenCheckpoints;
+        this.comments = comments;
+    }
+
+    /**
+     * Pack a list of positions with the default checkpoint interval.
+     */
+    public static CompactPositionList of(List<Position> positionList) {
+        return of(positionList, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param positionList the positions, starting with the start position,
+     * each after the first having the engine move that reached it
+     * @param interval the number of moves between checkpoints
+     * @throws IllegalArgumentException if a move cannot be read
+     */
+    public static CompactPositionList of(List<Position> positionList, int interval) {
+        if (positionList.isEmpty()) {
+            throw new IllegalArgumentException("No start position");
+        }
+        Board board = SFENParser.parse(positionList.get(0).getGameSFEN());
+        int startMoveCount = board.getMoveCount();
+        short[] moves = new short[positionList.size() - 1];
+        int checkpointCount = moves.length / interval + 1;
+        byte[] packedCheckpoints = new byte[checkpointCount * PositionCodec.SIZE];
+        // Only made if a board cannot be packed.
+        String[] sfenCheckpoints = null;
+        Map<Integer, String> comments = new HashMap<>();
+
+        int ply = 0;
+        for (Position position : positionList) {
+            if (ply > 0) {
+                int move = Move.parseUSI(position.getNotation().getEngineMove());
+                if (move == Move.NONE) {
+                    throw new IllegalArgumentException("Invalid move: " + position.getNotation().getEngineMove());
+                }
+                moves[ply - 1] = (short) move;
+                board.makeMove(move);
+            }
+            if (ply % interval == 0) {
+                int checkpoint = ply / interval;
+                if (sfenCheckpoints == null && !PositionCodec.canEncode(board)) {
+                    sfenCheckpoints = getSFENCheckpoints(packedCheckpoints, checkpoint, checkpointCount, startMoveCount, interval);
+                }
+                if (sfenCheckpoints == null) {
+                    PositionCodec.encode(board, packedCheckpoints, checkpoint * PositionCodec.SIZE);
+                } else {
+                    sfenCheckpoints[checkpoint] = SFENParser.getSFEN(board);
+                }
+            }
+            if (!position.getComment().isEmpty()) {
+                comments.put(ply, position.getComment());
+            }
+            ply++;
+        }
+        return new CompactPositionList(moves, interval, startMoveCount,
+                sfenCheckpoints == null ? packedCheckpoints : null, sfenCheckpoints,
+                comments.isEmpty() ? Map.of() : comments);
+    }
+
+    /**
+     * @return the checkpoints packed so far, as SFEN
+     */
+    private static String[] getSFENCheckpoints(byte[] packedCheckpoints, int packedCount, int checkpointCount, int startMoveCount, int interval) {
+        String[] sfenCheckpoints = new String[checkpointCount];
+        Board board = new Board();
+        for (int checkpoint = 0; checkpoint < packedCount; checkpoint++) {
+            PositionCodec.decode(packedCheckpoints, checkpoint * PositionCodec.SIZE, board);
+            board.setMoveCount(startMoveCount + checkpoint * interval);
+            sfenCheckpoints[checkpoint] = SFENParser.getSFEN(board);
+        }
+        return sfenCheckpoints;
+    }
+
+    @Override
+    public int size() {
+        return moves.length + 1;
+    }
+
+    /**
+     * @return the move that reached the position
+     */
+    public int getMove(int index) {
+        return moves[index - 1] & 0xFFFF;
+    }
+
+    /**
+     * @return the Zobrist key of every position in order, worked out by
+     * playing through the game once
+     */
+    public long[] getZobristKeys() {
+        long[] result = new long[size()];
+        Cursor cursor = CURSOR.get();
+        for (int ply = 0; ply < result.length; ply++) {
+            result[ply] = getBoard(cursor, ply).getZobristKey();
+        }
+        return result;
+    }
+
+    @Override
+    public Position get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        Cursor cursor = CURSOR.get();
+        if (index == 0) {
+            Position position = new Position(getBoard(cursor, 0), null, null, new Notation());
+            position.setComment(comments.getOrDefault(0, ""));
+            return position;
+        }
+
+        Board board = getBoard(cursor, index - 1);
+        int move = getMove(index);
+        Square lastDestination = index > 1 ? Square.valueOf(Move.getTo(getMove(index - 1))) : null;
+        Notation notation = new Notation();
+        notation.setJapanese(StringPool.NOTATION.intern(NotationUtils.getJapaneseMove(board, move, lastDestination)));
+        notation.setEngineMove(StringPool.NOTATION.intern(Move.toUSI(move)));
+        board.makeMove(move);
+        cursor.ply = index;
+
+        Square source = Move.isDrop(move) ? null : Square.valueOf(Move.getFrom(move));
+        Position position = new Position(board, source, Square.valueOf(Move.getTo(move)), notation);
+        position.setComment(comments.getOrDefault(index, ""));
+        return position;
+    }
+
+    /**
+     * @return the board at a ply, played on from the cursor when it is on
+     * this list between the checkpoint and the ply
+     */
+    private Board getBoard(Cursor cursor, int ply) {
+        int checkpoint = ply / interval;
+        if (cursor.list.get() != this || cursor.ply > ply || cursor.ply < checkpoint * interval) {
+            if (packedCheckpoints != null) {
+                PositionCodec.decode(packedCheckpoints, checkpoint * PositionCodec.SIZE, cursor.board);
+            } else {
+                SFENParser.parse(sfenCheckpoints[checkpoint], cursor.board);
+            }
+            cursor.board.setMoveCount(startMoveCount + checkpoint * interval);
+            cursor.list = new WeakReference<>(this);
+            cursor.ply = checkpoint * interval;
+        }
+        while (cursor.ply < ply) {
+            cursor.board.makeMove(getMove(++cursor.ply));
+        }
+        return cursor.board;
+    }
+}
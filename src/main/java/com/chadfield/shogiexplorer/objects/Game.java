@@ -30,6 +30,12 @@ public class Game {
     private String gote;
     private String handicap;
     private String tournament;
+    // How much of the text has been read, for appending to a live game.
+    private int parsedLineCount;
+    private int parsedTextHash;
+    // Null unless the game was read from a KIF file.
+    private GameTree gameTree;
+    private Result result = Result.UNKNOWN;
     public static final String HANDICAP_NONE = "平手";
     public static final String HANDICAP_LANCE = "香落ち";
     public static final String HANDICAP_BISHOP = "角落ち";
@@ -40,6 +46,10 @@ public class Game {
     public static final String HANDICAP_6_PIECE = "六枚落ち";
     public static final String HANDICAP_8_PIECE = "八枚落ち";
 
+    public enum Result {
+        SENTE_WIN, GOTE_WIN, DRAW, UNKNOWN
+    }
+
     public Game() {
         date = "";
         place = "";
@@ -185,4 +195,61 @@ public class Game {
         this.tournament = tournament;
     }
 
+    /**
+     * @return the number of lines read up to the last move or comment
+     */
+    public int getParsedLineCount() {
+        return parsedLineCount;
+    }
+
+    /**
+     * @param parsedLineCount the parsedLineCount to set
+     */
+    public void setParsedLineCount(int parsedLineCount) {
+        this.parsedLineCount = parsedLineCount;
+    }
+
+    /**
+     * @return the hash of the lines read up to the last move or comment
+     */
+    public int getParsedTextHash() {
+        return parsedTextHash;
+    }
+
+    /**
+     * @param parsedTextHash the parsedTextHash to set
+     */
+    public void setParsedTextHash(int parsedTextHash) {
+        this.parsedTextHash = parsedTextHash;
+    }
+
+    /**
+     * @return the result
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    /**
+     * @param result the result to set
+     */
+    public void setResult(Result result) {
+        this.result = result;
+    }
+
+    /**
+     * @return the main line and variations, or null if the game was not
+     * read from a KIF file or has no variations
+     */
+    public GameTree getGameTree() {
+        return gameTree;
+    }
+
+    /**
+     * @param gameTree the gameTree to set
+     */
+    public void setGameTree(GameTree gameTree) {
+        this.gameTree = gameTree;
+    }
+
 }
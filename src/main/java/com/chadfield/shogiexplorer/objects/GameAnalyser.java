@@ -20,10 +20,10 @@ import com.chadfield.shogiexplorer.main.AnalysisManager;
 import com.chadfield.shogiexplorer.main.EngineManager;
 import com.chadfield.shogiexplorer.main.SFENParser;
 import com.chadfield.shogiexplorer.objects.Board.Turn;
-import com.chadfield.shogiexplorer.utils.NotationUtils;
+import com.chadfield.shogiexplorer.utils.NotationFormatter;
 import com.chadfield.shogiexplorer.utils.ParserUtils;
+import com.chadfield.shogiexplorer.utils.StringPool;
 import static com.chadfield.shogiexplorer.utils.StringUtils.getFileExtension;
-import com.ibm.icu.text.Transliterator;
 import java.awt.Rectangle;
 import java.io.BufferedReader;
 import java.io.File;
@@ -86,7 +86,6 @@ public class GameAnalyser {
     JButton analysePositionToolbarButton;
     JMenuItem resumeAnalysisMenuItem;
     JButton resumeAnalysisToolbarButton;
-    Transliterator trans = Transliterator.getInstance("Halfwidth-Fullwidth");
     Turn turn;
     int multiPV;
     int rowNum;
@@ -139,8 +138,8 @@ public class GameAnalyser {
         if (resume) {
             resumeCount = analysisTable.getRowCount();
         }
-        Coordinate lastDestination = null;
-        Coordinate previousMoveDestination = null;
+        Square lastDestination = null;
+        Square previousMoveDestination = null;
         if (!resume) {
             game.setAnalysisPositionList(new ArrayList<>());
         }
@@ -174,11 +173,7 @@ public class GameAnalyser {
             sfen = position.getGameSFEN();
             engineMove = position.getNotation().getEngineMove();
 
-            if (turn == Turn.SENTE) {
-                japaneseMove = trans.transliterate(" ☗" + position.getNotation().getJapanese());
-            } else {
-                japaneseMove = trans.transliterate(" ☖" + position.getNotation().getJapanese());
-            }
+            japaneseMove = NotationFormatter.getAnalysisLabel(turn, position.getNotation().getJapanese());
 
             lastDestination = position.getDestination();
         }
@@ -437,7 +432,7 @@ public class GameAnalyser {
         process.destroy();
     }
 
-    private void analysePosition(Game game, String sfen, String engineMove, String japaneseMove, JTable analysisTable, DefaultIntervalXYDataset plotDataset, int moveNum, Turn turn, Coordinate previousMoveDestination) throws IOException {
+    private void analysePosition(Game game, String sfen, String engineMove, String japaneseMove, JTable analysisTable, DefaultIntervalXYDataset plotDataset, int moveNum, Turn turn, Square previousMoveDestination) throws IOException {
         stdin.write(("position sfen " + sfen + " " + engineMove + "\n").getBytes());
         stdin.write(("go movetime " + analysisTimePerMove * 1000 + "\n").getBytes());
         stdin.flush();
@@ -460,163 +455,40 @@ public class GameAnalyser {
         }
     }
 
-    private ArrayList<Position> getPVPositionList(String sfen, String bestLine, Coordinate previousMoveDestination) {
+    private ArrayList<Position> getPVPositionList(String sfen, String bestLine, Square previousMoveDestination) {
         ArrayList<Position> result = new ArrayList<>();
-        String currentSfen = sfen;
-        Coordinate thisPreviousMoveDestination = previousMoveDestination;
+        Board board = SFENParser.parse(sfen);
+        Square thisPreviousMoveDestination = previousMoveDestination;
         for (String move : getBestLineMoveList(bestLine)) {
-            Position position = getPosition(currentSfen, move, thisPreviousMoveDestination);
+            Position position = getPosition(board, move, thisPreviousMoveDestination);
             result.add(position);
-            currentSfen = position.getGameSFEN();
             thisPreviousMoveDestination = position.getDestination();
         }
         return result;
     }
 
-    private Position getPosition(String sfen, String move, Coordinate lastDestination) {
-        Board board = SFENParser.parse(sfen);
-        Notation notation = executeMove(board, move, lastDestination);
-        return new Position(SFENParser.getSFEN(board), board.getSource(), board.getDestination(), notation);
-    }
-
-    private Notation executeMove(Board board, String move, Coordinate lastDestination) {
-        Coordinate thisDestination;
-        Coordinate thisSource;
-        Koma.Type sourceKomaType;
-        boolean isDrop = isDrop(move);
-        String disambiguation;
-
-        thisDestination = getDestinationCoordinate(move);
-        if (thisDestination == null) {
+    private Position getPosition(Board board, String engineMove, Square lastDestination) {
+        int move = Move.parseUSI(engineMove);
+        if (move == Move.NONE || !MoveGenerator.isLegal(board, move)) {
             Notation notation = new Notation();
-            notation.setEngineMove(move);
-            notation.setJapanese(move);
-            return notation;
-        }
-        if (isDrop) {
-            thisSource = null;
-            Koma sourceKoma = ParserUtils.getDropKoma(move.substring(0, 1), board.getNextTurn());
-            sourceKomaType = sourceKoma.getType();
-            disambiguation = NotationUtils.getDropNotation(board, thisDestination, sourceKomaType);
-            executeDropMove(board, thisDestination, sourceKoma);
-        } else {
-            thisSource = getSourceCoordinate(move);
-            Koma sourceKoma = getKoma(board, thisSource);
-            sourceKomaType = sourceKoma.getType();
-            disambiguation = NotationUtils.getDisambiguation(board, thisSource, thisDestination, sourceKomaType);
-            executeRegularMove(board, thisSource, thisDestination, sourceKoma, move);
-        }
-
-        board.setNextTurn(ParserUtils.switchTurn(board.getNextTurn()));
-        board.setSource(thisSource);
-        board.setDestination(thisDestination);
-        board.setMoveCount(board.getMoveCount() + 1);
-
-        Notation notation = new Notation();
-        notation.setJapanese(trans.transliterate(getNotation(board, lastDestination, sourceKomaType, isDrop, move, disambiguation)));
-        notation.setEngineMove(move);
-
-        return notation;
-    }
-
-    private static String getNotation(Board board, Coordinate lastDestination, Koma.Type sourceKomaType, boolean isDrop, String move, String disambiguation) {
-        StringBuilder result = new StringBuilder("");
-        if (board.getNextTurn() == Board.Turn.GOTE) {
-            result.append("☗");
-        } else {
-            result.append("☖");
-        }
-
-        Coordinate destination = board.getDestination();
-        if (lastDestination != null && destination.sameValue(lastDestination)) {
-            result.append(NotationUtils.SAME);
-        } else {
-            result.append(NotationUtils.getJapaneseCoordinate(destination));
-        }
-
-        result.append(NotationUtils.getKomaKanji(sourceKomaType));
-        result.append(disambiguation);
-        if (!isDrop && isPromoted(move)) {
-            result.append(NotationUtils.PROMOTED);
-        }
-        return result.toString();
-    }
-
-    private static void removePieceInHand(Koma.Type komaType, Board board) {
-        if (board.getInHandKomaMap().get(komaType) == 1) {
-            board.getInHandKomaMap().remove(komaType);
-        } else {
-            board.getInHandKomaMap().put(komaType, board.getInHandKomaMap().get(komaType) - 1);
-        }
-    }
-
-    private static void executeDropMove(Board board, Coordinate thisDestination, Koma sourceKoma) {
-        try {
-            putKoma(board, thisDestination, sourceKoma);
-            removePieceInHand(sourceKoma.getType(), board);
-        } catch (Exception ex) {
-            Logger.getLogger(GameAnalyser.class.getName()).log(Level.SEVERE, null, ex);
-        }
-    }
-
-    private void executeRegularMove(Board board, Coordinate thisSource, Coordinate thisDestination, Koma sourceKoma, String move) {
-        Koma destinationKoma = getKoma(board, thisDestination);
-        if (destinationKoma != null) {
-            ParserUtils.addPieceToInHand(destinationKoma, board);
+            notation.setEngineMove(StringPool.NOTATION.intern(engineMove));
+            notation.setJapanese(notation.getEngineMove());
+            return new Position(board, null, null, notation);
         }
-        putKoma(board, thisDestination, promCheck(sourceKoma, move));
-        putKoma(board, thisSource, null);
+        Notation notation = executeMove(board, move, engineMove, lastDestination);
+        return new Position(board, board.getSource(), board.getDestination(), notation);
     }
 
-    private static Koma promCheck(Koma koma, String move) {
-        if (!isPromoted(move)) {
-            return koma;
-        } else {
-            return ParserUtils.promoteKoma(koma.getType());
-        }
-    }
+    private Notation executeMove(Board board, int move, String engineMove, Square lastDestination) {
+        String japanese = NotationFormatter.getJapaneseMove(board, move, lastDestination);
 
-    private static boolean isPromoted(String move) {
-        return move.charAt(move.length() - 1) == '+';
-    }
+        board.makeMove(move);
 
-    public static void putKoma(Board board, Coordinate coords, Koma koma) {
-        board.getMasu()[9 - coords.getX()][coords.getY() - 1] = koma;
-    }
-
-    public static Koma getKoma(Board board, Coordinate coords) {
-        return board.getMasu()[9 - coords.getX()][coords.getY() - 1];
-    }
-
-    private boolean isDrop(String move) {
-        return move.contains("*");
-    }
-
-    private Coordinate getDestinationCoordinate(String move) {
-        Coordinate result = new Coordinate();
-        if (move.contains("*")) {
-            int starIndex = move.indexOf("*");
-            result.setX(move.charAt(starIndex + 1) - 49 + 1);
-            result.setY(move.charAt(starIndex + 2) - 97 + 1);
-        } else {
-            result.setX(move.charAt(2) - 49 + 1);
-            result.setY(move.charAt(3) - 97 + 1);
-        }
-        if (result.getX() > 9 || result.getX() < 1 || result.getY() > 9 || result.getY() < 1) {
-            return null;
-        }
-        return result;
-    }
-
-    private Coordinate getSourceCoordinate(String move) {
-        Coordinate result = new Coordinate();
-        result.setX(move.charAt(0) - 49 + 1);
-        result.setY(move.charAt(1) - 97 + 1);
-        if (result.getX() > 9 || result.getX() < 1 || result.getY() > 9 || result.getY() < 1) {
-            return null;
-        }
+        Notation notation = new Notation();
+        notation.setJapanese(StringPool.NOTATION.intern(japanese));
+        notation.setEngineMove(StringPool.NOTATION.intern(engineMove));
 
-        return result;
+        return notation;
     }
 
     private String getBestLine(String line, List<String> lineList) {
@@ -0,0 +1,327 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.main.KifHandler;
+import com.chadfield.shogiexplorer.main.KifParser;
+import com.chadfield.shogiexplorer.main.SFENParser;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A game with its variations (変化). The main line is held as nodes from the
+ * start, but each variation is kept as the text it was read from until one of
+ * the nodes it branches from is asked for its children.
+ *
+ * Nodes are shared by position, so two lines that reach the same position at
+ * the same move number continue from the same node. Positions that repeat at
+ * different move numbers are not shared, which keeps the tree free of cycles.
+ * Since a shared node can be reached by different moves, the move is kept on
+ * the branch that leads to the node rather than on the node.
+ */
+public class GameTree {
+
+    private final Node root;
+    private final List<Node> mainLine = new ArrayList<>();
+    private final Map<Long, Node> nodes = new HashMap<>();
+    private int variationCount;
+
+    /**
+     * @param positionList the positions of the main line, starting with the
+     * start position
+     */
+    public GameTree(List<Position> positionList) {
+        Node previous = null;
+        for (Position position : positionList) {
+            Node node = new Node(position, mainLine.size());
+            if (previous != null) {
+                previous.branches.add(new Branch(position.getNotation(), position.getSource(), position.getDestination(), node));
+            }
+            nodes.putIfAbsent(position.getZobristKey(), node);
+            mainLine.add(node);
+            previous = node;
+        }
+        root = mainLine.isEmpty() ? null : mainLine.get(0);
+    }
+
+    /**
+     * Add a variation that has not been read yet.
+     *
+     * @param parent the line it branches from, or null for the main line
+     * @param moveNumber the number of its first move, which replaces the move
+     * of that number in the parent line
+     * @return the variation, to which its lines should be added
+     */
+    public Variation addVariation(Variation parent, int moveNumber) {
+        Variation variation = new Variation(moveNumber);
+        if (parent == null) {
+            if (moveNumber > 0 && moveNumber <= mainLine.size()) {
+                Node branch = mainLine.get(moveNumber - 1);
+                variation.lastDestination = branch.position.getDestination();
+                branch.addPending(variation);
+            }
+        } else {
+            parent.children.add(variation);
+        }
+        variationCount++;
+        return variation;
+    }
+
+    /**
+     * @return the start position
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the nodes of the main line, starting with the start position
+     */
+    public List<Node> getMainLine() {
+        return Collections.unmodifiableList(mainLine);
+    }
+
+    /**
+     * @return the number of variations, whether read yet or not
+     */
+    public int getVariationCount() {
+        return variationCount;
+    }
+
+    /**
+     * @return the number of distinct positions read so far
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    private void readVariation(Node branch, Variation variation) {
+        List<Node> line = new ArrayList<>();
+        // The branch may have been reached by another move, so 同 is taken
+        // from this line rather than from the node.
+        List<Square> lineDestinations = new ArrayList<>();
+        line.add(branch);
+        lineDestinations.add(variation.lastDestination);
+        Board board = SFENParser.parse(branch.position.getGameSFEN());
+        try {
+            KifParser.parseMoves(board, variation.lastDestination, variation.lines, new KifHandler() {
+                private Node current = branch;
+                // Comments are only added to nodes first reached by this line.
+                private boolean shared = true;
+
+                @Override
+                public void move(int moveNumber, Board board, Square source, Square destination, Notation notation) {
+                    Node next = getChild(current, board, source, destination, notation).node;
+                    shared = next.position.getNotation() != notation;
+                    current = next;
+                    line.add(current);
+                    lineDestinations.add(destination);
+                }
+
+                @Override
+                public void comment(String comment) {
+                    if (!shared) {
+                        current.position.setComment(current.position.getComment() + comment + "\n");
+                    }
+                }
+            });
+        } catch (RuntimeException ex) {
+            // Keep the moves read before the one that could not be played.
+            Logger.getLogger(GameTree.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        for (Variation child : variation.children) {
+            int index = child.moveNumber - variation.moveNumber;
+            if (index >= 0 && index < line.size()) {
+                child.lastDestination = lineDestinations.get(index);
+                line.get(index).addPending(child);
+            }
+        }
+    }
+
+    private Branch getChild(Node parent, Board board, Square source, Square destination, Notation notation) {
+        long key = board.getZobristKey();
+        int ply = parent.ply + 1;
+        for (Branch branch : parent.branches) {
+            if (branch.node.position.getZobristKey() == key) {
+                return branch;
+            }
+        }
+        Node node = nodes.get(key);
+        if (node == null || node.ply != ply) {
+            node = new Node(new Position(board, source, destination, notation), ply);
+            nodes.putIfAbsent(key, node);
+        }
+        Branch branch = new Branch(notation, source, destination, node);
+        parent.branches.add(branch);
+        return branch;
+    }
+
+    /**
+     * A move from a node and the node it leads to.
+     */
+    public class Branch {
+
+        private final Notation notation;
+        private final Square source;
+        private final Square destination;
+        private final Node node;
+
+        private Branch(Notation notation, Square source, Square destination, Node node) {
+            this.notation = notation;
+            this.source = source;
+            this.destination = destination;
+            this.node = node;
+        }
+
+        /**
+         * @return the notation of the move
+         */
+        public Notation getNotation() {
+            return notation;
+        }
+
+        /**
+         * @return the square moved from, or null for a drop
+         */
+        public Square getSource() {
+            return source;
+        }
+
+        /**
+         * @return the square moved to
+         */
+        public Square getDestination() {
+            return destination;
+        }
+
+        /**
+         * @return the node the move leads to
+         */
+        public Node getNode() {
+            return node;
+        }
+    }
+
+    /**
+     * A position in the tree and the moves that can follow it. The first
+     * branch is the continuation of the line the node was first reached by.
+     */
+    public class Node {
+
+        private final Position position;
+        private final int ply;
+        private final List<Branch> branches = new ArrayList<>(1);
+        private List<Variation> pending;
+
+        private Node(Position position, int ply) {
+            this.position = position;
+            this.ply = ply;
+        }
+
+        private void addPending(Variation variation) {
+            if (pending == null) {
+                pending = new ArrayList<>(1);
+            }
+            pending.add(variation);
+        }
+
+        /**
+         * @return the position, whose notation, source and destination are
+         * those of the line that first reached it; use the branch for the
+         * move that was played in a given line
+         */
+        public Position getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the number of moves played to reach the node
+         */
+        public int getPly() {
+            return ply;
+        }
+
+        /**
+         * @return true if there is more than one move from here, without
+         * reading any variations
+         */
+        public boolean hasVariations() {
+            return branches.size() + (pending == null ? 0 : pending.size()) > 1;
+        }
+
+        /**
+         * @return the moves that can follow this node, reading any variations
+         * that branch from here first
+         */
+        public List<Branch> getBranches() {
+            if (pending != null) {
+                List<Variation> toRead = pending;
+                pending = null;
+                for (Variation variation : toRead) {
+                    readVariation(this, variation);
+                }
+            }
+            return Collections.unmodifiableList(branches);
+        }
+    }
+
+    /**
+     * The unread text of a variation.
+     */
+    public static class Variation {
+
+        private final int moveNumber;
+        private int lastMoveNumber;
+        private Square lastDestination;
+        private final List<String> lines = new ArrayList<>();
+        private final List<Variation> children = new ArrayList<>(0);
+
+        private Variation(int moveNumber) {
+            this.moveNumber = moveNumber;
+            this.lastMoveNumber = moveNumber;
+        }
+
+        /**
+         * Add a line of the variation, and note its move number if it has
+         * one.
+         */
+        public void addLine(String line, int lineMoveNumber) {
+            lines.add(line);
+            lastMoveNumber = Math.max(lastMoveNumber, lineMoveNumber);
+        }
+
+        /**
+         * @return the number of its first move
+         */
+        public int getMoveNumber() {
+            return moveNumber;
+        }
+
+        /**
+         * @return the number of its last numbered line
+         */
+        public int getLastMoveNumber() {
+            return lastMoveNumber;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+/**
+ * Static helpers for the pieces in one side's hand, packed into an int.
+ *
+ * Each kind of piece has its own bit field, wide enough for every piece of
+ * that kind in the game: five bits for pawns, three bits each for lances,
+ * knights, silvers and golds, and two bits each for bishops and rooks.
+ */
+public class Hand {
+
+    public static final int EMPTY = 0;
+
+    private static final int KOMA_TYPES = Koma.Type.values().length;
+    private static final int[] SHIFT = {0, 5, 8, 11, 14, 17, 19};
+    private static final int[] MASK = {0x1F, 0x7, 0x7, 0x7, 0x7, 0x3, 0x3};
+    private static final int[] MAX_COUNT = {18, 4, 4, 4, 4, 2, 2};
+    private static final int[] KIND = new int[KOMA_TYPES];
+
+    static {
+        for (Koma.Type komaType : Koma.Type.values()) {
+            KIND[komaType.ordinal()] = getKind(komaType);
+        }
+    }
+
+    private Hand() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    private static int getKind(Koma.Type komaType) {
+        return switch (komaType) {
+            case SFU, GFU ->
+                0;
+            case SKY, GKY ->
+                1;
+            case SKE, GKE ->
+                2;
+            case SGI, GGI ->
+                3;
+            case SKI, GKI ->
+                4;
+            case SKA, GKA ->
+                5;
+            case SHI, GHI ->
+                6;
+            default ->
+                -1;
+        };
+    }
+
+    /**
+     * @return the number held, or 0 for a piece that cannot be held
+     */
+    public static int getCount(int hand, Koma.Type komaType) {
+        int kind = KIND[komaType.ordinal()];
+        if (kind < 0) {
+            return 0;
+        }
+        return (hand >>> SHIFT[kind]) & MASK[kind];
+    }
+
+    /**
+     * @param count the number to hold, limited to the number in the game
+     * @return the hand with the new count
+     * @throws IllegalArgumentException for a piece that cannot be held
+     */
+    public static int setCount(int hand, Koma.Type komaType, int count) {
+        int kind = KIND[komaType.ordinal()];
+        if (kind < 0) {
+            throw new IllegalArgumentException("Cannot hold " + komaType);
+        }
+        int newCount = Math.max(0, Math.min(count, MAX_COUNT[kind]));
+        return (hand & ~(MASK[kind] << SHIFT[kind])) | (newCount << SHIFT[kind]);
+    }
+
+    /**
+     * @return the number of pieces of the kind in the game, or 0 for a piece
+     * that cannot be held
+     */
+    public static int getMaxCount(Koma.Type komaType) {
+        int kind = KIND[komaType.ordinal()];
+        return kind < 0 ? 0 : MAX_COUNT[kind];
+    }
+}
@@ -24,12 +24,33 @@ public class Koma {
         GFU, GGI, GGY, GHI, GKA, GKE, GKI, GKY, GNG, GNK, GNY, GOU, GRY, GTO, GUM
     }
 
+    private static final Koma[] KOMA_INSTANCES = new Koma[Type.values().length];
+
+    static {
+        for (Type komaType : Type.values()) {
+            KOMA_INSTANCES[komaType.ordinal()] = new Koma(komaType);
+        }
+    }
+
     private final Type type;
 
-    public Koma(Type komaType) {
+    private Koma(Type komaType) {
         type = komaType;
     }
 
+    /**
+     * Koma are immutable, so there is one shared instance per type.
+     *
+     * @param komaType the type of koma
+     * @return the shared koma of that type, or null if komaType is null
+     */
+    public static Koma valueOf(Type komaType) {
+        if (komaType == null) {
+            return null;
+        }
+        return KOMA_INSTANCES[komaType.ordinal()];
+    }
+
     /**
      * @return the type
      */
@@ -0,0 +1,143 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.utils.ParserUtils;
+
+/**
+ * Static helpers for moves packed into an int.
+ *
+ * Bits 0-6 hold the destination square and bits 7-13 the source square, both
+ * in SFEN order. A drop uses a source value above 80 that names the kind of
+ * piece dropped. Bit 14 is set when the piece promotes.
+ */
+public class Move {
+
+    public static final int NONE = 0;
+
+    private static final int SQUARE_MASK = 0x7F;
+    private static final int FROM_SHIFT = 7;
+    private static final int PROMOTE = 1 << 14;
+
+    // Pieces that can be dropped, in drop order.
+    private static final Koma.Type[] DROP_TYPES = {
+        Koma.Type.SFU, Koma.Type.SKY, Koma.Type.SKE, Koma.Type.SGI, Koma.Type.SKI, Koma.Type.SKA, Koma.Type.SHI
+    };
+    private static final String DROP_LETTERS = "PLNSGBR";
+
+    private Move() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static int normal(int from, int to, boolean promote) {
+        return (from << FROM_SHIFT) | to | (promote ? PROMOTE : 0);
+    }
+
+    /**
+     * @param komaType the piece to drop, of either side
+     * @param to the destination square
+     * @return the move, or NONE if the piece cannot be dropped
+     */
+    public static int drop(Koma.Type komaType, int to) {
+        Koma.Type senteType = Bitboard.isSente(komaType) ? komaType : ParserUtils.getOtherSideType(komaType);
+        for (int kind = 0; kind < DROP_TYPES.length; kind++) {
+            if (DROP_TYPES[kind] == senteType) {
+                return ((Bitboard.SQUARES + kind) << FROM_SHIFT) | to;
+            }
+        }
+        return NONE;
+    }
+
+    public static int getTo(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    public static int getFrom(int move) {
+        return (move >>> FROM_SHIFT) & SQUARE_MASK;
+    }
+
+    public static boolean isDrop(int move) {
+        return getFrom(move) >= Bitboard.SQUARES;
+    }
+
+    public static boolean isPromote(int move) {
+        return (move & PROMOTE) != 0;
+    }
+
+    /**
+     * @return the piece dropped by the side to move
+     */
+    public static Koma.Type getDropType(int move, Board.Turn turn) {
+        Koma.Type senteType = DROP_TYPES[getFrom(move) - Bitboard.SQUARES];
+        if (turn == Board.Turn.SENTE) {
+            return senteType;
+        } else {
+            return ParserUtils.getOtherSideType(senteType);
+        }
+    }
+
+    /**
+     * @param usiMove a move such as 7g7f, 8h2b+ or P*5e
+     * @return the move, or NONE if the text is not a move on the board
+     */
+    public static int parseUSI(String usiMove) {
+        if (usiMove.length() < 4) {
+            return NONE;
+        }
+        int to = getUSIIndex(usiMove.charAt(2), usiMove.charAt(3));
+        if (to < 0) {
+            return NONE;
+        }
+        if (usiMove.charAt(1) == '*') {
+            int kind = DROP_LETTERS.indexOf(usiMove.charAt(0));
+            if (kind < 0) {
+                return NONE;
+            }
+            return ((Bitboard.SQUARES + kind) << FROM_SHIFT) | to;
+        }
+        int from = getUSIIndex(usiMove.charAt(0), usiMove.charAt(1));
+        if (from < 0) {
+            return NONE;
+        }
+        return normal(from, to, usiMove.length() > 4 && usiMove.charAt(4) == '+');
+    }
+
+    public static String toUSI(int move) {
+        StringBuilder result = new StringBuilder(5);
+        if (isDrop(move)) {
+            result.append(DROP_LETTERS.charAt(getFrom(move) - Bitboard.SQUARES)).append('*');
+        } else {
+            appendUSISquare(result, getFrom(move));
+        }
+        appendUSISquare(result, getTo(move));
+        if (isPromote(move)) {
+            result.append('+');
+        }
+        return result.toString();
+    }
+
+    private static int getUSIIndex(char file, char rank) {
+        int x = file - '0';
+        int y = rank - 'a' + 1;
+        return Bitboard.onBoard(x, y) ? Bitboard.getIndex(x, y) : -1;
+    }
+
+    private static void appendUSISquare(StringBuilder result, int index) {
+        result.append((char) ('0' + Bitboard.getX(index))).append((char) ('a' + Bitboard.getY(index) - 1));
+    }
+}
@@ -0,0 +1,267 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.objects.Board.Turn;
+import com.chadfield.shogiexplorer.utils.ParserUtils;
+
+/**
+ * Generates the legal moves of a position.
+ *
+ * Moves are written as packed ints (see {@link Move}) into an array supplied
+ * by the caller, so that generation does not allocate. Pseudo-legal moves are
+ * filtered by playing them on the board and checking that the mover's king
+ * is not left in check. Positions without a king, such as tsume problems,
+ * are allowed.
+ */
+public class MoveGenerator {
+
+    /**
+     * More than the greatest number of legal moves in any shogi position.
+     */
+    public static final int MAX_MOVES = 600;
+
+    private static final Koma.Type[] SENTE_DROP_TYPES = {
+        Koma.Type.SFU, Koma.Type.SKY, Koma.Type.SKE, Koma.Type.SGI, Koma.Type.SKI, Koma.Type.SKA, Koma.Type.SHI
+    };
+    private static final Koma.Type[] GOTE_DROP_TYPES = {
+        Koma.Type.GFU, Koma.Type.GKY, Koma.Type.GKE, Koma.Type.GGI, Koma.Type.GKI, Koma.Type.GKA, Koma.Type.GHI
+    };
+
+    private MoveGenerator() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @param moves the array to fill, at least {@link #MAX_MOVES} long
+     * @return the number of legal moves written
+     */
+    public static int generate(Board board, int[] moves) {
+        int count = generatePseudoLegal(board, moves);
+        int legalCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (isSafe(board, moves[i])) {
+                moves[legalCount++] = moves[i];
+            }
+        }
+        return legalCount;
+    }
+
+    /**
+     * Tries the pseudo-legal moves as they are found rather than filling an
+     * array, so it allocates nothing and can be re-entered by the pawn drop
+     * mate check in {@link #isSafe}.
+     *
+     * @return whether the side to move has any legal move
+     */
+    public static boolean hasLegalMove(Board board) {
+        Turn turn = board.getNextTurn();
+        long ownLo = board.getOccupiedLo(turn);
+        long ownHi = board.getOccupiedHi(turn);
+        long occupiedLo = board.getOccupiedLo();
+        long occupiedHi = board.getOccupiedHi();
+
+        long pieceLo = ownLo;
+        long pieceHi = ownHi;
+        while ((pieceLo | pieceHi) != 0) {
+            int from = Bitboard.first(pieceLo, pieceHi);
+            pieceLo &= ~Bitboard.lo(from);
+            pieceHi &= ~Bitboard.hi(from);
+            Koma.Type komaType = board.getKomaAt(from).getType();
+            long targetLo = Bitboard.attacksLo(komaType, from, occupiedLo, occupiedHi) & ~ownLo;
+            long targetHi = Bitboard.attacksHi(komaType, from, occupiedLo, occupiedHi) & ~ownHi;
+            while ((targetLo | targetHi) != 0) {
+                int to = Bitboard.first(targetLo, targetHi);
+                targetLo &= ~Bitboard.lo(to);
+                targetHi &= ~Bitboard.hi(to);
+                // The king's safety does not depend on whether the piece
+                // promotes, so trying one of the two moves is enough.
+                boolean promote = !canReach(komaType, to);
+                if (isSafe(board, Move.normal(from, to, promote))) {
+                    return true;
+                }
+            }
+        }
+
+        if (board.getHand(turn) == Hand.EMPTY) {
+            return false;
+        }
+        Koma.Type[] dropTypes = turn == Turn.SENTE ? SENTE_DROP_TYPES : GOTE_DROP_TYPES;
+        for (Koma.Type komaType : dropTypes) {
+            if (board.getInHandCount(komaType) == 0) {
+                continue;
+            }
+            for (int to = 0; to < Bitboard.SQUARES; to++) {
+                if (board.getKomaAt(to) == null && canReach(komaType, to)
+                        && !(isFu(komaType) && hasFuOnFile(board, komaType, to))
+                        && isSafe(board, Move.drop(komaType, to))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public static boolean isCheckmate(Board board) {
+        return board.isInCheck(board.getNextTurn()) && !hasLegalMove(board);
+    }
+
+    /**
+     * @return whether the side to move may play the move
+     */
+    public static boolean isLegal(Board board, int move) {
+        Turn turn = board.getNextTurn();
+        int to = Move.getTo(move);
+        Koma target = board.getKomaAt(to);
+        if (Move.isDrop(move)) {
+            Koma.Type komaType = Move.getDropType(move, turn);
+            if (target != null || board.getInHandCount(komaType) == 0
+                    || !canReach(komaType, to) || (isFu(komaType) && hasFuOnFile(board, komaType, to))) {
+                return false;
+            }
+        } else {
+            int from = Move.getFrom(move);
+            Koma koma = board.getKomaAt(from);
+            if (koma == null || getTurn(koma.getType()) != turn
+                    || (target != null && getTurn(target.getType()) == turn)) {
+                return false;
+            }
+            Koma.Type komaType = koma.getType();
+            long occupiedLo = board.getOccupiedLo();
+            long occupiedHi = board.getOccupiedHi();
+            if (!Bitboard.contains(Bitboard.attacksLo(komaType, from, occupiedLo, occupiedHi),
+                    Bitboard.attacksHi(komaType, from, occupiedLo, occupiedHi), to)) {
+                return false;
+            }
+            if (Move.isPromote(move) ? !canPromote(komaType, from, to) : !canReach(komaType, to)) {
+                return false;
+            }
+        }
+        return isSafe(board, move);
+    }
+
+    private static int generatePseudoLegal(Board board, int[] moves) {
+        Turn turn = board.getNextTurn();
+        long ownLo = board.getOccupiedLo(turn);
+        long ownHi = board.getOccupiedHi(turn);
+        long occupiedLo = board.getOccupiedLo();
+        long occupiedHi = board.getOccupiedHi();
+        int count = 0;
+
+        long pieceLo = ownLo;
+        long pieceHi = ownHi;
+        while ((pieceLo | pieceHi) != 0) {
+            int from = Bitboard.first(pieceLo, pieceHi);
+            pieceLo &= ~Bitboard.lo(from);
+            pieceHi &= ~Bitboard.hi(from);
+            Koma.Type komaType = board.getKomaAt(from).getType();
+            long targetLo = Bitboard.attacksLo(komaType, from, occupiedLo, occupiedHi) & ~ownLo;
+            long targetHi = Bitboard.attacksHi(komaType, from, occupiedLo, occupiedHi) & ~ownHi;
+            while ((targetLo | targetHi) != 0) {
+                int to = Bitboard.first(targetLo, targetHi);
+                targetLo &= ~Bitboard.lo(to);
+                targetHi &= ~Bitboard.hi(to);
+                if (canPromote(komaType, from, to)) {
+                    moves[count++] = Move.normal(from, to, true);
+                }
+                if (canReach(komaType, to)) {
+                    moves[count++] = Move.normal(from, to, false);
+                }
+            }
+        }
+
+        if (board.getHand(turn) == Hand.EMPTY) {
+            return count;
+        }
+        Koma.Type[] dropTypes = turn == Turn.SENTE ? SENTE_DROP_TYPES : GOTE_DROP_TYPES;
+        for (Koma.Type komaType : dropTypes) {
+            if (board.getInHandCount(komaType) == 0) {
+                continue;
+            }
+            for (int to = 0; to < Bitboard.SQUARES; to++) {
+                if (board.getKomaAt(to) == null && canReach(komaType, to)
+                        && !(isFu(komaType) && hasFuOnFile(board, komaType, to))) {
+                    moves[count++] = Move.drop(komaType, to);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return whether the move leaves the mover's king safe and, for a pawn
+     * drop, does not give mate
+     */
+    private static boolean isSafe(Board board, int move) {
+        Turn turn = board.getNextTurn();
+        board.makeMove(move);
+        boolean safe = !board.isInCheck(turn);
+        if (safe && Move.isDrop(move) && isFu(Move.getDropType(move, turn))) {
+            safe = !isCheckmate(board);
+        }
+        board.unmakeMove();
+        return safe;
+    }
+
+    private static boolean canPromote(Koma.Type komaType, int from, int to) {
+        return ParserUtils.promoteKoma(komaType) != null
+                && (isInZone(komaType, from) || isInZone(komaType, to));
+    }
+
+    private static boolean isInZone(Koma.Type komaType, int index) {
+        int y = Bitboard.getY(index);
+        return Bitboard.isSente(komaType) ? y <= 3 : y >= 7;
+    }
+
+    /**
+     * @return whether the piece may stand on the square without promoting
+     */
+    private static boolean canReach(Koma.Type komaType, int index) {
+        int y = Bitboard.getY(index);
+        return switch (komaType) {
+            case SFU, SKY ->
+                y > 1;
+            case SKE ->
+                y > 2;
+            case GFU, GKY ->
+                y < 9;
+            case GKE ->
+                y < 8;
+            default ->
+                true;
+        };
+    }
+
+    private static boolean isFu(Koma.Type komaType) {
+        return komaType == Koma.Type.SFU || komaType == Koma.Type.GFU;
+    }
+
+    private static boolean hasFuOnFile(Board board, Koma.Type fuType, int index) {
+        for (int fileIndex = index % 9; fileIndex < Bitboard.SQUARES; fileIndex += 9) {
+            Koma koma = board.getKomaAt(fileIndex);
+            if (koma != null && koma.getType() == fuType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Turn getTurn(Koma.Type komaType) {
+        return Bitboard.isSente(komaType) ? Turn.SENTE : Turn.GOTE;
+    }
+}
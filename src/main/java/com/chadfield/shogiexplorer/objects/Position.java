@@ -17,15 +17,26 @@
 
 package com.chadfield.shogiexplorer.objects;
 
+import com.chadfield.shogiexplorer.main.PositionCodec;
+import com.chadfield.shogiexplorer.main.SFENParser;
+import com.chadfield.shogiexplorer.utils.StringPool;
+
 public class Position {
 
+    private static final ThreadLocal<Board> DECODE_BOARD = ThreadLocal.withInitial(Board::new);
+
     private String gameSFEN;
     private Notation notation;
-    private Coordinate source;
-    private Coordinate destination;
+    private Square source;
+    private Square destination;
     private String comment;
+    // Not saved with the analysis; zero until it is known.
+    private transient long zobristKey;
+    // The packed board, kept until the SFEN is first wanted and then dropped.
+    private transient byte[] packedBoard;
+    private transient int moveCount;
 
-    public Position(String gameSFEN, Coordinate source, Coordinate destination, Notation notation) {
+    public Position(String gameSFEN, Square source, Square destination, Notation notation) {
         this.gameSFEN = gameSFEN;
         this.notation = notation;
         this.source = source;
@@ -33,10 +44,31 @@ public class Position {
         this.comment = "";
     }
 
+    /**
+     * Record the state of a board. The SFEN is only produced when it is first
+     * asked for, unless the board cannot be packed.
+     */
+    public Position(Board board, Square source, Square destination, Notation notation) {
+        this((String) null, source, destination, notation);
+        this.zobristKey = board.getZobristKey();
+        if (PositionCodec.canEncode(board)) {
+            this.packedBoard = PositionCodec.encode(board);
+            this.moveCount = board.getMoveCount();
+        } else {
+            this.gameSFEN = StringPool.SFEN.intern(SFENParser.getSFEN(board));
+        }
+    }
+
     /**
      * @return the gameSFEN
      */
     public String getGameSFEN() {
+        if (gameSFEN == null && packedBoard != null) {
+            Board board = PositionCodec.decode(packedBoard, 0, DECODE_BOARD.get());
+            board.setMoveCount(moveCount);
+            gameSFEN = StringPool.SFEN.intern(SFENParser.getSFEN(board));
+            packedBoard = null;
+        }
         return gameSFEN;
     }
 
@@ -45,33 +77,51 @@ public class Position {
      */
     public void setGameSFEN(String gameSFEN) {
         this.gameSFEN = gameSFEN;
+        this.zobristKey = 0;
+        this.packedBoard = null;
+    }
+
+    /**
+     * @return the Zobrist key, worked out from the SFEN if it is not yet known
+     */
+    public long getZobristKey() {
+        if (zobristKey == 0 && getGameSFEN() != null) {
+            zobristKey = SFENParser.parse(getGameSFEN()).getZobristKey();
+        }
+        return zobristKey;
+    }
+
+    private Object writeReplace() {
+        // Saved analysis files hold the SFEN, so make sure it exists.
+        getGameSFEN();
+        return this;
     }
 
     /**
      * @return the source
      */
-    public Coordinate getSource() {
+    public Square getSource() {
         return source;
     }
 
     /**
      * @param source the source to set
      */
-    public void setSource(Coordinate source) {
+    public void setSource(Square source) {
         this.source = source;
     }
 
     /**
      * @return the destination
      */
-    public Coordinate getDestination() {
+    public Square getDestination() {
         return destination;
     }
 
     /**
      * @param destination the destination to set
      */
-    public void setDestination(Coordinate destination) {
+    public void setDestination(Square destination) {
         this.destination = destination;
     }
 
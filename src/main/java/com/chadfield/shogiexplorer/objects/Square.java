@@ -0,0 +1,82 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+/**
+ * One of the 81 squares of the board.
+ *
+ * Squares are immutable and shared, so they can be compared with == or
+ * {@link #sameValue(Square)}. The index follows SFEN order, see {@link Bitboard}.
+ */
+public class Square {
+
+    private static final Square[] SQUARES = new Square[Bitboard.SQUARES];
+
+    static {
+        for (int index = 0; index < Bitboard.SQUARES; index++) {
+            SQUARES[index] = new Square(index);
+        }
+    }
+
+    private final int index;
+
+    private Square(int index) {
+        this.index = index;
+    }
+
+    public static Square valueOf(int index) {
+        return SQUARES[index];
+    }
+
+    /**
+     * @param x the file, 1 to 9
+     * @param y the rank, 1 to 9
+     * @return the square, or null if the coordinates are off the board
+     */
+    public static Square valueOf(int x, int y) {
+        if (!Bitboard.onBoard(x, y)) {
+            return null;
+        }
+        return SQUARES[Bitboard.getIndex(x, y)];
+    }
+
+    /**
+     * @return the index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the file, 1 to 9
+     */
+    public int getX() {
+        return Bitboard.getX(index);
+    }
+
+    /**
+     * @return the rank, 1 to 9
+     */
+    public int getY() {
+        return Bitboard.getY(index);
+    }
+
+    public boolean sameValue(Square otherSquare) {
+        return otherSquare != null && index == otherSquare.index;
+    }
+}
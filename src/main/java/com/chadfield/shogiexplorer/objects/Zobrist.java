@@ -0,0 +1,72 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing of positions.
+ *
+ * The keys come from a fixed seed, so a position hashes to the same value in
+ * every run and the hashes can be stored alongside saved games.
+ */
+public class Zobrist {
+
+    private static final long SEED = 0x5347_4558_504CL;
+    private static final int MAX_IN_HAND = 18;
+    private static final int KOMA_TYPES = Koma.Type.values().length;
+
+    private static final long[][] KOMA_KEYS = new long[KOMA_TYPES][Bitboard.SQUARES];
+    private static final long[][] IN_HAND_KEYS = new long[KOMA_TYPES][MAX_IN_HAND + 1];
+    private static final long GOTE_KEY;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int komaType = 0; komaType < KOMA_TYPES; komaType++) {
+            for (int index = 0; index < Bitboard.SQUARES; index++) {
+                KOMA_KEYS[komaType][index] = random.nextLong();
+            }
+            // Holding none of a piece leaves the key unchanged.
+            for (int count = 1; count <= MAX_IN_HAND; count++) {
+                IN_HAND_KEYS[komaType][count] = random.nextLong();
+            }
+        }
+        GOTE_KEY = random.nextLong();
+        // The editor's SOU and GGY kings share the keys of the SGY and GOU
+        // kings that SFEN produces, so a position has one key however it was
+        // set up.
+        KOMA_KEYS[Koma.Type.SOU.ordinal()] = KOMA_KEYS[Koma.Type.SGY.ordinal()];
+        KOMA_KEYS[Koma.Type.GGY.ordinal()] = KOMA_KEYS[Koma.Type.GOU.ordinal()];
+    }
+
+    private Zobrist() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static long komaKey(Koma.Type komaType, int index) {
+        return KOMA_KEYS[komaType.ordinal()][index];
+    }
+
+    public static long inHandKey(Koma.Type komaType, int count) {
+        return IN_HAND_KEYS[komaType.ordinal()][Math.min(count, MAX_IN_HAND)];
+    }
+
+    public static long turnKey(Board.Turn turn) {
+        return turn == Board.Turn.GOTE ? GOTE_KEY : 0;
+    }
+}
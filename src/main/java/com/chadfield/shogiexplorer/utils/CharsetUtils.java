@@ -0,0 +1,132 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Works out whether KIF text is UTF-8 or Shift-JIS from its first bytes, so
+ * that it can be decoded in one pass without asking the user.
+ */
+public class CharsetUtils {
+
+    /**
+     * Windows-31J, the Microsoft form of Shift-JIS. It decodes everything
+     * Shift-JIS does, plus the NEC and IBM extensions found in Windows files.
+     */
+    public static final Charset SHIFT_JIS = Charset.forName("windows-31j");
+
+    private static final int SAMPLE_SIZE = 8192;
+
+    private CharsetUtils() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @param fallback the charset to use when the sample is plain ASCII
+     * @return the charset of the sample
+     */
+    public static Charset detect(byte[] sample, int length, Charset fallback) {
+        if (hasBOM(sample, length)) {
+            return StandardCharsets.UTF_8;
+        }
+        boolean ascii = true;
+        int i = 0;
+        while (i < length) {
+            int thisByte = sample[i] & 0xFF;
+            if (thisByte < 0x80) {
+                i++;
+                continue;
+            }
+            ascii = false;
+            int extra;
+            if (thisByte >= 0xC2 && thisByte <= 0xDF) {
+                extra = 1;
+            } else if (thisByte >= 0xE0 && thisByte <= 0xEF) {
+                extra = 2;
+            } else if (thisByte >= 0xF0 && thisByte <= 0xF4) {
+                extra = 3;
+            } else {
+                return SHIFT_JIS;
+            }
+            for (int j = 1; j <= extra; j++) {
+                if (i + j >= length) {
+                    // The sample ends part way through a character.
+                    return StandardCharsets.UTF_8;
+                }
+                if ((sample[i + j] & 0xC0) != 0x80) {
+                    return SHIFT_JIS;
+                }
+            }
+            i += extra + 1;
+        }
+        return ascii ? fallback : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Open a reader on a stream in the charset detected from its first bytes.
+     * A UTF-8 byte order mark is skipped. Bytes that are not valid in the
+     * detected charset make the reader throw MalformedInputException.
+     *
+     * @param fallback the charset to use when the first bytes are plain ASCII
+     */
+    public static BufferedReader newReader(InputStream inputStream, Charset fallback) throws IOException {
+        BufferedInputStream bufferedStream = new BufferedInputStream(inputStream, SAMPLE_SIZE);
+        bufferedStream.mark(SAMPLE_SIZE);
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int length = 0;
+        int count;
+        while (length < SAMPLE_SIZE && (count = bufferedStream.read(sample, length, SAMPLE_SIZE - length)) != -1) {
+            length += count;
+        }
+        bufferedStream.reset();
+        Charset charset = detect(sample, length, fallback);
+        if (hasBOM(sample, length)) {
+            bufferedStream.skip(3);
+        }
+        return new BufferedReader(new InputStreamReader(bufferedStream, charset.newDecoder()));
+    }
+
+    /**
+     * Read the whole of a stream as text in the charset detected from its
+     * first bytes.
+     *
+     * @param fallback the charset to use when the first bytes are plain ASCII
+     */
+    public static String readString(InputStream inputStream, Charset fallback) throws IOException {
+        StringBuilder result = new StringBuilder();
+        try (BufferedReader reader = newReader(inputStream, fallback)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.append(line);
+                result.append("\n");
+            }
+        }
+        return result.toString();
+    }
+
+    private static boolean hasBOM(byte[] sample, int length) {
+        return length >= 3 && (sample[0] & 0xFF) == 0xEF && (sample[1] & 0xFF) == 0xBB && (sample[2] & 0xFF) == 0xBF;
+    }
+}
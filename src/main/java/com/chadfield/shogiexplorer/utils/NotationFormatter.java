@@ -0,0 +1,112 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.utils;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Board.Turn;
+import com.chadfield.shogiexplorer.objects.Square;
+
+/**
+ * Builds the full-width move labels shown in the move list and analysis
+ * table, such as 12　☗７六歩, from tables rather than a transliterator.
+ */
+public class NotationFormatter {
+
+    public static final String SENTE_MARK = "☗";
+    public static final String GOTE_MARK = "☖";
+
+    private static final char FULL_WIDTH_SPACE = '　';
+    // Printable ASCII maps to the full-width forms block at a fixed offset.
+    private static final int FULL_WIDTH_OFFSET = 0xFF01 - '!';
+
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(32));
+
+    private NotationFormatter() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Append text with its ASCII characters and spaces made full width. Other
+     * characters are appended unchanged.
+     */
+    public static void appendFullWidth(StringBuilder result, CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char thisChar = text.charAt(i);
+            if (thisChar == ' ') {
+                result.append(FULL_WIDTH_SPACE);
+            } else if (thisChar > ' ' && thisChar < 0x7F) {
+                result.append((char) (thisChar + FULL_WIDTH_OFFSET));
+            } else {
+                result.append(thisChar);
+            }
+        }
+    }
+
+    public static String toFullWidth(CharSequence text) {
+        StringBuilder result = getBuilder();
+        appendFullWidth(result, text);
+        return result.toString();
+    }
+
+    /**
+     * @param turn the side that played the move
+     * @return the move list label, such as 12　☗７六歩
+     */
+    public static String getMoveListLabel(int moveNumber, Turn turn, String japanese) {
+        StringBuilder result = getBuilder();
+        result.append(moveNumber).append(FULL_WIDTH_SPACE);
+        appendMark(result, turn);
+        appendFullWidth(result, japanese);
+        return result.toString();
+    }
+
+    /**
+     * @param turn the side that played the move
+     * @return the label for the analysis table, such as 　☗７六歩
+     */
+    public static String getAnalysisLabel(Turn turn, String japanese) {
+        StringBuilder result = getBuilder();
+        result.append(FULL_WIDTH_SPACE);
+        appendMark(result, turn);
+        appendFullWidth(result, japanese);
+        return result.toString();
+    }
+
+    /**
+     * The full-width notation for a move that is about to be played on the
+     * board, such as ☗７六歩.
+     *
+     * @param lastDestination the destination of the previous move, or null
+     */
+    public static String getJapaneseMove(Board board, int move, Square lastDestination) {
+        StringBuilder result = getBuilder();
+        appendMark(result, board.getNextTurn());
+        NotationUtils.appendJapaneseMove(result, board, move, lastDestination, true);
+        return result.toString();
+    }
+
+    private static void appendMark(StringBuilder result, Turn turn) {
+        result.append(turn == Turn.SENTE ? SENTE_MARK : GOTE_MARK);
+    }
+
+    private static StringBuilder getBuilder() {
+        StringBuilder result = BUILDER.get();
+        result.setLength(0);
+        return result;
+    }
+}
@@ -17,13 +17,11 @@
 
 package com.chadfield.shogiexplorer.utils;
 
-import com.chadfield.shogiexplorer.main.KifParser;
+import com.chadfield.shogiexplorer.objects.Bitboard;
 import com.chadfield.shogiexplorer.objects.Board;
-import com.chadfield.shogiexplorer.objects.Coordinate;
+import com.chadfield.shogiexplorer.objects.Square;
 import com.chadfield.shogiexplorer.objects.Koma;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import com.chadfield.shogiexplorer.objects.Move;
 
 public class NotationUtils {
 
@@ -51,40 +49,31 @@ public class NotationUtils {
     public static final String KYUU = "九";
     public static final String SAME = "同";
 
-    private static boolean onBoard(Coordinate coordinate) {
-        return coordinate.getX() > 0 && coordinate.getX() < 10 && coordinate.getY() > 0 && coordinate.getY() < 10;
-    }
+    private static final String[] FULL_WIDTH_COORDINATES = new String[Bitboard.SQUARES];
 
-    private static Coordinate getSourceOnVector(Board board, Coordinate destination, int deltaX, int deltaY, Koma.Type komaType) {
-        Coordinate testCoordinate = new Coordinate(destination.getX() + deltaX, destination.getY() + deltaY);
-        while (true) {
-            if (!onBoard(testCoordinate)) {
-                return null;
-            }
-            Koma koma = board.getMasu()[9 - testCoordinate.getX()][testCoordinate.getY() - 1];
-            if (koma != null) {
-                if (koma.getType() == komaType) {
-                    return testCoordinate;
-                } else {
-                    return null;
-                }
-            }
-            testCoordinate.setX(testCoordinate.getX() + deltaX);
-            testCoordinate.setY(testCoordinate.getY() + deltaY);
+    static {
+        for (int index = 0; index < Bitboard.SQUARES; index++) {
+            Square square = Square.valueOf(index);
+            FULL_WIDTH_COORDINATES[index] = (char) ('０' + square.getX()) + convertJapaneseNumber(square.getY());
         }
     }
 
-    private static int numWithSameY(Coordinate coordinate, List<Coordinate> coordinateList) {
+    private static int numWithSameY(Square coordinate, long sourceLo, long sourceHi) {
         int count = 0;
-        for (Coordinate thisCoordinate : coordinateList) {
-            if (haveSameY(coordinate, thisCoordinate)) {
+        long remainingLo = sourceLo;
+        long remainingHi = sourceHi;
+        while ((remainingLo | remainingHi) != 0) {
+            int index = Bitboard.first(remainingLo, remainingHi);
+            remainingLo &= ~Bitboard.lo(index);
+            remainingHi &= ~Bitboard.hi(index);
+            if (haveSameY(coordinate, Square.valueOf(index))) {
                 count++;
             }
         }
         return count;
     }
 
-    static boolean onRight(Coordinate firstCoordinate, Coordinate secondCoordinate, boolean isSente) {
+    static boolean onRight(Square firstCoordinate, Square secondCoordinate, boolean isSente) {
         if (isSente) {
             return firstCoordinate.getX() < secondCoordinate.getX();
         } else {
@@ -92,7 +81,7 @@ public class NotationUtils {
         }
     }
 
-    static boolean isAbove(Coordinate firstCoordinate, Coordinate secondCoordinate, boolean isSente) {
+    static boolean isAbove(Square firstCoordinate, Square secondCoordinate, boolean isSente) {
         if (isSente) {
             return firstCoordinate.getY() < secondCoordinate.getY();
         } else {
@@ -100,10 +89,11 @@ public class NotationUtils {
         }
     }
 
-    private static String disXHI(Board board, Coordinate sourceCoordinate, Coordinate destinationCoordinate, Koma.Type komaType) {
+    private static String disXHI(Board board, Square sourceCoordinate, Square destinationCoordinate, Koma.Type komaType) {
         boolean isSente = komaType == Koma.Type.SHI;
-        List<Coordinate> sourceList = getPossibleSources(board, destinationCoordinate, komaType);
-        if (sourceList.size() > 1) {
+        long sourceLo = board.getAttackersLo(komaType, destinationCoordinate.getIndex());
+        long sourceHi = board.getAttackersHi(komaType, destinationCoordinate.getIndex());
+        if (Bitboard.count(sourceLo, sourceHi) > 1) {
             // There is ambiguity.
             if (isAbove(sourceCoordinate, destinationCoordinate, isSente)) {
                 // The source is above the destination.
@@ -112,7 +102,7 @@ public class NotationUtils {
                 // The source is below the destination.
                 return UPWARD;
             } else {
-                if (numWithSameY(sourceCoordinate, sourceList) > 1) {
+                if (numWithSameY(sourceCoordinate, sourceLo, sourceHi) > 1) {
                     if (onLeft(sourceCoordinate, destinationCoordinate, isSente)) {
                         // The source is left of the destination.
                         return FROM_LEFT;
@@ -127,26 +117,27 @@ public class NotationUtils {
         return "";
     }
 
-    private static String disXGI(Board board, Coordinate sourceCoordinate, Coordinate destinationCoordinate, Koma.Type komaType) {
+    private static String disXGI(Board board, Square sourceCoordinate, Square destinationCoordinate, Koma.Type komaType) {
         boolean isSente = komaType == Koma.Type.SGI;
-        List<Coordinate> sourceList = getPossibleSources(board, destinationCoordinate, komaType);
-        if (sourceList.size() > 1) {
+        long sourceLo = board.getAttackersLo(komaType, destinationCoordinate.getIndex());
+        long sourceHi = board.getAttackersHi(komaType, destinationCoordinate.getIndex());
+        if (Bitboard.count(sourceLo, sourceHi) > 1) {
             // There is ambiguity.
             if (isAbove(sourceCoordinate, destinationCoordinate, isSente)) {
                 // The source is one of two locations above the destination.
-                if (numWithSameY(sourceCoordinate, sourceList) == 1) {
+                if (numWithSameY(sourceCoordinate, sourceLo, sourceHi) == 1) {
                     // Simple down case.
                     return DOWNWARD;
                 } else if (onLeft(sourceCoordinate, destinationCoordinate, isSente)) {
                     // Above-left.
-                    if (numWithSameX(sourceCoordinate, sourceList) == 1) {
+                    if (numWithSameX(sourceCoordinate, sourceLo, sourceHi) == 1) {
                         return FROM_LEFT;
                     } else {
                         return FROM_LEFT + DOWNWARD;
                     }
                 } else {
                     // Above-right.
-                    if (numWithSameX(sourceCoordinate, sourceList) == 1) {
+                    if (numWithSameX(sourceCoordinate, sourceLo, sourceHi) == 1) {
                         return FROM_RIGHT;
                     } else {
                         return FROM_RIGHT + DOWNWARD;
@@ -154,35 +145,36 @@ public class NotationUtils {
                 }
             } else {
                 // The source is one of three locations below the destination.
-                return bottomThree(sourceCoordinate, destinationCoordinate, sourceList, isSente);
+                return bottomThree(sourceCoordinate, destinationCoordinate, sourceLo, sourceHi, isSente);
             }
         }
         return "";
     }
 
-    private static String disXKXI(Board board, Coordinate sourceCoordinate, Coordinate destinationCoordinate, Koma.Type komaType) {
+    private static String disXKXI(Board board, Square sourceCoordinate, Square destinationCoordinate, Koma.Type komaType) {
         boolean isSente = komaType == Koma.Type.SKI || komaType == Koma.Type.STO || komaType == Koma.Type.SNK || komaType == Koma.Type.SNY || komaType == Koma.Type.SNG;
-        List<Coordinate> sourceList = getPossibleSources(board, destinationCoordinate, komaType);
-        if (sourceList.size() > 1) {
+        long sourceLo = board.getAttackersLo(komaType, destinationCoordinate.getIndex());
+        long sourceHi = board.getAttackersHi(komaType, destinationCoordinate.getIndex());
+        if (Bitboard.count(sourceLo, sourceHi) > 1) {
             // There is ambiguity.
             if (isAbove(sourceCoordinate, destinationCoordinate, isSente)) {
                 // The source is in the single location above the destination.
                 return DOWNWARD;
-            } else if (Objects.equals(sourceCoordinate.getY(), destinationCoordinate.getY())) {
+            } else if (sourceCoordinate.getY() == destinationCoordinate.getY()) {
                 // The source is next to the destination.
-                if (numWithSameY(sourceCoordinate, sourceList) == 1) {
+                if (numWithSameY(sourceCoordinate, sourceLo, sourceHi) == 1) {
                     // Simple horizontal case.
                     return HORIZONTALLY;
                 } else if (onLeft(sourceCoordinate, destinationCoordinate, isSente)) {
                     // Above-left.
-                    if (numWithSameX(sourceCoordinate, sourceList) == 1) {
+                    if (numWithSameX(sourceCoordinate, sourceLo, sourceHi) == 1) {
                         return FROM_LEFT;
                     } else {
                         return FROM_LEFT + HORIZONTALLY;
                     }
                 } else {
                     // Above-right.
-                    if (numWithSameX(sourceCoordinate, sourceList) == 1) {
+                    if (numWithSameX(sourceCoordinate, sourceLo, sourceHi) == 1) {
                         return FROM_RIGHT;
                     } else {
                         return FROM_RIGHT + HORIZONTALLY;
@@ -190,20 +182,21 @@ public class NotationUtils {
                 }
             } else {
                 // The source is one of three locations below the destination.
-                return bottomThree(sourceCoordinate, destinationCoordinate, sourceList, isSente);
+                return bottomThree(sourceCoordinate, destinationCoordinate, sourceLo, sourceHi, isSente);
             }
         }
         return "";
     }
 
-    private static boolean haveSameX(Coordinate first, Coordinate second) {
-        return Objects.equals(first.getX(), second.getX());
+    private static boolean haveSameX(Square first, Square second) {
+        return first.getX() == second.getX();
     }
 
-    private static String disXKE(Board board, Coordinate sourceCoordinate, Coordinate destinationCoordinate, Koma.Type komaType) {
+    private static String disXKE(Board board, Square sourceCoordinate, Square destinationCoordinate, Koma.Type komaType) {
         boolean isSente = komaType == Koma.Type.SKE;
-        List<Coordinate> sourceList = getPossibleSources(board, destinationCoordinate, komaType);
-        if (sourceList.size() > 1) {
+        long sourceLo = board.getAttackersLo(komaType, destinationCoordinate.getIndex());
+        long sourceHi = board.getAttackersHi(komaType, destinationCoordinate.getIndex());
+        if (Bitboard.count(sourceLo, sourceHi) > 1) {
             if (onLeft(sourceCoordinate, destinationCoordinate, isSente)) {
                 return FROM_LEFT;
             } else {
@@ -213,7 +206,7 @@ public class NotationUtils {
         return "";
     }
 
-    static boolean isBelow(Coordinate firstCoordinate, Coordinate secondCoordinate, boolean isSente) {
+    static boolean isBelow(Square firstCoordinate, Square secondCoordinate, boolean isSente) {
         if (isSente) {
             return firstCoordinate.getY() > secondCoordinate.getY();
         } else {
@@ -221,12 +214,13 @@ public class NotationUtils {
         }
     }
 
-    private static String disXUMRY(Board board, Coordinate sourceCoordinate, Coordinate destinationCoordinate, Koma.Type komaType) {
+    private static String disXUMRY(Board board, Square sourceCoordinate, Square destinationCoordinate, Koma.Type komaType) {
         boolean isSente = komaType == Koma.Type.SUM || komaType == Koma.Type.SRY;
-        List<Coordinate> sourceList = getPossibleSources(board, destinationCoordinate, komaType);
-        if (sourceList.size() > 1) {
+        long sourceLo = board.getAttackersLo(komaType, destinationCoordinate.getIndex());
+        long sourceHi = board.getAttackersHi(komaType, destinationCoordinate.getIndex());
+        if (Bitboard.count(sourceLo, sourceHi) > 1) {
             // There is ambiguity.
-            Coordinate otherCoordinate = getOtherCoordinate(sourceCoordinate, sourceList);
+            Square otherCoordinate = getOtherCoordinate(sourceCoordinate, sourceLo, sourceHi);
             if (isBelow(sourceCoordinate, destinationCoordinate, isSente)) {
                 // The source is below the destination.
                 if (isBelow(otherCoordinate, destinationCoordinate, isSente)) {
@@ -257,7 +251,7 @@ public class NotationUtils {
                 }
             } else {
                 // The source is level with the destination.
-                if (numWithSameY(sourceCoordinate, sourceList) > 1) {
+                if (numWithSameY(sourceCoordinate, sourceLo, sourceHi) > 1) {
                     // Both possible pieces are level with the destination.
                     if (onLeft(sourceCoordinate, otherCoordinate, isSente)) {
                         // The source is to left of the other.
@@ -274,20 +268,18 @@ public class NotationUtils {
         return "";
     }
 
-    private static Coordinate getOtherCoordinate(Coordinate sourceCoordinate, List<Coordinate> sourceList) {
-        if (!sourceCoordinate.sameValue(sourceList.get(0))) {
-            return sourceList.get(0);
-        } else {
-            return sourceList.get(1);
-        }
+    private static Square getOtherCoordinate(Square sourceCoordinate, long sourceLo, long sourceHi) {
+        int sourceIndex = sourceCoordinate.getIndex();
+        return Square.valueOf(Bitboard.first(sourceLo & ~Bitboard.lo(sourceIndex), sourceHi & ~Bitboard.hi(sourceIndex)));
     }
 
-    private static String disXKA(Board board, Coordinate sourceCoordinate, Coordinate destinationCoordinate, Koma.Type komaType) {
+    private static String disXKA(Board board, Square sourceCoordinate, Square destinationCoordinate, Koma.Type komaType) {
         boolean isSente = komaType == Koma.Type.SKA;
-        List<Coordinate> sourceList = getPossibleSources(board, destinationCoordinate, komaType);
-        if (sourceList.size() > 1) {
+        long sourceLo = board.getAttackersLo(komaType, destinationCoordinate.getIndex());
+        long sourceHi = board.getAttackersHi(komaType, destinationCoordinate.getIndex());
+        if (Bitboard.count(sourceLo, sourceHi) > 1) {
             // There is ambiguity.
-            Coordinate otherCoordinate = getOtherCoordinate(sourceCoordinate, sourceList);
+            Square otherCoordinate = getOtherCoordinate(sourceCoordinate, sourceLo, sourceHi);
             if (isBelow(sourceCoordinate, destinationCoordinate, isSente)) {
                 // The source is below the destination.
                 if (isBelow(otherCoordinate, destinationCoordinate, isSente)) {
@@ -317,29 +309,7 @@ public class NotationUtils {
         return "";
     }
 
-    private static List<Coordinate> getSourcesOnDiagonalVectors(Board board, Coordinate destination, Koma.Type komaType) {
-        List<Coordinate> result = new ArrayList<>();
-        Coordinate resultCoordinate;
-        resultCoordinate = getSourceOnVector(board, destination, -1, -1, komaType);
-        if (resultCoordinate != null) {
-            result.add(resultCoordinate);
-        }
-        resultCoordinate = getSourceOnVector(board, destination, 1, -1, komaType);
-        if (resultCoordinate != null) {
-            result.add(resultCoordinate);
-        }
-        resultCoordinate = getSourceOnVector(board, destination, -1, 1, komaType);
-        if (resultCoordinate != null) {
-            result.add(resultCoordinate);
-        }
-        resultCoordinate = getSourceOnVector(board, destination, 1, 1, komaType);
-        if (resultCoordinate != null) {
-            result.add(resultCoordinate);
-        }
-        return result;
-    }
-
-    public static String getDisambiguation(Board board, Coordinate sourceCoordinate, Coordinate destinationCoordinate, Koma.Type komaType) {
+    public static String getDisambiguation(Board board, Square sourceCoordinate, Square destinationCoordinate, Koma.Type komaType) {
         return switch (komaType) {
             case SKE, GKE ->
                 disXKE(board, sourceCoordinate, destinationCoordinate, komaType);
@@ -358,102 +328,26 @@ public class NotationUtils {
         };
     }
 
-    public static List<Coordinate> getPossibleSources(Board board, Coordinate destination, Koma.Type komaType) {
-        List<Coordinate> result = new ArrayList<>();
-        Coordinate resultCoordinate;
-        return switch (komaType) {
-            case SKE ->
-                getSourcesForKoma(board, destination, new int[]{1, -1}, new int[]{2, 2}, komaType);
-            case GKE ->
-                getSourcesForKoma(board, destination, new int[]{1, -1}, new int[]{-2, -2}, komaType);
-            case SGI ->
-                getSourcesForKoma(board, destination, new int[]{1, 0, -1, 1, -1}, new int[]{1, 1, 1, -1, -1}, komaType);
-            case GGI ->
-                getSourcesForKoma(board, destination, new int[]{1, 0, -1, 1, -1}, new int[]{-1, -1, -1, 1, 1}, komaType);
-            case SKI, STO, SNK, SNY, SNG ->
-                getSourcesForKoma(board, destination, new int[]{1, 0, -1, 1, -1, 0}, new int[]{1, 1, 1, 0, 0, -1}, komaType);
-            case GKI, GTO, GNK, GNY, GNG ->
-                getSourcesForKoma(board, destination, new int[]{1, 0, -1, 1, -1, 0}, new int[]{-1, -1, -1, 0, 0, 1}, komaType);
-            case SKY -> {
-                resultCoordinate = getSourceOnVector(board, destination, 0, 1, komaType);
-                if (resultCoordinate != null) {
-                    result.add(resultCoordinate);
-                }
-                yield result;
-            }
-            case GKY -> {
-                resultCoordinate = getSourceOnVector(board, destination, 0, -1, komaType);
-                if (resultCoordinate != null) {
-                    result.add(resultCoordinate);
-                }
-                yield result;
-            }
-            case SKA, GKA ->
-                getSourcesOnDiagonalVectors(board, destination, komaType);
-            case SHI, GHI ->
-                getSourcesOnHorizontalVectors(board, destination, komaType);
-            case SUM, GUM -> {
-                result = getSourcesForKoma(board, destination, new int[]{-1, 1, 0, 0}, new int[]{0, 0, -1, 1}, komaType);
-                for (Coordinate thisCoordinate : getSourcesOnDiagonalVectors(board, destination, komaType)) {
-                    result.add(thisCoordinate);
-                }
-                yield result;
-            }
-            case SRY, GRY -> {
-                result = getSourcesForKoma(board, destination, new int[]{-1, 1, 1, -1}, new int[]{-1, -1, 1, 1}, komaType);
-                for (Coordinate thisCoordinate : getSourcesOnHorizontalVectors(board, destination, komaType)) {
-                    result.add(thisCoordinate);
-                }
-                yield result;
-            }
-            default ->
-                result;
-        };
-    }
-
-    public static Coordinate getSourceCoordinate(String move) {
-        Coordinate result = new Coordinate();
-        result.setX(Integer.parseInt(move.substring(move.indexOf("(") + 1, move.indexOf("(") + 2)));
-        result.setY(Integer.parseInt(move.substring(move.indexOf("(") + 1, move.indexOf(")"))) - result.getX() * 10);
-        return result;
-    }
-
-    private static List<Coordinate> getSourcesOnHorizontalVectors(Board board, Coordinate destination, Koma.Type komaType) {
-        List<Coordinate> result = new ArrayList<>();
-        Coordinate resultCoordinate;
-        resultCoordinate = getSourceOnVector(board, destination, -1, 0, komaType);
-        if (resultCoordinate != null) {
-            result.add(resultCoordinate);
-        }
-        resultCoordinate = getSourceOnVector(board, destination, 1, 0, komaType);
-        if (resultCoordinate != null) {
-            result.add(resultCoordinate);
-        }
-        resultCoordinate = getSourceOnVector(board, destination, 0, -1, komaType);
-        if (resultCoordinate != null) {
-            result.add(resultCoordinate);
-        }
-        resultCoordinate = getSourceOnVector(board, destination, 0, 1, komaType);
-        if (resultCoordinate != null) {
-            result.add(resultCoordinate);
-        }
-        return result;
+    public static Square getSourceCoordinate(String move) {
+        int x = Integer.parseInt(move.substring(move.indexOf("(") + 1, move.indexOf("(") + 2));
+        int y = Integer.parseInt(move.substring(move.indexOf("(") + 1, move.indexOf(")"))) - x * 10;
+        return Square.valueOf(x, y);
     }
 
-    private static String bottomThree(Coordinate sourceCoordinate, Coordinate destinationCoordinate, List<Coordinate> sourceList, boolean isSente) {
-        if (numWithSameY(sourceCoordinate, sourceList) == 1) {
+    private static String bottomThree(Square sourceCoordinate, Square destinationCoordinate, long sourceLo, long sourceHi, boolean isSente) {
+        if (numWithSameY(sourceCoordinate, sourceLo, sourceHi) == 1) {
             // Simple up case.
             return UPWARD;
         } else if (onLeft(sourceCoordinate, destinationCoordinate, isSente)) {
             // Below-left.
-            if (numWithSameX(sourceCoordinate, sourceList) == 1) {
+            if (numWithSameX(sourceCoordinate, sourceLo, sourceHi) == 1) {
                 return FROM_LEFT;
             } else {
                 return FROM_LEFT + UPWARD;
             }
         } else if (onRight(sourceCoordinate, destinationCoordinate, isSente)) {
             // Below-right.
-            if (numWithSameX(sourceCoordinate, sourceList) == 1) {
+            if (numWithSameX(sourceCoordinate, sourceLo, sourceHi) == 1) {
                 return FROM_RIGHT;
             } else {
                 return FROM_RIGHT + UPWARD;
@@ -464,11 +358,11 @@ public class NotationUtils {
         }
     }
 
-    private static boolean haveSameY(Coordinate first, Coordinate second) {
-        return Objects.equals(first.getY(), second.getY());
+    private static boolean haveSameY(Square first, Square second) {
+        return first.getY() == second.getY();
     }
 
-    static boolean onLeft(Coordinate firstCoordinate, Coordinate secondCoordinate, boolean isSente) {
+    static boolean onLeft(Square firstCoordinate, Square secondCoordinate, boolean isSente) {
         if (isSente) {
             return firstCoordinate.getX() > secondCoordinate.getX();
         } else {
@@ -476,35 +370,71 @@ public class NotationUtils {
         }
     }
 
-    private static int numWithSameX(Coordinate coordinate, List<Coordinate> coordinateList) {
+    private static int numWithSameX(Square coordinate, long sourceLo, long sourceHi) {
         int count = 0;
-        for (Coordinate thisCoordinate : coordinateList) {
-            if (haveSameX(coordinate, thisCoordinate)) {
+        long remainingLo = sourceLo;
+        long remainingHi = sourceHi;
+        while ((remainingLo | remainingHi) != 0) {
+            int index = Bitboard.first(remainingLo, remainingHi);
+            remainingLo &= ~Bitboard.lo(index);
+            remainingHi &= ~Bitboard.hi(index);
+            if (haveSameX(coordinate, Square.valueOf(index))) {
                 count++;
             }
         }
         return count;
     }
 
-    public static List<Coordinate> getSourcesForKoma(Board board, Coordinate destination, int[] offsetX, int[] offsetY, Koma.Type komaType) {
-        List<Coordinate> result = new ArrayList<>();
-        for (int k = 0; k < offsetX.length; k++) {
-            Coordinate testCoordinate = new Coordinate(destination.getX() + offsetX[k], destination.getY() + offsetY[k]);
-            if (NotationUtils.onBoard(testCoordinate)) {
-                Koma koma = KifParser.getKoma(board, testCoordinate);
-                if (koma != null && koma.getType().equals(komaType)) {
-                    result.add(testCoordinate);
-                }
-            }
+    public static String getDropNotation(Board board, Square thisDestination, Koma.Type komaType) {
+        int index = thisDestination.getIndex();
+        if ((board.getAttackersLo(komaType, index) | board.getAttackersHi(komaType, index)) != 0) {
+            return DROPPED;
         }
-        return result;
+        return "";
     }
 
-    public static String getDropNotation(Board board, Coordinate thisDestination, Koma.Type komaType) {
-        if (!NotationUtils.getPossibleSources(board, thisDestination, komaType).isEmpty()) {
-            return DROPPED;
+    /**
+     * The notation for a move that is about to be played on the board, such
+     * as 7六歩, 同金右 or 5五角打.
+     *
+     * @param lastDestination the destination of the previous move, or null
+     */
+    public static String getJapaneseMove(Board board, int move, Square lastDestination) {
+        StringBuilder result = new StringBuilder();
+        appendJapaneseMove(result, board, move, lastDestination, false);
+        return result.toString();
+    }
+
+    /**
+     * Append the notation for a move that is about to be played on the board.
+     *
+     * @param fullWidth write the file of the destination as a full-width digit
+     */
+    public static void appendJapaneseMove(StringBuilder result, Board board, int move, Square lastDestination, boolean fullWidth) {
+        Square destination = Square.valueOf(Move.getTo(move));
+        Koma.Type komaType;
+        String disambiguation;
+        if (Move.isDrop(move)) {
+            komaType = Move.getDropType(move, board.getNextTurn());
+            disambiguation = getDropNotation(board, destination, komaType);
+        } else {
+            Square source = Square.valueOf(Move.getFrom(move));
+            komaType = board.getKoma(source).getType();
+            disambiguation = getDisambiguation(board, source, destination, komaType);
+        }
+
+        if (destination.sameValue(lastDestination)) {
+            result.append(SAME);
+        } else if (fullWidth) {
+            result.append(FULL_WIDTH_COORDINATES[destination.getIndex()]);
+        } else {
+            result.append(getJapaneseCoordinate(destination));
+        }
+        result.append(getKomaKanji(komaType));
+        result.append(disambiguation);
+        if (Move.isPromote(move)) {
+            result.append(PROMOTED);
         }
-        return "";
     }
 
     private static String convertJapaneseNumber(int number) {
@@ -567,7 +497,7 @@ public class NotationUtils {
         };
     }
 
-    public static String getJapaneseCoordinate(Coordinate thisCoordinate) {
+    public static String getJapaneseCoordinate(Square thisCoordinate) {
         return thisCoordinate.getX() + convertJapaneseNumber(thisCoordinate.getY());
     }
 
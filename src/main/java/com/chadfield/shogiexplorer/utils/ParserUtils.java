@@ -18,124 +18,164 @@
 package com.chadfield.shogiexplorer.utils;
 
 import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Game;
 import com.chadfield.shogiexplorer.objects.Koma;
 
 public class ParserUtils {
 
-    private static final String KOMA_HI = "飛";
-    private static final String KOMA_KA = "角";
-    private static final String KOMA_KI = "金";
-    private static final String KOMA_GI = "銀";
-    private static final String KOMA_KE = "桂";
-    private static final String KOMA_KY = "香";
-    private static final String KOMA_FU = "歩";
+    // The side named lost by a foul, whoever was to move.
+    public static final String SENTE_ILLEGAL = "先手の反則負け";
+    public static final String GOTE_ILLEGAL = "後手の反則負け";
+
+    // Hand kinds in the same order as their names, letters and sente types.
+    private static final String DROP_NAMES = "歩香桂銀金角飛";
+    private static final String DROP_LETTERS = "PLNSGBR";
+    private static final Koma.Type[] DROP_TYPES = {
+        Koma.Type.SFU, Koma.Type.SKY, Koma.Type.SKE, Koma.Type.SGI, Koma.Type.SKI, Koma.Type.SKA, Koma.Type.SHI
+    };
+
+    private static final Koma.Type[] KOMA_TYPES = Koma.Type.values();
+    private static final Koma[] PROMOTED_KOMA = new Koma[KOMA_TYPES.length];
+    private static final Koma[] INVERTED_KOMA = new Koma[KOMA_TYPES.length];
+    private static final Koma.Type[] OTHER_SIDE_TYPES = new Koma.Type[KOMA_TYPES.length];
+    private static final Koma[][] DROP_KOMA = new Koma[Board.Turn.values().length][DROP_TYPES.length];
+    private static final String[] HAND_LETTERS = new String[KOMA_TYPES.length];
+
+    static {
+        for (Koma.Type komaType : KOMA_TYPES) {
+            PROMOTED_KOMA[komaType.ordinal()] = Koma.valueOf(getPromotedType(komaType));
+            INVERTED_KOMA[komaType.ordinal()] = Koma.valueOf(getInvertedType(komaType));
+            // Gote types follow the sente types in the same order.
+            OTHER_SIDE_TYPES[komaType.ordinal()] = KOMA_TYPES[(komaType.ordinal() + KOMA_TYPES.length / 2) % KOMA_TYPES.length];
+        }
+        // SFEN gives sente a 玉 and gote a 王, and the editor the other way
+        // round, so each king maps to the one used with it.
+        OTHER_SIDE_TYPES[Koma.Type.SGY.ordinal()] = Koma.Type.GOU;
+        OTHER_SIDE_TYPES[Koma.Type.GOU.ordinal()] = Koma.Type.SGY;
+        OTHER_SIDE_TYPES[Koma.Type.SOU.ordinal()] = Koma.Type.GGY;
+        OTHER_SIDE_TYPES[Koma.Type.GGY.ordinal()] = Koma.Type.SOU;
+        for (int kind = 0; kind < DROP_TYPES.length; kind++) {
+            Koma.Type senteType = DROP_TYPES[kind];
+            Koma.Type goteType = OTHER_SIDE_TYPES[senteType.ordinal()];
+            DROP_KOMA[Board.Turn.SENTE.ordinal()][kind] = Koma.valueOf(senteType);
+            DROP_KOMA[Board.Turn.GOTE.ordinal()][kind] = Koma.valueOf(goteType);
+            String letter = DROP_LETTERS.substring(kind, kind + 1);
+            HAND_LETTERS[senteType.ordinal()] = letter;
+            HAND_LETTERS[goteType.ordinal()] = letter;
+        }
+    }
 
     private ParserUtils() {
         throw new IllegalStateException("Utility class");
     }
 
     public static Koma promoteKoma(Koma.Type komaType) {
+        return PROMOTED_KOMA[komaType.ordinal()];
+    }
+
+    /**
+     * @param komaType the type of a captured koma
+     * @return the unpromoted koma of the other side, as it goes into the captor's hand
+     */
+    public static Koma invertKoma(Koma.Type komaType) {
+        return INVERTED_KOMA[komaType.ordinal()];
+    }
+
+    /**
+     * @return the same piece, promoted or not, belonging to the other side
+     */
+    public static Koma.Type getOtherSideType(Koma.Type komaType) {
+        return OTHER_SIDE_TYPES[komaType.ordinal()];
+    }
+
+    public static Koma getDropKoma(String locationString, Board.Turn turn) {
+        if (locationString.length() != 1) {
+            return null;
+        }
+        char komaChar = locationString.charAt(0);
+        int kind = DROP_NAMES.indexOf(komaChar);
+        if (kind < 0) {
+            kind = DROP_LETTERS.indexOf(komaChar);
+            if (kind < 0) {
+                return null;
+            }
+        }
+        return DROP_KOMA[turn.ordinal()][kind];
+    }
+
+    /**
+     * @param komaType a piece type of either side
+     * @return the USI letter of the piece when it is in hand, or null if it
+     * cannot be held
+     */
+    public static String getHandLetter(Koma.Type komaType) {
+        return HAND_LETTERS[komaType.ordinal()];
+    }
+
+    private static Koma.Type getPromotedType(Koma.Type komaType) {
         return switch (komaType) {
             case SFU ->
-                new Koma(Koma.Type.STO);
+                Koma.Type.STO;
             case SKY ->
-                new Koma(Koma.Type.SNY);
+                Koma.Type.SNY;
             case SKE ->
-                new Koma(Koma.Type.SNK);
+                Koma.Type.SNK;
             case SGI ->
-                new Koma(Koma.Type.SNG);
+                Koma.Type.SNG;
             case SKA ->
-                new Koma(Koma.Type.SUM);
+                Koma.Type.SUM;
             case SHI ->
-                new Koma(Koma.Type.SRY);
+                Koma.Type.SRY;
             case GFU ->
-                new Koma(Koma.Type.GTO);
+                Koma.Type.GTO;
             case GKY ->
-                new Koma(Koma.Type.GNY);
+                Koma.Type.GNY;
             case GKE ->
-                new Koma(Koma.Type.GNK);
+                Koma.Type.GNK;
             case GGI ->
-                new Koma(Koma.Type.GNG);
+                Koma.Type.GNG;
             case GKA ->
-                new Koma(Koma.Type.GUM);
+                Koma.Type.GUM;
             case GHI ->
-                new Koma(Koma.Type.GRY);
+                Koma.Type.GRY;
             default ->
                 null;
         };
     }
 
-    public static void addPieceToInHand(Koma koma, Board board) {
-        Koma invertedKoma = invertKoma(koma.getType());
-        if (invertedKoma != null) {
-            if (board.getInHandKomaMap().containsKey(invertedKoma.getType())) {
-                board.getInHandKomaMap().put(invertedKoma.getType(), 1 + board.getInHandKomaMap().get(invertedKoma.getType()));
-            } else {
-                board.getInHandKomaMap().put(invertedKoma.getType(), 1);
-            }
-        }
-    }
-
-    public static Koma invertKoma(Koma.Type komaType) {
+    private static Koma.Type getInvertedType(Koma.Type komaType) {
         return switch (komaType) {
             case SFU, STO ->
-                new Koma(Koma.Type.GFU);
+                Koma.Type.GFU;
             case SKY, SNY ->
-                new Koma(Koma.Type.GKY);
+                Koma.Type.GKY;
             case SKE, SNK ->
-                new Koma(Koma.Type.GKE);
+                Koma.Type.GKE;
             case SGI, SNG ->
-                new Koma(Koma.Type.GGI);
+                Koma.Type.GGI;
             case SKI ->
-                new Koma(Koma.Type.GKI);
+                Koma.Type.GKI;
             case SKA, SUM ->
-                new Koma(Koma.Type.GKA);
+                Koma.Type.GKA;
             case SHI, SRY ->
-                new Koma(Koma.Type.GHI);
+                Koma.Type.GHI;
             case GFU, GTO ->
-                new Koma(Koma.Type.SFU);
+                Koma.Type.SFU;
             case GKY, GNY ->
-                new Koma(Koma.Type.SKY);
+                Koma.Type.SKY;
             case GKE, GNK ->
-                new Koma(Koma.Type.SKE);
+                Koma.Type.SKE;
             case GGI, GNG ->
-                new Koma(Koma.Type.SGI);
+                Koma.Type.SGI;
             case GKI ->
-                new Koma(Koma.Type.SKI);
+                Koma.Type.SKI;
             case GKA, GUM ->
-                new Koma(Koma.Type.SKA);
+                Koma.Type.SKA;
             case GHI, GRY ->
-                new Koma(Koma.Type.SHI);
-            default ->
-                null;
-        };
-    }
-
-    public static Koma getDropKoma(String locationString, Board.Turn turn) {
-        Koma.Type komaType;
-        komaType = switch (locationString) {
-            case KOMA_HI, "R" ->
                 Koma.Type.SHI;
-            case KOMA_KA, "B" ->
-                Koma.Type.SKA;
-            case KOMA_KI, "G" ->
-                Koma.Type.SKI;
-            case KOMA_GI, "S" ->
-                Koma.Type.SGI;
-            case KOMA_KE, "N" ->
-                Koma.Type.SKE;
-            case KOMA_KY, "L" ->
-                Koma.Type.SKY;
-            case KOMA_FU, "P" ->
-                Koma.Type.SFU;
             default ->
                 null;
         };
-        if (turn == Board.Turn.SENTE) {
-            return new Koma(komaType);
-        } else {
-            return invertKoma(komaType);
-        }
     }
 
     public static Board.Turn switchTurn(Board.Turn turn) {
@@ -146,4 +186,55 @@ public class ParserUtils {
         }
     }
 
+    /**
+     * @param reason how the game ended, such as 投了 or a line such as
+     * まで76手で先手の勝ち
+     * @param turn the side to move when the game ended
+     * @return the result
+     */
+    public static Game.Result getResult(String reason, Board.Turn turn) {
+        if (reason.startsWith(NotationUtils.MADE)) {
+            if (reason.contains("先手の勝ち") || reason.contains("下手の勝ち")) {
+                return Game.Result.SENTE_WIN;
+            } else if (reason.contains("後手の勝ち") || reason.contains("上手の勝ち")) {
+                return Game.Result.GOTE_WIN;
+            } else if (reason.contains("千日手") || reason.contains("持将棋")) {
+                return Game.Result.DRAW;
+            }
+            return Game.Result.UNKNOWN;
+        }
+        return switch (reason) {
+            case NotationUtils.RESIGNS, NotationUtils.LOSING, "詰み", "反則負け", "時間切れ" ->
+                getWin(switchTurn(turn));
+            case "入玉勝ち", "宣言勝ち", "反則勝ち" ->
+                getWin(turn);
+            case SENTE_ILLEGAL ->
+                Game.Result.GOTE_WIN;
+            case GOTE_ILLEGAL ->
+                Game.Result.SENTE_WIN;
+            case "千日手", "持将棋", "引き分け" ->
+                Game.Result.DRAW;
+            default ->
+                Game.Result.UNKNOWN;
+        };
+    }
+
+    /**
+     * @return true if the text is a way for a game to end, as opposed to a
+     * move that could not be read
+     */
+    public static boolean isEndOfGame(String reason) {
+        return switch (reason) {
+            case NotationUtils.RESIGNS, NotationUtils.LOSING, NotationUtils.SUSPENDED, "詰み", "不詰", "反則負け", "反則勝ち", "時間切れ",
+                    "入玉勝ち", "宣言勝ち", "千日手", "持将棋", "引き分け", "不戦勝", "不戦敗", "封じ手", SENTE_ILLEGAL, GOTE_ILLEGAL ->
+                true;
+            default ->
+                false;
+        };
+    }
+
+    private static Game.Result getWin(Board.Turn turn) {
+        return turn == Board.Turn.SENTE ? Game.Result.SENTE_WIN : Game.Result.GOTE_WIN;
+    }
+
 }
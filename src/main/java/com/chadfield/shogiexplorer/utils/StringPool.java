@@ -0,0 +1,146 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A weak pool of strings, so that the SFEN of a position or the notation of a
+ * move that turns up in many games is only held once.
+ *
+ * Entries go away when nothing else refers to them. The pool is shared between
+ * threads, and is split into stripes by hash, each with its own lock, so that
+ * threads importing games at the same time seldom wait for each other.
+ */
+public class StringPool {
+
+    public static final StringPool SFEN = new StringPool("SFEN");
+    public static final StringPool NOTATION = new StringPool("notation");
+
+    private static final int STRIPES = 16;
+
+    private static volatile boolean enabled = !Boolean.getBoolean("shogiexplorer.noStringPool");
+
+    private final String name;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    private static class Stripe {
+
+        private final Map<String, WeakReference<String>> pool = new WeakHashMap<>();
+    }
+
+    public StringPool(String name) {
+        this.name = name;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * @return the pooled copy of the value, or the value itself if it is new
+     */
+    public String intern(String value) {
+        if (value == null || !enabled) {
+            return value;
+        }
+        lookups.increment();
+        int hash = value.hashCode();
+        Stripe stripe = stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+        synchronized (stripe) {
+            WeakReference<String> reference = stripe.pool.get(value);
+            String pooled = reference == null ? null : reference.get();
+            if (pooled == null) {
+                stripe.pool.put(value, new WeakReference<>(value));
+                return value;
+            }
+            hits.increment();
+            bytesSaved.add(getRetainedSize(value));
+            return pooled;
+        }
+    }
+
+    /**
+     * @return an estimate of the heap held by a string and its array
+     */
+    private static long getRetainedSize(String value) {
+        int charSize = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                charSize = 2;
+                break;
+            }
+        }
+        return 24 + ((16 + (long) value.length() * charSize + 7) & ~7L);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.pool.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the fraction of lookups that found a pooled copy
+     */
+    public double getHitRate() {
+        long lookupCount = lookups.sum();
+        return lookupCount == 0 ? 0 : (double) hits.sum() / lookupCount;
+    }
+
+    /**
+     * @return the estimated bytes not retained because of the pool
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.pool.clear();
+            }
+        }
+        lookups.reset();
+        hits.reset();
+        bytesSaved.reset();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        StringPool.enabled = enabled;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s pool: %,d entries, %,d lookups, %.1f%% hits, %,d bytes saved",
+                name, size(), lookups.sum(), getHitRate() * 100, getBytesSaved());
+    }
+}
@@ -16,8 +16,13 @@
  */
 package com.chadfield.shogiexplorer.utils;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class StringUtils {
 
+    private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{4})[/\\-年](\\d{1,2})[/\\-月](\\d{1,2})");
+
     private StringUtils() {
         throw new IllegalStateException("Utility class");
     }
@@ -38,4 +43,30 @@ public class StringUtils {
         return fileName.substring(lastIndexOf + 1);
     }
 
+    /**
+     * @param date a date such as 2022/01/31 10:00 or 2022年01月31日
+     * @return the date as yyyymmdd, or 0 if there is none
+     */
+    public static int parseDate(String date) {
+        if (date == null) {
+            return 0;
+        }
+        Matcher matcher = DATE_PATTERN.matcher(date);
+        if (!matcher.find()) {
+            return 0;
+        }
+        return Integer.parseInt(matcher.group(1)) * 10000 + Integer.parseInt(matcher.group(2)) * 100 + Integer.parseInt(matcher.group(3));
+    }
+
+    /**
+     * @param date a date as yyyymmdd
+     * @return the date as yyyy/mm/dd, or an empty string for 0
+     */
+    public static String formatDate(int date) {
+        if (date == 0) {
+            return "";
+        }
+        return String.format("%04d/%02d/%02d", date / 10000, date / 100 % 100, date % 100);
+    }
+
 }
@@ -0,0 +1,92 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Game;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import javax.swing.DefaultListModel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CsaParserTest {
+
+    private static final String HEADER = """
+            V2.2
+            N+Alice
+            N-Bob
+            PI
+            +
+            """;
+    private static final String OPENING = """
+            +7776FU,T3
+            -3334FU,T3
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    private static Game parseGame(String csa) throws IOException {
+        return CsaParser.parseGame(new BufferedReader(new StringReader(csa)));
+    }
+
+    private Game parseKif(String csa) throws IOException {
+        Path file = tempDir.resolve("game.csa");
+        Files.writeString(file, csa, StandardCharsets.UTF_8);
+        return KifParser.parseKif(new DefaultListModel<>(), file.toFile(), null, false, new ArrayList<>());
+    }
+
+    @Test
+    void game() throws IOException {
+        Game game = parseGame(HEADER + OPENING + "+8822UM,T3\n-3122GI,T3\n+0045KA,T3\n%TORYO\n");
+        assertEquals("Alice", game.getSente());
+        assertEquals("Bob", game.getGote());
+        assertEquals(6, game.getPositionList().size());
+        assertEquals("B*4e", game.getPositionList().get(5).getNotation().getEngineMove());
+        assertEquals(Game.Result.SENTE_WIN, game.getResult());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"+7775FU", "+0055KA", "+8833UM", "+2726TO", "+5949OU", "-4132KI", "+0055OU"})
+    void illegalMove(String move) throws IOException {
+        String csa = HEADER + move + "\n";
+        assertThrows(IllegalArgumentException.class, () -> parseGame(csa));
+    }
+
+    @Test
+    void illegalMoveEndsShownGame() throws IOException {
+        String csa = HEADER + OPENING + "+0055KA,T3\n-8384FU,T3\n";
+        assertThrows(IllegalArgumentException.class, () -> parseGame(csa));
+        assertEquals(3, parseKif(csa).getPositionList().size());
+    }
+
+    @Test
+    void illegalAction() throws IOException {
+        assertEquals(Game.Result.GOTE_WIN, parseGame(HEADER + OPENING + "%+ILLEGAL_ACTION\n").getResult());
+        assertEquals(Game.Result.SENTE_WIN, parseGame(HEADER + OPENING + "%-ILLEGAL_ACTION\n").getResult());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Game;
+import java.io.IOException;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameHeaderStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Game getGame(String sente, String gote, String tournament, String handicap, String date) {
+        Game game = new Game();
+        game.setSente(sente);
+        game.setGote(gote);
+        game.setTournament(tournament);
+        game.setHandicap(handicap);
+        game.setDate(date);
+        return game;
+    }
+
+    private static GameHeaderStore getStore() {
+        GameHeaderStore store = new GameHeaderStore();
+        store.add(Path.of("a.kif"), 0, getGame("羽生善治", "谷川浩司", "第50期名人戦", Game.HANDICAP_NONE, "1992/04/10"));
+        store.add(Path.of("a.kif"), 1, getGame("谷川浩司", "羽生善治", "第50期名人戦", Game.HANDICAP_NONE, "1992/04/20"));
+        store.add(Path.of("b.kif"), 0, getGame("藤井聡太", "羽生善治", "第1回朝日杯", Game.HANDICAP_NONE, "2018/02/17"));
+        store.add(Path.of("c.kif"), 0, getGame("先生", "生徒", null, Game.HANDICAP_BISHOP, null));
+        return store;
+    }
+
+    @Test
+    void find() {
+        GameHeaderStore store = getStore();
+        GameHeaderStore.Query query = new GameHeaderStore.Query();
+        assertArrayEquals(new int[]{0, 1, 2, 3}, store.find(query));
+
+        query.setPlayer("羽生");
+        assertArrayEquals(new int[]{0, 1, 2}, store.find(query));
+        query.setGote("羽生");
+        assertArrayEquals(new int[]{1, 2}, store.find(query));
+        query.setTournament("名人戦");
+        assertArrayEquals(new int[]{1}, store.find(query));
+
+        query = new GameHeaderStore.Query();
+        query.setHandicap(Game.HANDICAP_BISHOP);
+        assertArrayEquals(new int[]{3}, store.find(query));
+        // The handicap must be equal, not only contain the text.
+        query.setHandicap("落ち");
+        assertArrayEquals(new int[0], store.find(query));
+    }
+
+    @Test
+    void findByDate() {
+        GameHeaderStore store = getStore();
+        GameHeaderStore.Query query = new GameHeaderStore.Query();
+        query.setDateFrom(19920415);
+        assertArrayEquals(new int[]{1, 2}, store.find(query));
+        query.setDateTo(20000101);
+        assertArrayEquals(new int[]{1}, store.find(query));
+        query.setDateFrom(0);
+        assertArrayEquals(new int[]{0, 1}, store.find(query));
+    }
+
+    @Test
+    void headers() {
+        GameHeaderStore store = getStore();
+        assertEquals("藤井聡太", store.getSente(2));
+        assertEquals("第1回朝日杯", store.getTournament(2));
+        assertEquals(20180217, store.getDate(2));
+        assertEquals("", store.getTournament(3));
+        assertEquals(0, store.getDate(3));
+        assertEquals(1, store.getGameIndex(1));
+        assertEquals("a.kif", store.getFile(1).getFileName().toString());
+    }
+
+    @Test
+    void noHandicapHeader() {
+        GameHeaderStore store = getStore();
+        store.add(Path.of("d.kif"), 0, getGame("x", "y", null, "", null));
+        assertEquals(Game.HANDICAP_NONE, store.getHandicap(4));
+        GameHeaderStore.Query query = new GameHeaderStore.Query();
+        query.setHandicap(Game.HANDICAP_NONE);
+        assertArrayEquals(new int[]{0, 1, 2, 4}, store.find(query));
+    }
+
+    @Test
+    void sameGameAddedOnce() {
+        GameHeaderStore store = getStore();
+        assertFalse(store.add(Path.of("a.kif"), 1, getGame("x", "y", null, null, null)));
+        assertTrue(store.add(Path.of("a.kif"), 2, getGame("x", "y", null, null, null)));
+        assertEquals(5, store.size());
+    }
+
+    @Test
+    void saveAndLoad() throws IOException {
+        GameHeaderStore store = getStore();
+        Path file = tempDir.resolve(GameHeaderStore.DEFAULT_FILE_NAME);
+        store.save(file);
+        GameHeaderStore loaded = GameHeaderStore.load(file);
+        assertEquals(store.size(), loaded.size());
+        GameHeaderStore.Query query = new GameHeaderStore.Query();
+        query.setPlayer("谷川");
+        assertArrayEquals(new int[]{0, 1}, loaded.find(query));
+        assertEquals("谷川浩司", loaded.getSente(1));
+        assertEquals(19920420, loaded.getDate(1));
+        assertFalse(loaded.add(Path.of("b.kif"), 0, getGame("x", "y", null, null, null)));
+    }
+}
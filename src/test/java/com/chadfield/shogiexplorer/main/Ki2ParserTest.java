@@ -0,0 +1,121 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.MoveGenerator;
+import com.chadfield.shogiexplorer.objects.Position;
+import com.chadfield.shogiexplorer.objects.Square;
+import com.chadfield.shogiexplorer.utils.NotationUtils;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class Ki2ParserTest {
+
+    private static final String HEADER = "手合割：平手\n";
+
+    private static Game parseGame(String ki2) throws IOException {
+        return Ki2Parser.parseGame(new BufferedReader(new StringReader(ki2)));
+    }
+
+    private static String getLastMove(String moves) throws IOException {
+        List<Position> positionList = parseGame(HEADER + moves + "\n").getPositionList();
+        return positionList.get(positionList.size() - 1).getNotation().getEngineMove();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "▲５八金右, 4i5h",
+        "▲５八金左, 6i5h",
+        "▲５八金左 △１四歩 ▲４八金上, 4i4h",
+        "▲５八金左 △１四歩 ▲４八金寄, 5h4h",
+        "▲４六歩 △１四歩 ▲４八金 △１五歩 ▲５八金上 △９四歩 ▲４七金直, 4h4g",
+        "▲４六歩 △１四歩 ▲４八金 △１五歩 ▲５八金上 △９四歩 ▲４七金左, 5h4g",
+        "▲４六歩 △１四歩 ▲５八金左 △１五歩 ▲４七金 △９四歩 ▲４八金上, 4i4h",
+        "▲４六歩 △１四歩 ▲５八金左 △１五歩 ▲４七金 △９四歩 ▲４八金引, 4g4h"
+    })
+    void disambiguation(String moves, String engineMove) throws IOException {
+        assertEquals(engineMove, getLastMove(moves));
+    }
+
+    @Test
+    void pinnedPieceNeedsNoModifier() throws IOException {
+        // The gold on 6h is pinned by the bishop on 8f, so only 4i can go.
+        assertEquals("4i5h", getLastMove("▲７六歩 △３四歩 ▲２二角成 △同　銀 ▲６八金 △８六角 ▲５八金"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"△８六角, B*8f", "△８六角打, B*8f"})
+    void drop(String drop, String engineMove) throws IOException {
+        assertEquals(engineMove, getLastMove("▲７六歩 △３四歩 ▲２二角成 △同　銀 ▲６八銀 " + drop));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"▲５五角", "▲７五歩", "▲７六歩 △７六歩", "▲２二角成"})
+    void illegalMove(String moves) {
+        assertThrows(IllegalArgumentException.class, () -> parseGame(HEADER + moves + "\n"));
+    }
+
+    @Test
+    void resignationAsMove() throws IOException {
+        Game game = parseGame(HEADER + "▲７六歩 △３四歩 ▲２六歩 △投了\nまで3手で先手の勝ち\n");
+        assertEquals(4, game.getPositionList().size());
+        assertEquals(Game.Result.SENTE_WIN, game.getResult());
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        Random random = new Random(42);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int gameNumber = 0; gameNumber < 100; gameNumber++) {
+            Board board = SFENParser.parse(KifParser.getStartSFEN(Game.HANDICAP_NONE));
+            StringBuilder ki2 = new StringBuilder(HEADER);
+            List<String> sfenList = new ArrayList<>();
+            sfenList.add(SFENParser.getSFEN(board));
+            Square lastDestination = null;
+            for (int ply = 0; ply < 150; ply++) {
+                int count = MoveGenerator.generate(board, moves);
+                if (count == 0) {
+                    break;
+                }
+                int move = moves[random.nextInt(count)];
+                ki2.append(board.getNextTurn() == Board.Turn.SENTE ? "▲" : "△")
+                        .append(NotationUtils.getJapaneseMove(board, move, lastDestination))
+                        .append(ply % 6 == 5 ? "\n" : "  ");
+                board.makeMove(move);
+                lastDestination = board.getDestination();
+                sfenList.add(SFENParser.getSFEN(board));
+            }
+            List<Position> positionList = parseGame(ki2.append('\n').toString()).getPositionList();
+            assertEquals(sfenList.size(), positionList.size());
+            for (int i = 0; i < sfenList.size(); i++) {
+                assertEquals(sfenList.get(i), positionList.get(i).getGameSFEN(), "game " + gameNumber + " ply " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.Position;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import javax.swing.DefaultListModel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class KifParserTest {
+
+    private static final String HEADER = """
+            手合割：平手
+            手数----指手---------消費時間--
+            """;
+    private static final String OPENING = """
+               1 ７六歩(77)   ( 0:00/00:00:00)
+               2 ３四歩(33)   ( 0:00/00:00:00)
+            """;
+
+    private static Game parseKif(String kif) throws IOException {
+        return KifParser.parseKif(new DefaultListModel<>(), null, kif, false, new ArrayList<>());
+    }
+
+    private static Game parseGame(String kif) throws IOException {
+        return KifParser.parseGame(new BufferedReader(new StringReader(kif)));
+    }
+
+    @Test
+    void sealedMoveEndsGame() throws IOException {
+        String kif = HEADER + OPENING + "   3 封じ手   ( 0:00/00:00:00)\n";
+        assertEquals(3, parseKif(kif).getPositionList().size());
+        assertEquals(3, parseGame(kif).getPositionList().size());
+    }
+
+    @Test
+    void unreadableMoveEndsShownGame() throws IOException {
+        String kif = HEADER + OPENING + "   3 ５五XX   ( 0:00/00:00:00)\n";
+        Game game = parseKif(kif);
+        assertNotNull(game);
+        assertEquals(3, game.getPositionList().size());
+        assertThrows(IllegalArgumentException.class, () -> parseGame(kif));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "   3 ３四歩(35)   ( 0:00/00:00:00)\n",
+        "   3 ３三歩(34)   ( 0:00/00:00:00)\n",
+        "   3 ５五角打   ( 0:00/00:00:00)\n",
+        "   3 ５五猫打   ( 0:00/00:00:00)\n",
+        "   3 ７四歩(76)   ( 0:00/00:00:00)\n"
+    })
+    void illegalMove(String line) throws IOException {
+        String kif = HEADER + OPENING + line + "   4 ８四歩(83)   ( 0:00/00:00:00)\n";
+        assertThrows(IllegalArgumentException.class, () -> parseGame(kif));
+        assertEquals(3, parseKif(kif).getPositionList().size());
+    }
+
+    @Test
+    void wrongSide() throws IOException {
+        String kif = HEADER + "   1 ７六歩(77)   ( 0:00/00:00:00)\n   2 ２六歩(27)   ( 0:00/00:00:00)\n";
+        assertThrows(IllegalArgumentException.class, () -> parseGame(kif));
+        assertEquals(2, parseKif(kif).getPositionList().size());
+    }
+
+    @Test
+    void resignation() throws IOException {
+        Game game = parseKif(HEADER + OPENING + "   3 投了\n");
+        assertEquals(Game.Result.GOTE_WIN, game.getResult());
+    }
+
+    @Test
+    void appendKif() throws IOException {
+        String kif = HEADER + OPENING + "   3 ２二角成(88)   ( 0:00/00:00:00)\n";
+        String moreKif = kif + "   4 同　銀(31)   ( 0:00/00:00:00)\n*a comment\n   5 ４五角打   ( 0:00/00:00:00)\n";
+        DefaultListModel<String> moveListModel = new DefaultListModel<>();
+        Game game = KifParser.parseKif(moveListModel, null, kif, false, new ArrayList<>());
+        Position first = game.getPositionList().get(3);
+
+        assertTrue(KifParser.appendKif(game, moveListModel, moreKif));
+        Game expected = parseKif(moreKif);
+        assertEquals(6, game.getPositionList().size());
+        assertEquals(6, moveListModel.size());
+        assertSame(first, game.getPositionList().get(3));
+        for (int i = 0; i < expected.getPositionList().size(); i++) {
+            Position position = game.getPositionList().get(i);
+            Position expectedPosition = expected.getPositionList().get(i);
+            assertEquals(expectedPosition.getGameSFEN(), position.getGameSFEN());
+            assertEquals(expectedPosition.getComment(), position.getComment());
+        }
+        assertEquals("3a2b", game.getPositionList().get(4).getNotation().getEngineMove());
+    }
+
+    @Test
+    void appendKifToChangedText() throws IOException {
+        DefaultListModel<String> moveListModel = new DefaultListModel<>();
+        Game game = KifParser.parseKif(moveListModel, null, HEADER + OPENING, false, new ArrayList<>());
+        String changed = HEADER + "   1 ２六歩(27)   ( 0:00/00:00:00)\n   2 ３四歩(33)   ( 0:00/00:00:00)\n   3 ７六歩(77)   ( 0:00/00:00:00)\n";
+        assertFalse(KifParser.appendKif(game, moveListModel, changed));
+        assertEquals(3, game.getPositionList().size());
+        assertEquals(3, moveListModel.size());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.Move;
+import com.chadfield.shogiexplorer.objects.MoveGenerator;
+import com.chadfield.shogiexplorer.objects.Notation;
+import com.chadfield.shogiexplorer.objects.Position;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OpeningTreeTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Game parseGame(String date, String moves) throws IOException {
+        StringBuilder kif = new StringBuilder("開始日時：").append(date).append("\n手合割：平手\n手数----指手---------消費時間--\n");
+        kif.append(moves);
+        return KifParser.parseGame(new BufferedReader(new StringReader(kif.toString())));
+    }
+
+    private static long getKey(String... moves) {
+        Board board = SFENParser.parse(KifParser.getStartSFEN(Game.HANDICAP_NONE));
+        for (String move : moves) {
+            board.makeMove(Move.parseUSI(move));
+        }
+        return board.getZobristKey();
+    }
+
+    private static OpeningTree.Continuation getContinuation(OpeningTree tree, String move, String... moves) {
+        for (OpeningTree.Continuation continuation : tree.getContinuations(getKey(moves))) {
+            if (Move.toUSI(continuation.getMove()).equals(move)) {
+                return continuation;
+            }
+        }
+        throw new AssertionError("No continuation " + move);
+    }
+
+    private static OpeningTree getTree() throws IOException {
+        OpeningTree tree = new OpeningTree(OpeningTree.DEFAULT_MAX_PLY);
+        tree.addGame(Path.of("a.kif"), 0, parseGame("2021/05/01", """
+                   1 ７六歩(77)
+                   2 ３四歩(33)
+                   3 ２六歩(27)
+                   4 投了
+                """));
+        tree.addGame(Path.of("a.kif"), 1, parseGame("2022/03/04", """
+                   1 ２六歩(27)
+                   2 ３四歩(33)
+                   3 ７六歩(77)
+                   4 ８四歩(83)
+                   5 投了
+                """));
+        tree.addGame(Path.of("b.kif"), 0, parseGame("2020/01/01", """
+                   1 ７六歩(77)
+                   2 ８四歩(83)
+                   3 千日手
+                """));
+        return tree;
+    }
+
+    @Test
+    void continuations() throws IOException {
+        OpeningTree tree = getTree();
+        List<OpeningTree.Continuation> first = tree.getContinuations(getKey());
+        assertEquals(2, first.size());
+        OpeningTree.Continuation continuation = first.get(0);
+        assertEquals("7g7f", Move.toUSI(continuation.getMove()));
+        assertEquals(2, continuation.getGames());
+        assertEquals(1, continuation.getSenteWins());
+        assertEquals(0, continuation.getGoteWins());
+        assertEquals(1, continuation.getDraws());
+        assertEquals(20210501, continuation.getLatestDate());
+
+        continuation = getContinuation(tree, "2g2f");
+        assertEquals(1, continuation.getGames());
+        assertEquals(1, continuation.getGoteWins());
+        assertEquals(20220304, continuation.getLatestDate());
+    }
+
+    @Test
+    void transposition() throws IOException {
+        OpeningTree tree = getTree();
+        // Both games from a.kif reach the position after 7g7f 3c3d 2g2f.
+        assertEquals(1, tree.getContinuations(getKey("7g7f", "3c3d", "2g2f")).size());
+        assertEquals(1, getContinuation(tree, "8c8d", "2g2f", "3c3d", "7g7f").getGames());
+        assertTrue(tree.getContinuations(getKey("7g7f", "3c3d", "2g2f", "8c8d")).isEmpty());
+    }
+
+    @Test
+    void sameGameAddedOnce() throws IOException {
+        OpeningTree tree = getTree();
+        int size = tree.size();
+        assertFalse(tree.addGame(Path.of("a.kif"), 1, parseGame("2022/03/04", "   1 ２六歩(27)\n")));
+        assertTrue(tree.addGame(Path.of("a.kif"), 2, parseGame("2022/03/05", "   1 ２六歩(27)\n")));
+        assertEquals(size, tree.size());
+        assertEquals(2, getContinuation(tree, "2g2f").getGames());
+    }
+
+    @Test
+    void maxPly() throws IOException {
+        OpeningTree tree = new OpeningTree(1);
+        tree.addGame(parseGame("2021/05/01", "   1 ７六歩(77)\n   2 ３四歩(33)\n"));
+        assertEquals(1, tree.size());
+        assertTrue(tree.getContinuations(getKey("7g7f")).isEmpty());
+    }
+
+    @Test
+    void saveAndLoad() throws IOException {
+        OpeningTree tree = getTree();
+        Path file = tempDir.resolve(OpeningTree.DEFAULT_FILE_NAME);
+        tree.save(file);
+        OpeningTree loaded = OpeningTree.load(file);
+        assertEquals(tree.size(), loaded.size());
+        assertEquals(2, getContinuation(loaded, "7g7f").getGames());
+        assertEquals(20210501, getContinuation(loaded, "7g7f").getLatestDate());
+        assertFalse(loaded.addGame(Path.of("b.kif"), 0, parseGame("2020/01/01", "   1 ７六歩(77)\n")));
+    }
+
+    @Test
+    void manyPositions() {
+        // Enough positions for the table to grow several times.
+        OpeningTree tree = new OpeningTree(OpeningTree.DEFAULT_MAX_PLY);
+        Map<Long, Map<Integer, Integer>> expected = new HashMap<>();
+        Random random = new Random(7);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int gameNumber = 0; gameNumber < 200; gameNumber++) {
+            Board board = SFENParser.parse(KifParser.getStartSFEN(Game.HANDICAP_NONE));
+            List<Position> positionList = new ArrayList<>();
+            positionList.add(new Position(board, null, null, null));
+            for (int ply = 0; ply < OpeningTree.DEFAULT_MAX_PLY; ply++) {
+                int count = MoveGenerator.generate(board, moves);
+                if (count == 0) {
+                    break;
+                }
+                int move = moves[random.nextInt(gameNumber % 4 == 0 ? Math.min(count, 2) : count)];
+                expected.computeIfAbsent(board.getZobristKey(), key -> new HashMap<>()).merge(move, 1, Integer::sum);
+                Notation notation = new Notation();
+                notation.setEngineMove(Move.toUSI(move));
+                board.makeMove(move);
+                positionList.add(new Position(board, board.getSource(), board.getDestination(), notation));
+            }
+            Game game = new Game();
+            game.setPositionList(positionList);
+            tree.addGame(game);
+        }
+        assertEquals(expected.size(), tree.size());
+        for (Map.Entry<Long, Map<Integer, Integer>> entry : expected.entrySet()) {
+            List<OpeningTree.Continuation> continuations = tree.getContinuations(entry.getKey());
+            assertEquals(entry.getValue().size(), continuations.size());
+            for (OpeningTree.Continuation continuation : continuations) {
+                assertEquals(entry.getValue().get(continuation.getMove()), continuation.getGames());
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.Move;
+import com.chadfield.shogiexplorer.objects.MoveGenerator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class PerftTest {
+
+    @ParameterizedTest
+    @CsvSource({"1, 30", "2, 900", "3, 25470"})
+    void startPosition(int depth, long nodes) {
+        Board board = SFENParser.parse(KifParser.getStartSFEN(Game.HANDICAP_NONE));
+        String sfen = SFENParser.getSFEN(board);
+        assertEquals(nodes, Perft.perft(board, depth));
+        assertEquals(sfen, SFENParser.getSFEN(board));
+    }
+
+    @Test
+    void parallelMatches() {
+        Board board = SFENParser.parse(KifParser.getStartSFEN(Game.HANDICAP_BISHOP));
+        assertEquals(Perft.perft(board, 3), Perft.perftParallel(board, 3));
+    }
+
+    @Test
+    void pawnDropMate() {
+        Board board = SFENParser.parse("kn7/9/1G7/9/9/9/9/9/8K b P 1");
+        assertFalse(MoveGenerator.isLegal(board, Move.parseUSI("P*9b")));
+        assertTrue(MoveGenerator.isLegal(board, Move.parseUSI("P*8d")));
+    }
+}
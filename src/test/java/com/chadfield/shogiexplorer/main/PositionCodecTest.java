@@ -0,0 +1,105 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.Koma;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class PositionCodecTest {
+
+    private static final String START_SFEN = "lnsgkgsnl/1r5b1/ppppppppp/9/9/9/PPPPPPPPP/1B5R1/LNSGKGSNL b - 1";
+
+    private static void assertRoundTrip(Board board) {
+        assertTrue(PositionCodec.canEncode(board));
+        byte[] packed = PositionCodec.encode(board);
+        assertEquals(PositionCodec.SIZE, packed.length);
+        Board decoded = PositionCodec.decode(packed);
+        assertEquals(SFENParser.getSFEN(board), SFENParser.getSFEN(decoded));
+        assertEquals(board.getZobristKey(), decoded.getZobristKey());
+    }
+
+    @Test
+    void startPosition() {
+        assertRoundTrip(SFENParser.parse(START_SFEN));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        Game.HANDICAP_NONE, Game.HANDICAP_LANCE, Game.HANDICAP_BISHOP, Game.HANDICAP_ROOK, Game.HANDICAP_ROOK_LANCE,
+        Game.HANDICAP_2_PIECE, Game.HANDICAP_4_PIECE, Game.HANDICAP_6_PIECE, Game.HANDICAP_8_PIECE
+    })
+    void handicapPositions(String handicap) {
+        assertRoundTrip(SFENParser.parse(KifParser.getStartSFEN(handicap)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "4k4/9/9/9/9/9/9/9/4K4 b 2R2B4G4S4N4L18P 1",
+        "4k4/9/9/9/9/9/9/9/4K4 w 2r2b4g4s4n4l18p 1",
+        "4k4/9/9/9/9/9/9/9/4K4 b RB2G2S2N2L9Prb2g2s2n2l9p 1"
+    })
+    void fullHands(String sfen) {
+        assertRoundTrip(SFENParser.parse(sfen));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "ln1gk2nl/1+R4g2/p1pp+ps+Bpp/9/9/2P6/PP1PPPP+pP/7R1/LNSGKGSNL b Sp 1",
+        "l2gk1+Ln+R/4g4/p+N1ppp2p/9/9/9/P+s+bPPPP1P/7+r1/LNSGKGS1L w Pb 1"
+    })
+    void promotedPieces(String sfen) {
+        assertRoundTrip(SFENParser.parse(sfen));
+    }
+
+    @Test
+    void editorKings() {
+        // The position editor places SOU and GGY kings, which decode as SGY
+        // and GOU.
+        Board board = SFENParser.parse(START_SFEN);
+        int senteKing = board.getKingIndex(Board.Turn.SENTE);
+        int goteKing = board.getKingIndex(Board.Turn.GOTE);
+        board.putKomaAt(senteKing, Koma.valueOf(Koma.Type.SOU));
+        board.putKomaAt(goteKing, Koma.valueOf(Koma.Type.GGY));
+        assertTrue(PositionCodec.canEncode(board));
+        Board decoded = PositionCodec.decode(PositionCodec.encode(board));
+        assertEquals(SFENParser.getSFEN(board), SFENParser.getSFEN(decoded));
+        assertEquals(SFENParser.parse(START_SFEN).getZobristKey(), board.getZobristKey());
+        assertEquals(board.getZobristKey(), decoded.getZobristKey());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "4k4/9/9/9/9/9/9/9/9 b 4G 1",
+        "9/9/9/9/9/9/9/9/9 b 4G 1",
+        "4k4/9/9/9/9/9/9/9/4K4 b 2G 1",
+        "4k4/9/9/9/9/9/9/9/4K4 b - 1"
+    })
+    void cannotEncode(String sfen) {
+        Board board = SFENParser.parse(sfen);
+        assertFalse(PositionCodec.canEncode(board));
+        assertThrows(IllegalArgumentException.class, () -> PositionCodec.encode(board));
+    }
+}
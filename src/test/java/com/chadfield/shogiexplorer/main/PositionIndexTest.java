@@ -0,0 +1,96 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.main;
+
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Game;
+import com.chadfield.shogiexplorer.objects.Move;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PositionIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static long getKey(String... moves) {
+        Board board = SFENParser.parse(KifParser.getStartSFEN(Game.HANDICAP_NONE));
+        for (String move : moves) {
+            board.makeMove(Move.parseUSI(move));
+        }
+        return board.getZobristKey();
+    }
+
+    private PositionIndex build() throws IOException {
+        Path corpus = Files.createDirectory(tempDir.resolve("corpus"));
+        Files.writeString(corpus.resolve("a.kif"), """
+                手合割：平手
+                手数----指手---------消費時間--
+                   1 ７六歩(77)   ( 0:00/00:00:00)
+                   2 ３四歩(33)   ( 0:00/00:00:00)
+                """, StandardCharsets.UTF_8);
+        Files.writeString(corpus.resolve("b.ki2"), "手合割：平手\n▲７六歩 △８四歩\n", StandardCharsets.UTF_8);
+        Files.writeString(corpus.resolve("c.csa"), "PI\n+\n+2726FU\n-3334FU\n/\nPI\n+\n+7776FU\n-3334FU\n", StandardCharsets.UTF_8);
+        Path indexFile = tempDir.resolve(PositionIndex.DEFAULT_FILE_NAME);
+        KifImporter.Stats stats = PositionIndex.build(corpus, indexFile, StandardCharsets.UTF_8, 2);
+        assertEquals(4, stats.getGames());
+        return PositionIndex.open(indexFile);
+    }
+
+    @Test
+    void lookup() throws IOException {
+        PositionIndex index = build();
+        assertEquals(4, index.getGameCount());
+        assertEquals(4, index.count(getKey()));
+        assertEquals(3, index.count(getKey("7g7f")));
+        assertEquals(0, index.count(getKey("2g2f", "8c8d")));
+
+        List<PositionIndex.Hit> hits = index.lookup(getKey("7g7f", "3c3d"), 10);
+        assertEquals(2, hits.size());
+        for (PositionIndex.Hit hit : hits) {
+            assertEquals(2, hit.getPly());
+            assertTrue(hit.getFile().getFileName().toString().equals("a.kif") && hit.getGameIndex() == 0
+                    || hit.getFile().getFileName().toString().equals("c.csa") && hit.getGameIndex() == 1, hit.toString());
+        }
+        assertEquals(1, index.lookup(getKey("7g7f", "3c3d"), 1).size());
+    }
+
+    @Test
+    void emptyCorpus() throws IOException {
+        Path indexFile = tempDir.resolve(PositionIndex.DEFAULT_FILE_NAME);
+        PositionIndex.build(Files.createDirectory(tempDir.resolve("empty")), indexFile, StandardCharsets.UTF_8, 1);
+        PositionIndex index = PositionIndex.open(indexFile);
+        assertEquals(0, index.getGameCount());
+        assertEquals(0, index.count(getKey()));
+        assertTrue(index.lookup(getKey(), 10).isEmpty());
+    }
+
+    @Test
+    void notAnIndex() throws IOException {
+        Path indexFile = Files.write(tempDir.resolve(PositionIndex.DEFAULT_FILE_NAME), new byte[64]);
+        assertThrows(IOException.class, () -> PositionIndex.open(indexFile));
+    }
+}
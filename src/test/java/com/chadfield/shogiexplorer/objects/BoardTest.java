@@ -0,0 +1,63 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.main.SFENParser;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+class BoardTest {
+
+    private static final String START = "lnsgkgsnl/1r5b1/ppppppppp/9/9/9/PPPPPPPPP/1B5R1/LNSGKGSNL b - 1";
+
+    @Test
+    void removeFromEmptyHand() {
+        Board board = SFENParser.parse(START);
+        long key = board.getZobristKey();
+        assertThrows(IllegalArgumentException.class, () -> board.removeInHand(Koma.Type.SKA));
+        assertEquals(0, board.getInHandCount(Koma.Type.SKA));
+        assertEquals(key, board.getZobristKey());
+    }
+
+    @Test
+    void removeFromHand() {
+        Board board = SFENParser.parse("lnsgkgsnl/1r5b1/ppppppppp/9/9/9/PPPPPPPPP/7R1/LNSGKGSNL b Bb 1");
+        board.removeInHand(Koma.Type.SKA);
+        assertEquals(0, board.getInHandCount(Koma.Type.SKA));
+        assertEquals(1, board.getInHandCount(Koma.Type.GKA));
+    }
+
+    @Test
+    void dropPieceNotHeld() {
+        Board board = SFENParser.parse(START);
+        String sfen = SFENParser.getSFEN(board);
+        assertThrows(IllegalArgumentException.class, () -> board.makeMove(Move.parseUSI("B*5e")));
+        assertEquals(sfen, SFENParser.getSFEN(board));
+    }
+
+    @Test
+    void captureKing() {
+        Board board = SFENParser.parse("4k4/9/9/9/9/9/9/9/r3K4 w - 1");
+        String sfen = SFENParser.getSFEN(board);
+        board.makeMove(Move.parseUSI("9i5i"));
+        assertEquals("4k4/9/9/9/9/9/9/9/4r4 b - 2", SFENParser.getSFEN(board));
+        board.unmakeMove();
+        assertEquals(sfen, SFENParser.getSFEN(board));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.main.KifParser;
+import com.chadfield.shogiexplorer.main.SFENParser;
+import com.chadfield.shogiexplorer.utils.NotationUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CompactPositionListTest {
+
+    private static final int PLIES = 100;
+
+    private static List<Position> getGame(long seed) {
+        Random random = new Random(seed);
+        Board board = SFENParser.parse(KifParser.getStartSFEN(Game.HANDICAP_NONE));
+        List<Position> positionList = new ArrayList<>();
+        positionList.add(new Position(board, null, null, new Notation()));
+        positionList.get(0).setComment("start\n");
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        Square lastDestination = null;
+        for (int ply = 1; ply <= PLIES; ply++) {
+            int count = MoveGenerator.generate(board, moves);
+            if (count == 0) {
+                break;
+            }
+            int move = moves[random.nextInt(count)];
+            Notation notation = new Notation();
+            notation.setJapanese(NotationUtils.getJapaneseMove(board, move, lastDestination));
+            notation.setEngineMove(Move.toUSI(move));
+            board.makeMove(move);
+            lastDestination = board.getDestination();
+            Position position = new Position(board, board.getSource(), lastDestination, notation);
+            if (ply % 7 == 0) {
+                position.setComment("comment " + ply + "\n");
+            }
+            positionList.add(position);
+        }
+        return positionList;
+    }
+
+    private static void assertPosition(Position expected, Position actual, int index) {
+        assertEquals(expected.getGameSFEN(), actual.getGameSFEN(), "ply " + index);
+        assertEquals(expected.getNotation().getEngineMove(), actual.getNotation().getEngineMove(), "ply " + index);
+        assertEquals(expected.getNotation().getJapanese(), actual.getNotation().getJapanese(), "ply " + index);
+        assertEquals(expected.getComment(), actual.getComment(), "ply " + index);
+        if (index > 0) {
+            assertEquals(expected.getDestination().getIndex(), actual.getDestination().getIndex(), "ply " + index);
+            assertEquals(expected.getSource() == null, actual.getSource() == null, "ply " + index);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 5, CompactPositionList.DEFAULT_INTERVAL, 200})
+    void stepForward(int interval) {
+        List<Position> positionList = getGame(interval);
+        CompactPositionList compactList = CompactPositionList.of(positionList, interval);
+        assertEquals(positionList.size(), compactList.size());
+        for (int i = 0; i < positionList.size(); i++) {
+            assertPosition(positionList.get(i), compactList.get(i), i);
+        }
+    }
+
+    @Test
+    void checkpointBoundaries() {
+        List<Position> positionList = getGame(1);
+        CompactPositionList compactList = CompactPositionList.of(positionList, 16);
+        for (int index : new int[]{15, 16, 17, 16, 15, 31, 32, 33, 48, 47, 64, 63, PLIES, PLIES - 1}) {
+            assertPosition(positionList.get(index), compactList.get(index), index);
+        }
+    }
+
+    @Test
+    void randomAccessAfterSteppingBack() {
+        List<Position> positionList = getGame(2);
+        CompactPositionList compactList = CompactPositionList.of(positionList, 16);
+        for (int i = positionList.size() - 1; i >= 0; i--) {
+            assertPosition(positionList.get(i), compactList.get(i), i);
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            int index = random.nextInt(positionList.size());
+            assertPosition(positionList.get(index), compactList.get(index), index);
+        }
+    }
+
+    @Test
+    void listsShareTheCursor() {
+        List<Position> first = getGame(4);
+        List<Position> second = getGame(5);
+        CompactPositionList firstCompact = CompactPositionList.of(first);
+        CompactPositionList secondCompact = CompactPositionList.of(second);
+        for (int i = 0; i < Math.min(first.size(), second.size()); i++) {
+            assertPosition(first.get(i), firstCompact.get(i), i);
+            assertPosition(second.get(i), secondCompact.get(i), i);
+        }
+    }
+
+    @Test
+    void threads() throws InterruptedException, ExecutionException {
+        List<Position> positionList = getGame(6);
+        CompactPositionList compactList = CompactPositionList.of(positionList);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int seed = thread;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 500; i++) {
+                        int index = random.nextInt(positionList.size());
+                        assertPosition(positionList.get(index), compactList.get(index), index);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void zobristKeys() {
+        List<Position> positionList = getGame(7);
+        CompactPositionList compactList = CompactPositionList.of(positionList, 16);
+        long[] expected = new long[positionList.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = positionList.get(i).getZobristKey();
+        }
+        assertArrayEquals(expected, compactList.getZobristKeys());
+    }
+
+    @Test
+    void outOfRange() {
+        CompactPositionList compactList = CompactPositionList.of(getGame(8));
+        assertThrows(IndexOutOfBoundsException.class, () -> compactList.get(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> compactList.get(compactList.size()));
+    }
+
+    private static List<Position> getPositions(String sfen, String... engineMoves) {
+        List<Position> positionList = new ArrayList<>();
+        Board board = SFENParser.parse(sfen);
+        positionList.add(new Position(board, null, null, new Notation()));
+        for (String engineMove : engineMoves) {
+            Notation notation = new Notation();
+            notation.setEngineMove(engineMove);
+            board.makeMove(Move.parseUSI(engineMove));
+            positionList.add(new Position(board, null, null, notation));
+        }
+        return positionList;
+    }
+
+    @Test
+    void fallBackToSFEN() {
+        // Only two golds, so no position can be packed.
+        List<Position> positionList = getPositions("4k4/9/9/9/9/9/9/9/4K4 b 2G 1", "5i4h", "5a4b", "G*5b", "4b3a");
+        CompactPositionList compactList = CompactPositionList.of(positionList, 2);
+        for (int i = 0; i < positionList.size(); i++) {
+            assertEquals(positionList.get(i).getGameSFEN(), compactList.get(i).getGameSFEN());
+        }
+    }
+
+    @Test
+    void fallBackToSFENPartWay() {
+        // The sente king is taken on move 4, after two checkpoints have been
+        // packed, so those are turned into SFEN as well.
+        List<Position> positionList = getPositions("4k4/9/9/9/9/9/9/9/r3K4 b 4G 1", "G*1a", "5a5b", "G*1b", "9i5i", "G*1c");
+        CompactPositionList compactList = CompactPositionList.of(positionList, 2);
+        for (int i = positionList.size() - 1; i >= 0; i--) {
+            assertEquals(positionList.get(i).getGameSFEN(), compactList.get(i).getGameSFEN());
+        }
+    }
+}
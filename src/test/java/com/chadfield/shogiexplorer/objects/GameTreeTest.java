@@ -0,0 +1,116 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.main.KifParser;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.DefaultListModel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class GameTreeTest {
+
+    private static final String MAIN_LINE = """
+            手合割：平手
+            手数----指手---------消費時間--
+               1 ７六歩(77)   ( 0:00/00:00:00)
+               2 ３四歩(33)   ( 0:00/00:00:00)
+               3 ２六歩(27)   ( 0:00/00:00:00)
+               4 ８四歩(83)   ( 0:00/00:00:00)
+            """;
+    private static final String TRANSPOSITION = """
+
+            変化：1手
+               1 ２六歩(27)   ( 0:00/00:00:00)
+               2 ３四歩(33)   ( 0:00/00:00:00)
+               3 ７六歩(77)   ( 0:00/00:00:00)
+               4 ４四歩(43)   ( 0:00/00:00:00)
+            """;
+
+    private static GameTree parseTree(String kif) throws IOException {
+        return KifParser.parseKif(new DefaultListModel<>(), null, kif, false, new ArrayList<>()).getGameTree();
+    }
+
+    private static GameTree.Node play(GameTree.Node node, String... moves) {
+        for (String move : moves) {
+            GameTree.Node next = null;
+            for (GameTree.Branch branch : node.getBranches()) {
+                if (branch.getNotation().getEngineMove().equals(move)) {
+                    next = branch.getNode();
+                }
+            }
+            if (next == null) {
+                throw new AssertionError("No branch " + move + " at ply " + node.getPly());
+            }
+            node = next;
+        }
+        return node;
+    }
+
+    @Test
+    void noTreeWithoutVariations() throws IOException {
+        assertNull(parseTree(MAIN_LINE));
+    }
+
+    @Test
+    void mainLine() throws IOException {
+        GameTree tree = parseTree(MAIN_LINE + TRANSPOSITION);
+        assertEquals(5, tree.getMainLine().size());
+        assertEquals(1, tree.getVariationCount());
+        assertSame(tree.getMainLine().get(4), play(tree.getRoot(), "7g7f", "3c3d", "2g2f", "8c8d"));
+    }
+
+    @Test
+    void variationsAreReadWhenAskedFor() throws IOException {
+        GameTree tree = parseTree(MAIN_LINE + TRANSPOSITION);
+        assertEquals(5, tree.getNodeCount());
+        assertTrue(tree.getRoot().hasVariations());
+        assertFalse(tree.getMainLine().get(1).hasVariations());
+        assertEquals(2, tree.getRoot().getBranches().size());
+        assertTrue(tree.getNodeCount() > 5);
+    }
+
+    @Test
+    void transpositionKeepsMoveOnBranch() throws IOException {
+        GameTree tree = parseTree(MAIN_LINE + TRANSPOSITION);
+        GameTree.Node afterVariation = play(tree.getRoot(), "2g2f", "3c3d");
+        List<GameTree.Branch> branches = afterVariation.getBranches();
+        assertEquals(1, branches.size());
+        GameTree.Branch branch = branches.get(0);
+
+        // The variation reaches the main line position after move 3 by 7g7f.
+        assertSame(tree.getMainLine().get(3), branch.getNode());
+        assertEquals("7g7f", branch.getNotation().getEngineMove());
+        GameTree.Branch first = tree.getRoot().getBranches().get(0);
+        assertTrue(branch.getSource().sameValue(first.getSource()));
+        assertTrue(branch.getDestination().sameValue(first.getDestination()));
+        assertEquals("2g2f", branch.getNode().getPosition().getNotation().getEngineMove());
+
+        // Both continuations are reachable from the shared position.
+        GameTree.Node shared = branch.getNode();
+        assertEquals(2, shared.getBranches().size());
+        assertEquals(4, play(tree.getRoot(), "2g2f", "3c3d", "7g7f", "4c4d").getPly());
+        assertEquals(4, play(tree.getRoot(), "7g7f", "3c3d", "2g2f", "4c4d").getPly());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.main.SFENParser;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class MoveGeneratorTest {
+
+    @Test
+    void checkmate() {
+        Board board = SFENParser.parse("k8/G8/1G7/9/9/9/9/9/8K w - 1");
+        assertFalse(MoveGenerator.hasLegalMove(board));
+        assertTrue(MoveGenerator.isCheckmate(board));
+    }
+
+    @Test
+    void onlyPromotion() {
+        // Taking the checking rook with the knight is the only way out, and
+        // the knight has to promote on the last rank.
+        Board board = SFENParser.parse("K8/9/9/9/9/9/5n1GG/9/6R1k w - 1");
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        assertEquals(1, MoveGenerator.generate(board, moves));
+        assertEquals("4g3i+", Move.toUSI(moves[0]));
+        assertTrue(MoveGenerator.hasLegalMove(board));
+    }
+
+    @Test
+    void agreesWithGenerate() {
+        Random random = new Random(1);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int game = 0; game < 200; game++) {
+            Board board = SFENParser.parse("lnsgkgsnl/1r5b1/ppppppppp/9/9/9/PPPPPPPPP/1B5R1/LNSGKGSNL b - 1");
+            for (int ply = 0; ply < 300; ply++) {
+                String sfen = SFENParser.getSFEN(board);
+                int count = MoveGenerator.generate(board, moves);
+                assertEquals(count > 0, MoveGenerator.hasLegalMove(board), sfen);
+                assertEquals(sfen, SFENParser.getSFEN(board));
+                if (count == 0) {
+                    break;
+                }
+                board.makeMove(moves[random.nextInt(count)]);
+            }
+        }
+    }
+}
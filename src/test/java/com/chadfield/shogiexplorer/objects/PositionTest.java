@@ -0,0 +1,47 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.objects;
+
+import com.chadfield.shogiexplorer.main.SFENParser;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+class PositionTest {
+
+    @Test
+    void packedBoard() {
+        String sfen = "lnsgkgsnl/1r5b1/ppppppppp/9/9/2P6/PP1PPPPPP/1B5R1/LNSGKGSNL w - 2";
+        Board board = SFENParser.parse(sfen);
+        Position position = new Position(board, null, null, null);
+        String gameSFEN = position.getGameSFEN();
+        assertEquals(sfen, gameSFEN);
+        assertSame(gameSFEN, position.getGameSFEN());
+        assertEquals(board.getZobristKey(), position.getZobristKey());
+    }
+
+    @Test
+    void setGameSFEN() {
+        Board board = SFENParser.parse("lnsgkgsnl/1r5b1/ppppppppp/9/9/9/PPPPPPPPP/1B5R1/LNSGKGSNL b - 1");
+        Position position = new Position(board, null, null, null);
+        String sfen = "lnsgkgsnl/1r5b1/ppppppppp/9/9/2P6/PP1PPPPPP/1B5R1/LNSGKGSNL w - 2";
+        position.setGameSFEN(sfen);
+        assertEquals(sfen, position.getGameSFEN());
+        assertEquals(SFENParser.parse(sfen).getZobristKey(), position.getZobristKey());
+    }
+}
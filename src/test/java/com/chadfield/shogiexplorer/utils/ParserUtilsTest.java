@@ -0,0 +1,67 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.utils;
+
+import com.chadfield.shogiexplorer.objects.Bitboard;
+import com.chadfield.shogiexplorer.objects.Board;
+import com.chadfield.shogiexplorer.objects.Koma;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+class ParserUtilsTest {
+
+    @Test
+    void otherSideType() {
+        assertEquals(Koma.Type.GFU, ParserUtils.getOtherSideType(Koma.Type.SFU));
+        assertEquals(Koma.Type.SRY, ParserUtils.getOtherSideType(Koma.Type.GRY));
+        assertEquals(Koma.Type.GOU, ParserUtils.getOtherSideType(Koma.Type.SGY));
+        assertEquals(Koma.Type.GGY, ParserUtils.getOtherSideType(Koma.Type.SOU));
+        for (Koma.Type komaType : Koma.Type.values()) {
+            Koma.Type otherType = ParserUtils.getOtherSideType(komaType);
+            assertNotEquals(Bitboard.isSente(komaType), Bitboard.isSente(otherType), komaType.name());
+            assertEquals(komaType, ParserUtils.getOtherSideType(otherType), komaType.name());
+            // Promoted pieces stay promoted and unpromoted ones can still promote.
+            assertEquals(ParserUtils.promoteKoma(komaType) == null, ParserUtils.promoteKoma(otherType) == null, komaType.name());
+        }
+    }
+
+    @Test
+    void dropKoma() {
+        String names = "歩香桂銀金角飛";
+        String letters = "PLNSGBR";
+        for (int kind = 0; kind < names.length(); kind++) {
+            Koma senteKoma = ParserUtils.getDropKoma(names.substring(kind, kind + 1), Board.Turn.SENTE);
+            Koma goteKoma = ParserUtils.getDropKoma(names.substring(kind, kind + 1), Board.Turn.GOTE);
+            String letter = letters.substring(kind, kind + 1);
+            assertEquals(senteKoma, ParserUtils.getDropKoma(letter, Board.Turn.SENTE), letter);
+            assertEquals(goteKoma, ParserUtils.getDropKoma(letter, Board.Turn.GOTE), letter);
+            assertEquals(ParserUtils.invertKoma(senteKoma.getType()), goteKoma, letter);
+            assertEquals(letter, ParserUtils.getHandLetter(senteKoma.getType()));
+            assertEquals(letter, ParserUtils.getHandLetter(goteKoma.getType()));
+        }
+        assertEquals(Koma.Type.GKA, ParserUtils.getDropKoma("角", Board.Turn.GOTE).getType());
+        assertNull(ParserUtils.getDropKoma("玉", Board.Turn.SENTE));
+        assertNull(ParserUtils.getDropKoma("K", Board.Turn.SENTE));
+        assertNull(ParserUtils.getDropKoma("", Board.Turn.SENTE));
+        assertNull(ParserUtils.getDropKoma("歩歩", Board.Turn.SENTE));
+        assertNull(ParserUtils.getHandLetter(Koma.Type.STO));
+        assertNull(ParserUtils.getHandLetter(Koma.Type.GOU));
+    }
+}
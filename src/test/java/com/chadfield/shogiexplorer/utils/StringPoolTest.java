@@ -0,0 +1,82 @@
+/*
+    Copyright © 2021, 2022 Stephen R Chadfield.
+
+    This file is part of Shogi Explorer.
+
+    Shogi Explorer is free software: you can redistribute it and/or modify it under the terms of the 
+    GNU General Public License as published by the Free Software Foundation, either version 3 
+    of the License, or (at your option) any later version.
+
+    Shogi Explorer is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+    without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+    See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with Shogi Explorer. 
+    If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.chadfield.shogiexplorer.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class StringPoolTest {
+
+    @Test
+    void intern() {
+        StringPool pool = new StringPool("test");
+        String first = new String("7g7f");
+        String second = new String("7g7f");
+        assertNotSame(first, second);
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertNull(pool.intern(null));
+        assertEquals(1, pool.size());
+        assertEquals(0.5, pool.getHitRate());
+        assertTrue(pool.getBytesSaved() > 0);
+
+        pool.clear();
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.getHitRate());
+        assertSame(second, pool.intern(second));
+    }
+
+    @Test
+    void threads() throws InterruptedException, ExecutionException {
+        StringPool pool = new StringPool("test");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    List<String> result = new ArrayList<>();
+                    for (int i = 0; i < 1000; i++) {
+                        result.add(pool.intern(new String("move " + i)));
+                    }
+                    return result;
+                }));
+            }
+            List<String> first = futures.get(0).get();
+            for (Future<List<String>> future : futures) {
+                List<String> result = future.get();
+                for (int i = 0; i < first.size(); i++) {
+                    assertSame(first.get(i), result.get(i));
+                }
+            }
+            assertEquals(1000, pool.size());
+            assertEquals(0.75, pool.getHitRate());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}